@@ -0,0 +1,168 @@
+/*
+ * Copyright (C) 2013 Jerzy Chalupski
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.getbase.android.forger;
+
+import android.net.Uri;
+
+import java.util.List;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.Timespan;
+
+/**
+ * {@link ForgerListener} emitting Java Flight Recorder events for every faked object, insert,
+ * flushed batch, read-back and automatically created parent object. The events are in the
+ * "Forger" category and are switched on and off like any other JFR event, e.g. with a custom
+ * settings file passed in {@code -XX:StartFlightRecording=settings=forger.jfc}.
+ * <p>
+ * The {@code jdk.jfr} API is available only on JDK 8u262 and later, so this class lives in the
+ * separate {@code jfr} source set, which is compiled only on such JDKs, and
+ * {@link MacroBenchmark} loads it reflectively.
+ * <p>
+ * Forger reports the durations after the fact, so they are recorded in the {@code time} field of
+ * each event instead of the JFR start and end timestamps, and the JFR threshold setting doesn't
+ * apply to them.
+ */
+public class JfrForgerListener extends ForgerListener {
+  private static final String CATEGORY = "Forger";
+
+  @Name("com.getbase.android.forger.ModelFaked")
+  @Label("Model Faked")
+  @Description("Fake object created and filled by the FakeDataGenerators")
+  @Category(CATEGORY)
+  static class ModelFakedEvent extends Event {
+    @Label("Model Class")
+    Class<?> modelClass;
+
+    @Label("Time")
+    @Timespan(Timespan.NANOSECONDS)
+    long time;
+  }
+
+  @Name("com.getbase.android.forger.Insert")
+  @Label("Insert")
+  @Description("Single row inserted into ForgerSink")
+  @Category(CATEGORY)
+  static class InsertEvent extends Event {
+    @Label("Model Class")
+    Class<?> modelClass;
+
+    @Label("Uri")
+    String uri;
+
+    @Label("Time")
+    @Timespan(Timespan.NANOSECONDS)
+    long time;
+  }
+
+  @Name("com.getbase.android.forger.BatchFlush")
+  @Label("Batch Flush")
+  @Description("Batch of rows inserted into ForgerSink")
+  @Category(CATEGORY)
+  static class BatchFlushEvent extends Event {
+    @Label("Model Class")
+    Class<?> modelClass;
+
+    @Label("Rows")
+    int rows;
+
+    @Label("Time")
+    @Timespan(Timespan.NANOSECONDS)
+    long time;
+  }
+
+  @Name("com.getbase.android.forger.ReadBack")
+  @Label("Read Back")
+  @Description("Inserted row converted back to the model object")
+  @Category(CATEGORY)
+  static class ReadBackEvent extends Event {
+    @Label("Model Class")
+    Class<?> modelClass;
+
+    @Label("Time")
+    @Timespan(Timespan.NANOSECONDS)
+    long time;
+  }
+
+  @Name("com.getbase.android.forger.DependencyAutoCreated")
+  @Label("Dependency Auto Created")
+  @Description("Parent object created automatically to satisfy a dependency")
+  @Category(CATEGORY)
+  static class DependencyAutoCreatedEvent extends Event {
+    @Label("Child Class")
+    Class<?> childClass;
+
+    @Label("Parent Class")
+    Class<?> parentClass;
+  }
+
+  @Override
+  public void onModelFaked(Class<?> klass, long nanos) {
+    ModelFakedEvent event = new ModelFakedEvent();
+    if (event.isEnabled()) {
+      event.modelClass = klass;
+      event.time = nanos;
+      event.commit();
+    }
+  }
+
+  @Override
+  public void onAfterInsert(Class<?> klass, Uri uri, long nanos) {
+    InsertEvent event = new InsertEvent();
+    if (event.isEnabled()) {
+      event.modelClass = klass;
+      event.uri = uri != null ? uri.toString() : null;
+      event.time = nanos;
+      event.commit();
+    }
+  }
+
+  @Override
+  public void onBatchFlushed(Class<?> klass, List<Uri> uris, long nanos) {
+    BatchFlushEvent event = new BatchFlushEvent();
+    if (event.isEnabled()) {
+      event.modelClass = klass;
+      event.rows = uris.size();
+      event.time = nanos;
+      event.commit();
+    }
+  }
+
+  @Override
+  public void onReadBack(Class<?> klass, Uri uri, long nanos) {
+    ReadBackEvent event = new ReadBackEvent();
+    if (event.isEnabled()) {
+      event.modelClass = klass;
+      event.time = nanos;
+      event.commit();
+    }
+  }
+
+  @Override
+  public void onDependencyAutoCreated(Class<?> childClass, Object parent) {
+    DependencyAutoCreatedEvent event = new DependencyAutoCreatedEvent();
+    if (event.isEnabled()) {
+      event.childClass = childClass;
+      event.parentClass = parent.getClass();
+      event.commit();
+    }
+  }
+}
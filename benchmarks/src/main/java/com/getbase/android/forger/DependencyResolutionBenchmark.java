@@ -0,0 +1,94 @@
+/*
+ * Copyright (C) 2013 Jerzy Chalupski
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.getbase.android.forger;
+
+import com.getbase.android.forger.tests.TestModels;
+
+import org.chalup.microorm.MicroOrm;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * End to end inserts into the {@link InMemoryContentProvider}, so the numbers are dominated by
+ * Forger itself rather than by the storage.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class DependencyResolutionBenchmark {
+  private Forger<TestModels.TestModel> mForger;
+  private Forger<TestModels.TestModel> mForgerInContext;
+  private InMemoryContentProvider mProvider;
+  private TestModels.Contact mContact;
+  private TestModels.User mUser;
+
+  @Setup(Level.Iteration)
+  public void setUp() {
+    mForger = new Forger<>(TestModels.MODEL_GRAPH, new MicroOrm());
+    mProvider = new InMemoryContentProvider();
+    mContact = mForger.iNeed(TestModels.Contact.class).in(mProvider);
+    mUser = mForger.iNeed(TestModels.User.class).in(mProvider);
+    mForgerInContext = mForger.inContextOf(mContact).inContextOf(mUser);
+  }
+
+  /**
+   * Creates the Contact and two Users the Deal depends on.
+   */
+  @Benchmark
+  public Object insertWithAutoCreatedParents() {
+    return mForger.iNeed(TestModels.Deal.class).in(mProvider);
+  }
+
+  @Benchmark
+  public Object insertRelatedTo() {
+    return mForger.iNeed(TestModels.Deal.class).relatedTo(mContact, mUser).in(mProvider);
+  }
+
+  @Benchmark
+  public Object insertInContext() {
+    return mForgerInContext.iNeed(TestModels.Deal.class).in(mProvider);
+  }
+
+  @Benchmark
+  public Object insertBatch() {
+    return mForgerInContext.iNeed(100).of(TestModels.Deal.class).inBatchesOf(100).in(mProvider);
+  }
+
+  @Benchmark
+  public Object inContextOfChaining() {
+    return mForger.inContextOf(mContact).inContextOf(mUser).inContextOf(mContact).inContextOf(mUser);
+  }
+
+  @Benchmark
+  public Object plan() {
+    return mForger.iNeed(100).of(TestModels.Deal.class).plan();
+  }
+}
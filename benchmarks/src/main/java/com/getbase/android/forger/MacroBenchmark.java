@@ -0,0 +1,226 @@
+/*
+ * Copyright (C) 2013 Jerzy Chalupski
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.getbase.android.forger;
+
+import com.getbase.android.forger.tests.TestModels;
+import com.google.common.base.Charsets;
+import com.google.common.base.Preconditions;
+import com.google.common.base.Splitter;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.io.Files;
+
+import org.chalup.microorm.MicroOrm;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.lang.management.ThreadMXBean;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Seeds the {@link MacroScenario}s at several sizes into an {@link InMemoryContentProvider} and
+ * records rows per second, allocated bytes per row, peak heap usage and provider calls per row.
+ * The results are written as CSV and, if a baseline file from an earlier run is given, compared
+ * against it; the process exits with status 1 if any metric regressed by more than the threshold.
+ * <p>
+ * Options: {@code --scenarios DEAL_CHAIN,POLYMORPHIC,RECURSIVE}, {@code --sizes 10000,100000,1000000},
+ * {@code --output <file>}, {@code --baseline <file>}, {@code --threshold 0.1} and {@code --jfr true},
+ * which registers the {@code JfrForgerListener} for correlating the seeding with a flight recording.
+ * The listener is available only if the benchmarks were built on a JDK with Flight Recorder.
+ */
+public final class MacroBenchmark {
+  private static final int CHUNK_SIZE = 10000;
+  private static final String JFR_LISTENER_CLASS = "com.getbase.android.forger.JfrForgerListener";
+
+  private MacroBenchmark() {
+  }
+
+  public static void main(String[] args) throws IOException {
+    Map<String, String> options = parseOptions(args);
+
+    List<MacroScenario> scenarios = Lists.newArrayList();
+    for (String scenario : Splitter.on(',').omitEmptyStrings().split(get(options, "scenarios", "DEAL_CHAIN,POLYMORPHIC,RECURSIVE"))) {
+      scenarios.add(MacroScenario.valueOf(scenario.toUpperCase(Locale.US)));
+    }
+    List<Integer> sizes = Lists.newArrayList();
+    for (String size : Splitter.on(',').omitEmptyStrings().split(get(options, "sizes", "10000,100000,1000000"))) {
+      sizes.add(Integer.parseInt(size));
+    }
+    File output = new File(get(options, "output", "build/macro-benchmark.csv"));
+    double threshold = Double.parseDouble(get(options, "threshold", "0.1"));
+    boolean jfr = Boolean.parseBoolean(get(options, "jfr", "false"));
+
+    List<MacroResult> results = Lists.newArrayList();
+    for (MacroScenario scenario : scenarios) {
+      // warm up the JIT on a small run, which is not recorded
+      run(scenario, CHUNK_SIZE, jfr);
+
+      for (int size : sizes) {
+        MacroResult result = run(scenario, size, jfr);
+        System.out.println(result.toCsv());
+        results.add(result);
+      }
+    }
+
+    write(output, results);
+
+    if (options.containsKey("baseline")) {
+      List<String> regressions = compare(read(new File(options.get("baseline"))), results, threshold);
+      for (String regression : regressions) {
+        System.err.println("REGRESSION " + regression);
+      }
+      if (!regressions.isEmpty()) {
+        System.exit(1);
+      }
+    }
+  }
+
+  private static ForgerListener newJfrListener() {
+    try {
+      return (ForgerListener) Class.forName(JFR_LISTENER_CLASS).getConstructor().newInstance();
+    } catch (ReflectiveOperationException | LinkageError e) {
+      throw new IllegalStateException("JfrForgerListener is not available. Build and run the benchmarks on a JDK with Flight Recorder (8u262 or later).", e);
+    }
+  }
+
+  static MacroResult run(MacroScenario scenario, int objects, boolean jfr) {
+    Forger.Builder<TestModels.TestModel> builder = Forger.<TestModels.TestModel>builder()
+        .withModelGraph(TestModels.MODEL_GRAPH)
+        .withMicroOrm(new MicroOrm());
+    if (jfr) {
+      builder.registerListener(newJfrListener());
+    }
+    Forger<TestModels.TestModel> forger = builder.build();
+    LatencyInjectingSink sink = LatencyInjectingSink.builder().withDelegate(new InMemoryContentProvider()).build();
+
+    System.gc();
+    for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+      pool.resetPeakUsage();
+    }
+    long allocatedBefore = getAllocatedBytes();
+    long start = System.nanoTime();
+
+    for (int seeded = 0; seeded < objects; seeded += CHUNK_SIZE) {
+      scenario.seed(forger, sink, Math.min(CHUNK_SIZE, objects - seeded));
+    }
+
+    long elapsedNanos = System.nanoTime() - start;
+    long allocated = getAllocatedBytes() - allocatedBefore;
+
+    long peakHeap = 0;
+    for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+      if (pool.getType() == MemoryType.HEAP) {
+        peakHeap += pool.getPeakUsage().getUsed();
+      }
+    }
+
+    long rows = sink.getRows();
+    return new MacroResult(
+        scenario.name(),
+        objects,
+        rows,
+        rows * (double) TimeUnit.SECONDS.toNanos(1) / elapsedNanos,
+        allocatedBefore >= 0 ? allocated / (double) rows : -1,
+        peakHeap,
+        sink.getCalls() / (double) rows
+    );
+  }
+
+  /**
+   * Compares the results against the baseline. Throughput may drop and the other metrics may grow
+   * by at most the given fraction of the baseline value.
+   */
+  static List<String> compare(List<MacroResult> baseline, List<MacroResult> results, double threshold) {
+    Map<String, MacroResult> baselineByKey = Maps.newHashMap();
+    for (MacroResult result : baseline) {
+      baselineByKey.put(result.getKey(), result);
+    }
+
+    List<String> regressions = Lists.newArrayList();
+    for (MacroResult result : results) {
+      MacroResult expected = baselineByKey.get(result.getKey());
+      if (expected == null) {
+        continue;
+      }
+
+      if (result.mRowsPerSecond < expected.mRowsPerSecond * (1 - threshold)) {
+        regressions.add(describe(result, "rows_per_second", expected.mRowsPerSecond, result.mRowsPerSecond));
+      }
+      if (expected.mAllocatedBytesPerRow >= 0 && result.mAllocatedBytesPerRow > expected.mAllocatedBytesPerRow * (1 + threshold)) {
+        regressions.add(describe(result, "allocated_bytes_per_row", expected.mAllocatedBytesPerRow, result.mAllocatedBytesPerRow));
+      }
+      if (result.mPeakHeapBytes > expected.mPeakHeapBytes * (1 + threshold)) {
+        regressions.add(describe(result, "peak_heap_bytes", expected.mPeakHeapBytes, result.mPeakHeapBytes));
+      }
+      if (result.mProviderCallsPerRow > expected.mProviderCallsPerRow * (1 + threshold)) {
+        regressions.add(describe(result, "provider_calls_per_row", expected.mProviderCallsPerRow, result.mProviderCallsPerRow));
+      }
+    }
+    return regressions;
+  }
+
+  private static String describe(MacroResult result, String metric, double expected, double actual) {
+    return String.format(Locale.US, "%s %s: baseline %.2f, got %.2f", result.getKey(), metric, expected, actual);
+  }
+
+  private static void write(File file, List<MacroResult> results) throws IOException {
+    StringBuilder builder = new StringBuilder(MacroResult.HEADER).append('\n');
+    for (MacroResult result : results) {
+      builder.append(result.toCsv()).append('\n');
+    }
+
+    Files.createParentDirs(file);
+    Files.write(builder, file, Charsets.UTF_8);
+  }
+
+  private static List<MacroResult> read(File file) throws IOException {
+    List<MacroResult> results = Lists.newArrayList();
+    for (String line : Files.readLines(file, Charsets.UTF_8)) {
+      if (!line.trim().isEmpty() && !line.equals(MacroResult.HEADER)) {
+        results.add(MacroResult.fromCsv(line));
+      }
+    }
+    return results;
+  }
+
+  private static long getAllocatedBytes() {
+    ThreadMXBean threadMXBean = ManagementFactory.getThreadMXBean();
+    if (threadMXBean instanceof com.sun.management.ThreadMXBean) {
+      return ((com.sun.management.ThreadMXBean) threadMXBean).getThreadAllocatedBytes(Thread.currentThread().getId());
+    }
+    return -1;
+  }
+
+  private static Map<String, String> parseOptions(String[] args) {
+    Map<String, String> options = Maps.newHashMap();
+    for (int i = 0; i < args.length; i += 2) {
+      Preconditions.checkArgument(args[i].startsWith("--") && i + 1 < args.length, "Expected --option value pairs, got: " + args[i]);
+      options.put(args[i].substring(2), args[i + 1]);
+    }
+    return options;
+  }
+
+  private static String get(Map<String, String> options, String key, String defaultValue) {
+    return options.containsKey(key) ? options.get(key) : defaultValue;
+  }
+}
@@ -0,0 +1,81 @@
+/*
+ * Copyright (C) 2013 Jerzy Chalupski
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.getbase.android.forger;
+
+import com.google.common.base.Joiner;
+import com.google.common.base.Preconditions;
+import com.google.common.base.Splitter;
+import com.google.common.collect.Lists;
+
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Single line of the {@link MacroBenchmark} results file.
+ */
+final class MacroResult {
+  static final String HEADER = "scenario,objects,rows,rows_per_second,allocated_bytes_per_row,peak_heap_bytes,provider_calls_per_row";
+
+  final String mScenario;
+  final int mObjects;
+  final long mRows;
+  final double mRowsPerSecond;
+  final double mAllocatedBytesPerRow;
+  final long mPeakHeapBytes;
+  final double mProviderCallsPerRow;
+
+  MacroResult(String scenario, int objects, long rows, double rowsPerSecond, double allocatedBytesPerRow, long peakHeapBytes, double providerCallsPerRow) {
+    mScenario = scenario;
+    mObjects = objects;
+    mRows = rows;
+    mRowsPerSecond = rowsPerSecond;
+    mAllocatedBytesPerRow = allocatedBytesPerRow;
+    mPeakHeapBytes = peakHeapBytes;
+    mProviderCallsPerRow = providerCallsPerRow;
+  }
+
+  String getKey() {
+    return mScenario + "@" + mObjects;
+  }
+
+  String toCsv() {
+    return Joiner.on(',').join(
+        mScenario,
+        mObjects,
+        mRows,
+        String.format(Locale.US, "%.1f", mRowsPerSecond),
+        String.format(Locale.US, "%.1f", mAllocatedBytesPerRow),
+        mPeakHeapBytes,
+        String.format(Locale.US, "%.4f", mProviderCallsPerRow)
+    );
+  }
+
+  static MacroResult fromCsv(String line) {
+    List<String> fields = Lists.newArrayList(Splitter.on(',').trimResults().split(line));
+    Preconditions.checkArgument(fields.size() == 7, "Malformed result line: " + line);
+
+    return new MacroResult(
+        fields.get(0),
+        Integer.parseInt(fields.get(1)),
+        Long.parseLong(fields.get(2)),
+        Double.parseDouble(fields.get(3)),
+        Double.parseDouble(fields.get(4)),
+        Long.parseLong(fields.get(5)),
+        Double.parseDouble(fields.get(6))
+    );
+  }
+}
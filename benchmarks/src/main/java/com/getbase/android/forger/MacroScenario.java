@@ -0,0 +1,92 @@
+/*
+ * Copyright (C) 2013 Jerzy Chalupski
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.getbase.android.forger;
+
+import com.getbase.android.forger.tests.TestModels;
+import com.getbase.android.forger.tests.TestModels.TestModel;
+
+import java.util.List;
+
+/**
+ * End to end seeding scenarios run by {@link MacroBenchmark}. Each scenario creates the given
+ * number of top level objects; the number of rows actually inserted, including the automatically
+ * created parents, is reported separately.
+ */
+enum MacroScenario {
+  /**
+   * Deals with automatically created Contacts and Users: four rows per Deal.
+   */
+  DEAL_CHAIN {
+    @Override
+    void seed(Forger<TestModel> forger, ForgerSink sink, int objects) {
+      forger.iNeed(objects).of(TestModels.Deal.class).inBatchesOf(BATCH_SIZE).in(sink);
+    }
+  },
+
+  /**
+   * Notes and Taggings spread across a fixed pool of Contacts, Deals and Leads, with the Tag and
+   * User of Taggings taken from the faking context.
+   */
+  POLYMORPHIC {
+    @Override
+    void seed(Forger<TestModel> forger, ForgerSink sink, int objects) {
+      List<TestModels.Contact> contacts = forger.iNeed(PARENTS_POOL_SIZE).of(TestModels.Contact.class).in(sink);
+      List<TestModels.Deal> deals = forger.iNeed(PARENTS_POOL_SIZE).of(TestModels.Deal.class).in(sink);
+      List<TestModels.Lead> leads = forger.iNeed(PARENTS_POOL_SIZE).of(TestModels.Lead.class).in(sink);
+
+      forger.iNeed(objects / 2)
+          .of(TestModels.Note.class)
+          .spreadAcross(contacts, 2)
+          .spreadAcross(deals)
+          .spreadAcross(leads)
+          .inBatchesOf(BATCH_SIZE)
+          .in(sink);
+
+      Forger<TestModel> taggingForger = forger
+          .inContextOf(forger.iNeed(TestModels.Tag.class).in(sink))
+          .inContextOf(forger.iNeed(TestModels.User.class).in(sink));
+      taggingForger.iNeed(objects - objects / 2)
+          .of(TestModels.Tagging.class)
+          .spreadAcross(contacts)
+          .spreadAcross(deals)
+          .spreadAcross(leads)
+          .inBatchesOf(BATCH_SIZE)
+          .in(sink);
+    }
+  },
+
+  /**
+   * Companies with nine employees each, linked by the recursive Contact relationship.
+   */
+  RECURSIVE {
+    @Override
+    void seed(Forger<TestModel> forger, ForgerSink sink, int objects) {
+      Forger<TestModel> userForger = forger.inContextOf(forger.iNeed(TestModels.User.class).in(sink));
+
+      int companies = Math.max(1, objects / (EMPLOYEES_PER_COMPANY + 1));
+      for (TestModels.Contact company : userForger.iNeed(companies).of(TestModels.Contact.class).inBatchesOf(BATCH_SIZE).in(sink)) {
+        userForger.iNeed(EMPLOYEES_PER_COMPANY).of(TestModels.Contact.class).relatedTo(company).inBatchesOf(EMPLOYEES_PER_COMPANY).in(sink);
+      }
+    }
+  };
+
+  private static final int BATCH_SIZE = 500;
+  private static final int PARENTS_POOL_SIZE = 100;
+  private static final int EMPLOYEES_PER_COMPANY = 9;
+
+  abstract void seed(Forger<TestModel> forger, ForgerSink sink, int objects);
+}
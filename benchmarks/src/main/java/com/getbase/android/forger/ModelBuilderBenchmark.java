@@ -0,0 +1,113 @@
+/*
+ * Copyright (C) 2013 Jerzy Chalupski
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.getbase.android.forger;
+
+import com.getbase.android.forger.ForgerSchema.Dependency;
+import com.getbase.android.forger.tests.TestModels;
+import com.google.common.collect.Lists;
+
+import org.chalup.microorm.MicroOrm;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import android.content.ContentValues;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Costs of preparing a single row, before anything is inserted: building the ModelBuilder, which
+ * fakes the object and converts it to ContentValues, and the helpers used to fill the foreign keys.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ModelBuilderBenchmark {
+  private Forger<TestModels.TestModel> mForger;
+  private ModelFaker<TestModels.Deal> mDealFaker;
+  private Dependency<TestModels.TestModel> mContactDependency;
+  private TestModels.Contact mContact;
+
+  @Setup
+  public void setUp() {
+    mForger = new Forger<>(TestModels.MODEL_GRAPH, new MicroOrm());
+    mContact = mForger.iNeed(TestModels.Contact.class).in(new InMemoryContentProvider());
+
+    List<String> dependenciesColumns = Lists.newArrayList();
+    for (Dependency<TestModels.TestModel> dependency : ForgerSchema.of(TestModels.MODEL_GRAPH).getDependencies(TestModels.Deal.class)) {
+      dependenciesColumns.addAll(dependency.getColumns());
+      if (dependency.canBeSatisfiedWith(TestModels.Contact.class)) {
+        mContactDependency = dependency;
+      }
+    }
+    mDealFaker = new ModelFaker<>(TestModels.Deal.class, ModelFaker.getDefaultGenerators(), dependenciesColumns);
+  }
+
+  /**
+   * Includes introspection cache lookup, faking the object and initializing the ContentValues.
+   */
+  @Benchmark
+  public Object modelBuilderConstruction() {
+    return mForger.iNeed(TestModels.Deal.class);
+  }
+
+  @Benchmark
+  public Object multiModelBuilderConstruction() {
+    return mForger.iNeed(100).of(TestModels.Deal.class);
+  }
+
+  @Benchmark
+  public Object fillFake() {
+    return mDealFaker.fake();
+  }
+
+  @Benchmark
+  public Object modelFakerIntrospection() {
+    return new ModelFaker<>(TestModels.Deal.class);
+  }
+
+  @Benchmark
+  public Object putIntoContentValues() {
+    ContentValues values = new ContentValues();
+    Forger.putIntoContentValues(values, "id", 42);
+    Forger.putIntoContentValues(values, "name", "Deal");
+    Forger.putIntoContentValues(values, "is_admin", true);
+    Forger.putIntoContentValues(values, "updated_at", null);
+    return values;
+  }
+
+  /**
+   * Reads the parent id with the cached id getter and puts it into the ContentValues.
+   */
+  @Benchmark
+  public Object idGetter() {
+    ContentValues values = new ContentValues();
+    mContactDependency.satisfyDependencyWith(values, mContact);
+    return values;
+  }
+}
@@ -0,0 +1,115 @@
+/*
+ * Copyright (C) 2013 Jerzy Chalupski
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.getbase.android.forger;
+
+import com.google.common.base.Preconditions;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Chooses the size of the next batch from the latency and payload size of the previous one. The
+ * per row latency and size of the last batch are used to compute how many rows fit in the target
+ * latency and in the payload limit, e.g. the binder transaction limit. To avoid oscillation the
+ * batch size is at most doubled or halved at a time, and it always stays within the configured
+ * bounds. The first batch has the minimum size.
+ * <p>
+ * The sizer is thread-safe, but it should be shared only between inserts into the same sink.
+ */
+public final class AdaptiveBatchSizer {
+  private final int mMinBatchSize;
+  private final int mMaxBatchSize;
+  private final long mTargetLatencyNanos;
+  private final long mMaxPayloadBytes;
+
+  private int mBatchSize;
+
+  public static Builder builder() {
+    return new Builder();
+  }
+
+  public static class Builder {
+    private int mMinBatchSize;
+    private int mMaxBatchSize;
+    private long mTargetLatencyNanos;
+    private long mMaxPayloadBytes;
+
+    private Builder() {
+    }
+
+    public Builder withBounds(int minBatchSize, int maxBatchSize) {
+      Preconditions.checkState(mMinBatchSize == 0, "You've already set bounds");
+      Preconditions.checkArgument(minBatchSize > 0, "Minimum batch size must be greater than 0");
+      Preconditions.checkArgument(maxBatchSize >= minBatchSize, "Maximum batch size must not be smaller than minimum batch size");
+      mMinBatchSize = minBatchSize;
+      mMaxBatchSize = maxBatchSize;
+      return this;
+    }
+
+    public Builder withTargetLatency(long latency, TimeUnit unit) {
+      Preconditions.checkState(mTargetLatencyNanos == 0, "You've already set target latency");
+      Preconditions.checkArgument(latency > 0, "Target latency must be greater than 0");
+      mTargetLatencyNanos = unit.toNanos(latency);
+      return this;
+    }
+
+    /**
+     * Limits the estimated payload of a batch. By default the payload size is not limited.
+     */
+    public Builder withMaxPayloadBytes(long maxPayloadBytes) {
+      Preconditions.checkArgument(maxPayloadBytes > 0, "Maximum payload must be greater than 0");
+      mMaxPayloadBytes = maxPayloadBytes;
+      return this;
+    }
+
+    public AdaptiveBatchSizer build() {
+      Preconditions.checkState(mMinBatchSize > 0, "Bounds are not set");
+      Preconditions.checkState(mTargetLatencyNanos > 0, "Target latency is not set");
+      return new AdaptiveBatchSizer(this);
+    }
+  }
+
+  private AdaptiveBatchSizer(Builder builder) {
+    mMinBatchSize = builder.mMinBatchSize;
+    mMaxBatchSize = builder.mMaxBatchSize;
+    mTargetLatencyNanos = builder.mTargetLatencyNanos;
+    mMaxPayloadBytes = builder.mMaxPayloadBytes;
+
+    mBatchSize = mMinBatchSize;
+  }
+
+  public synchronized int getBatchSize() {
+    return mBatchSize;
+  }
+
+  /**
+   * Updates the batch size after a batch of given number of rows and estimated payload size was
+   * inserted in given time, and returns the new batch size.
+   */
+  public synchronized int adjust(int rows, long payloadBytes, long nanos) {
+    Preconditions.checkArgument(rows > 0, "Batch must contain at least one row");
+
+    double rowsWithinLatency = nanos > 0 ? rows * (double) mTargetLatencyNanos / nanos : Double.MAX_VALUE;
+    double rowsWithinPayload = mMaxPayloadBytes > 0 && payloadBytes > 0 ? rows * (double) mMaxPayloadBytes / payloadBytes : Double.MAX_VALUE;
+
+    double batchSize = Math.min(rowsWithinLatency, rowsWithinPayload);
+    batchSize = Math.max(Math.min(batchSize, mBatchSize * 2.0), mBatchSize / 2.0);
+    batchSize = Math.max(Math.min(batchSize, mMaxBatchSize), mMinBatchSize);
+
+    mBatchSize = (int) batchSize;
+    return mBatchSize;
+  }
+}
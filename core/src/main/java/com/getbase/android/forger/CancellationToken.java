@@ -0,0 +1,34 @@
+/*
+ * Copyright (C) 2013 Jerzy Chalupski
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.getbase.android.forger;
+
+/**
+ * Cooperative cancellation of inserting multiple objects. Once {@link #cancel()} is called, Forger
+ * stops building new objects, inserts the ones already built and returns what was created.
+ * The token can be shared by any number of builders and threads.
+ */
+public final class CancellationToken {
+  private volatile boolean mCancelled;
+
+  public void cancel() {
+    mCancelled = true;
+  }
+
+  public boolean isCancelled() {
+    return mCancelled;
+  }
+}
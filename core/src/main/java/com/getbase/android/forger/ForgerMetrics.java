@@ -0,0 +1,243 @@
+/*
+ * Copyright (C) 2013 Jerzy Chalupski
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.getbase.android.forger;
+
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Maps;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Thread-safe per model class counters of rows inserted by Forger, parents created automatically,
+ * read-backs and time spent in fake data generators, with latency histograms of the insert and
+ * query calls. Pass it to the Forger builder to start recording; take a {@link #snapshot()} to read
+ * the values and {@link #reset()} it between the phases of a test.
+ */
+public final class ForgerMetrics {
+  private final ConcurrentMap<Class<?>, ModelRecorder> mRecorders = Maps.newConcurrentMap();
+
+  void recordInsert(Class<?> klass, int rows, long nanos) {
+    ModelRecorder recorder = getRecorder(klass);
+    recorder.mRowsInserted.addAndGet(rows);
+    recorder.mInsertLatency.record(nanos);
+  }
+
+  void recordAutoCreatedParent(Class<?> klass) {
+    getRecorder(klass).mAutoCreatedParents.incrementAndGet();
+  }
+
+  void recordReadBack(Class<?> klass, long nanos) {
+    ModelRecorder recorder = getRecorder(klass);
+    recorder.mReadBacks.incrementAndGet();
+    recorder.mQueryLatency.record(nanos);
+  }
+
+  void recordGeneratorTime(Class<?> klass, long nanos) {
+    getRecorder(klass).mGeneratorNanos.addAndGet(nanos);
+  }
+
+  void recordBatchSizeChange(Class<?> klass, int oldBatchSize, int newBatchSize) {
+    ModelRecorder recorder = getRecorder(klass);
+    if (newBatchSize > oldBatchSize) {
+      recorder.mBatchSizeIncreases.incrementAndGet();
+    } else if (newBatchSize < oldBatchSize) {
+      recorder.mBatchSizeDecreases.incrementAndGet();
+    }
+    recorder.mBatchSize.set(newBatchSize);
+  }
+
+  public void reset() {
+    for (ModelRecorder recorder : mRecorders.values()) {
+      recorder.reset();
+    }
+  }
+
+  public Snapshot snapshot() {
+    ImmutableMap.Builder<Class<?>, ModelMetrics> models = ImmutableMap.builder();
+    for (Map.Entry<Class<?>, ModelRecorder> entry : mRecorders.entrySet()) {
+      models.put(entry.getKey(), entry.getValue().snapshot());
+    }
+    return new Snapshot(models.build());
+  }
+
+  private ModelRecorder getRecorder(Class<?> klass) {
+    ModelRecorder recorder = mRecorders.get(klass);
+    if (recorder == null) {
+      recorder = new ModelRecorder();
+      ModelRecorder existing = mRecorders.putIfAbsent(klass, recorder);
+      if (existing != null) {
+        recorder = existing;
+      }
+    }
+    return recorder;
+  }
+
+  private static class ModelRecorder {
+    private final AtomicLong mRowsInserted = new AtomicLong();
+    private final AtomicLong mAutoCreatedParents = new AtomicLong();
+    private final AtomicLong mReadBacks = new AtomicLong();
+    private final AtomicLong mGeneratorNanos = new AtomicLong();
+    private final AtomicLong mBatchSizeIncreases = new AtomicLong();
+    private final AtomicLong mBatchSizeDecreases = new AtomicLong();
+    private final AtomicInteger mBatchSize = new AtomicInteger();
+    private final LatencyHistogram mInsertLatency = new LatencyHistogram();
+    private final LatencyHistogram mQueryLatency = new LatencyHistogram();
+
+    void reset() {
+      mRowsInserted.set(0);
+      mAutoCreatedParents.set(0);
+      mReadBacks.set(0);
+      mGeneratorNanos.set(0);
+      mBatchSizeIncreases.set(0);
+      mBatchSizeDecreases.set(0);
+      mBatchSize.set(0);
+      mInsertLatency.reset();
+      mQueryLatency.reset();
+    }
+
+    ModelMetrics snapshot() {
+      return new ModelMetrics(mRowsInserted.get(), mAutoCreatedParents.get(), mReadBacks.get(), mGeneratorNanos.get(), mBatchSizeIncreases.get(), mBatchSizeDecreases.get(), mBatchSize.get(), mInsertLatency.snapshot(), mQueryLatency.snapshot());
+    }
+  }
+
+  public static final class Snapshot {
+    private final ImmutableMap<Class<?>, ModelMetrics> mModels;
+
+    private Snapshot(ImmutableMap<Class<?>, ModelMetrics> models) {
+      mModels = models;
+    }
+
+    public Map<Class<?>, ModelMetrics> getModels() {
+      return mModels;
+    }
+
+    /**
+     * Returns the metrics of the given model class, or empty metrics if Forger didn't touch it.
+     */
+    public ModelMetrics get(Class<?> klass) {
+      ModelMetrics metrics = mModels.get(klass);
+      return metrics != null ? metrics : ModelMetrics.EMPTY;
+    }
+
+    public long getRowsInserted() {
+      long rows = 0;
+      for (ModelMetrics metrics : mModels.values()) {
+        rows += metrics.getRowsInserted();
+      }
+      return rows;
+    }
+
+    @Override
+    public String toString() {
+      StringBuilder builder = new StringBuilder();
+      for (Map.Entry<Class<?>, ModelMetrics> entry : mModels.entrySet()) {
+        builder.append(entry.getKey().getSimpleName()).append(": ").append(entry.getValue()).append('\n');
+      }
+      return builder.toString();
+    }
+  }
+
+  public static final class ModelMetrics {
+    private static final ModelMetrics EMPTY = new ModelMetrics(0, 0, 0, 0, 0, 0, 0, new LatencyHistogram().snapshot(), new LatencyHistogram().snapshot());
+
+    private final long mRowsInserted;
+    private final long mAutoCreatedParents;
+    private final long mReadBacks;
+    private final long mGeneratorNanos;
+    private final long mBatchSizeIncreases;
+    private final long mBatchSizeDecreases;
+    private final int mBatchSize;
+    private final LatencyHistogram.Snapshot mInsertLatency;
+    private final LatencyHistogram.Snapshot mQueryLatency;
+
+    private ModelMetrics(long rowsInserted, long autoCreatedParents, long readBacks, long generatorNanos, long batchSizeIncreases, long batchSizeDecreases, int batchSize, LatencyHistogram.Snapshot insertLatency, LatencyHistogram.Snapshot queryLatency) {
+      mRowsInserted = rowsInserted;
+      mAutoCreatedParents = autoCreatedParents;
+      mReadBacks = readBacks;
+      mGeneratorNanos = generatorNanos;
+      mBatchSizeIncreases = batchSizeIncreases;
+      mBatchSizeDecreases = batchSizeDecreases;
+      mBatchSize = batchSize;
+      mInsertLatency = insertLatency;
+      mQueryLatency = queryLatency;
+    }
+
+    public long getRowsInserted() {
+      return mRowsInserted;
+    }
+
+    public long getAutoCreatedParents() {
+      return mAutoCreatedParents;
+    }
+
+    public long getReadBacks() {
+      return mReadBacks;
+    }
+
+    public long getGeneratorTime(TimeUnit unit) {
+      return unit.convert(mGeneratorNanos, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * Returns how many times the {@link AdaptiveBatchSizer} grew the batch size.
+     */
+    public long getBatchSizeIncreases() {
+      return mBatchSizeIncreases;
+    }
+
+    /**
+     * Returns how many times the {@link AdaptiveBatchSizer} shrank the batch size.
+     */
+    public long getBatchSizeDecreases() {
+      return mBatchSizeDecreases;
+    }
+
+    /**
+     * Returns the last batch size chosen by the {@link AdaptiveBatchSizer}, or 0 if it never
+     * changed it.
+     */
+    public int getBatchSize() {
+      return mBatchSize;
+    }
+
+    /**
+     * Latencies of the insert calls; a batch insert is recorded as a single call.
+     */
+    public LatencyHistogram.Snapshot getInsertLatency() {
+      return mInsertLatency;
+    }
+
+    public LatencyHistogram.Snapshot getQueryLatency() {
+      return mQueryLatency;
+    }
+
+    @Override
+    public String toString() {
+      return "rows: " + mRowsInserted
+          + ", auto-created parents: " + mAutoCreatedParents
+          + ", read-backs: " + mReadBacks
+          + ", generator time: " + getGeneratorTime(TimeUnit.MICROSECONDS) + " us"
+          + ", batch size: " + mBatchSize + " (+" + mBatchSizeIncreases + "/-" + mBatchSizeDecreases + ")"
+          + ", insert p50/p99: " + mInsertLatency.getPercentile(50, TimeUnit.MICROSECONDS) + "/" + mInsertLatency.getPercentile(99, TimeUnit.MICROSECONDS) + " us"
+          + ", query p50/p99: " + mQueryLatency.getPercentile(50, TimeUnit.MICROSECONDS) + "/" + mQueryLatency.getPercentile(99, TimeUnit.MICROSECONDS) + " us";
+    }
+  }
+}
@@ -0,0 +1,157 @@
+/*
+ * Copyright (C) 2013 Jerzy Chalupski
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.getbase.android.forger;
+
+import com.google.common.base.Preconditions;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Thread-safe histogram of latencies in nanoseconds with HDR-style buckets: every power of two
+ * range is split into {@value #SUB_BUCKETS} linear sub-buckets, so the recorded values are kept
+ * with about 6% precision over the whole range, in a fixed amount of memory.
+ */
+public final class LatencyHistogram {
+  private static final int SUB_BUCKET_BITS = 4;
+  private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+  private static final int BUCKETS = (Long.SIZE - SUB_BUCKET_BITS) * SUB_BUCKETS;
+
+  private final AtomicLongArray mCounts = new AtomicLongArray(BUCKETS);
+  private final AtomicLong mTotalCount = new AtomicLong();
+  private final AtomicLong mTotalNanos = new AtomicLong();
+  private final AtomicLong mMaxNanos = new AtomicLong();
+
+  public void record(long nanos) {
+    if (nanos < 0) {
+      nanos = 0;
+    }
+
+    mCounts.incrementAndGet(getBucket(nanos));
+    mTotalCount.incrementAndGet();
+    mTotalNanos.addAndGet(nanos);
+
+    long max = mMaxNanos.get();
+    while (nanos > max && !mMaxNanos.compareAndSet(max, nanos)) {
+      max = mMaxNanos.get();
+    }
+  }
+
+  public void reset() {
+    for (int i = 0; i < BUCKETS; i++) {
+      mCounts.set(i, 0);
+    }
+    mTotalCount.set(0);
+    mTotalNanos.set(0);
+    mMaxNanos.set(0);
+  }
+
+  public Snapshot snapshot() {
+    long[] counts = new long[BUCKETS];
+    long totalCount = 0;
+    for (int i = 0; i < BUCKETS; i++) {
+      counts[i] = mCounts.get(i);
+      totalCount += counts[i];
+    }
+    return new Snapshot(counts, totalCount, mTotalNanos.get(), mMaxNanos.get());
+  }
+
+  static int getBucket(long nanos) {
+    if (nanos < SUB_BUCKETS) {
+      return (int) nanos;
+    }
+
+    int shift = (Long.SIZE - 1 - Long.numberOfLeadingZeros(nanos)) - SUB_BUCKET_BITS;
+    return (shift + 1) * SUB_BUCKETS + (int) ((nanos >>> shift) & (SUB_BUCKETS - 1));
+  }
+
+  static long getBucketUpperBound(int bucket) {
+    if (bucket < SUB_BUCKETS) {
+      return bucket;
+    }
+
+    int shift = bucket / SUB_BUCKETS - 1;
+    long subBucket = SUB_BUCKETS + bucket % SUB_BUCKETS;
+    return ((subBucket + 1) << shift) - 1;
+  }
+
+  /**
+   * Immutable copy of the histogram state.
+   */
+  public static final class Snapshot {
+    private final long[] mCounts;
+    private final long mCount;
+    private final long mTotalNanos;
+    private final long mMaxNanos;
+
+    private Snapshot(long[] counts, long count, long totalNanos, long maxNanos) {
+      mCounts = counts;
+      mCount = count;
+      mTotalNanos = totalNanos;
+      mMaxNanos = maxNanos;
+    }
+
+    public long getCount() {
+      return mCount;
+    }
+
+    public long getTotal(TimeUnit unit) {
+      return unit.convert(mTotalNanos, TimeUnit.NANOSECONDS);
+    }
+
+    public long getMax(TimeUnit unit) {
+      return unit.convert(mMaxNanos, TimeUnit.NANOSECONDS);
+    }
+
+    public double getMean(TimeUnit unit) {
+      return mCount > 0 ? (double) mTotalNanos / mCount / unit.toNanos(1) : 0;
+    }
+
+    /**
+     * Returns the latency below which the given percent of the recorded values fall, rounded up to
+     * the bucket bound, or 0 if nothing was recorded.
+     */
+    public long getPercentile(double percentile, TimeUnit unit) {
+      Preconditions.checkArgument(percentile > 0 && percentile <= 100, "Percentile must be in (0, 100] range");
+      if (mCount == 0) {
+        return 0;
+      }
+
+      long target = (long) Math.ceil(percentile / 100 * mCount);
+      long cumulative = 0;
+      for (int bucket = 0; bucket < mCounts.length; bucket++) {
+        cumulative += mCounts[bucket];
+        if (cumulative >= target) {
+          return unit.convert(Math.min(getBucketUpperBound(bucket), mMaxNanos), TimeUnit.NANOSECONDS);
+        }
+      }
+      return unit.convert(mMaxNanos, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * Throws {@link AssertionError} if the given percentile of the recorded values is not below
+     * the limit, e.g. {@code assertPercentileBelow(99, 5, MILLISECONDS)}.
+     */
+    public void assertPercentileBelow(double percentile, long limit, TimeUnit unit) {
+      long actualNanos = getPercentile(percentile, TimeUnit.NANOSECONDS);
+      if (actualNanos >= unit.toNanos(limit)) {
+        throw new AssertionError("Expected p" + percentile + " latency below " + limit + " " + unit + ", but was " + actualNanos + " ns");
+      }
+    }
+  }
+}
@@ -0,0 +1,168 @@
+/*
+ * Copyright (C) 2013 Jerzy Chalupski
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.getbase.android.forger;
+
+import com.google.common.base.Preconditions;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Lists;
+
+import org.chalup.microorm.annotations.Column;
+import org.chalup.microorm.annotations.Embedded;
+
+import java.lang.reflect.Field;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Creates objects of a MicroOrm-annotated class with every {@link Column} filled by the registered
+ * {@link FakeDataGenerator}s, recursing into {@link Embedded} fields. The fields are introspected
+ * once, when the ModelFaker is created. Doesn't depend on Android, so it can be used to generate
+ * fixtures on a plain JVM.
+ */
+public final class ModelFaker<T> {
+  private final Class<T> mKlass;
+  private final ClassFactory<T> mClassFactory;
+  private final ImmutableList<FieldFaker> mFieldFakers;
+  private final ImmutableSet<String> mPrimitiveColumns;
+  private final ImmutableSet<String> mReadonlyColumns;
+
+  public ModelFaker(Class<T> klass) {
+    this(klass, getDefaultGenerators(), Collections.<String>emptySet());
+  }
+
+  /**
+   * @param skippedColumns columns which are filled elsewhere, e.g. the foreign keys, and therefore
+   * don't need a generator.
+   */
+  public ModelFaker(Class<T> klass, Map<Class<?>, FakeDataGenerator<?>> generators, Collection<String> skippedColumns) {
+    mKlass = klass;
+    mClassFactory = ClassFactory.get(klass);
+
+    ImmutableSet.Builder<String> primitiveColumns = ImmutableSet.builder();
+    ImmutableSet.Builder<String> readonlyColumns = ImmutableSet.builder();
+    mFieldFakers = ImmutableList.copyOf(introspect(klass, generators, skippedColumns, primitiveColumns, readonlyColumns));
+    mPrimitiveColumns = primitiveColumns.build();
+    mReadonlyColumns = readonlyColumns.build();
+  }
+
+  public T fake() {
+    T fake = instantiate(mClassFactory);
+    fill(mKlass, fake, mFieldFakers);
+    return fake;
+  }
+
+  public Set<String> getPrimitiveColumns() {
+    return mPrimitiveColumns;
+  }
+
+  public Set<String> getReadonlyColumns() {
+    return mReadonlyColumns;
+  }
+
+  public static Map<Class<?>, FakeDataGenerator<?>> getDefaultGenerators() {
+    return ImmutableMap.<Class<?>, FakeDataGenerator<?>>builder()
+        .put(String.class, new FakeDataGenerators.StringGenerator())
+        .put(short.class, new FakeDataGenerators.ShortGenerator())
+        .put(int.class, new FakeDataGenerators.IntegerGenerator())
+        .put(long.class, new FakeDataGenerators.LongGenerator())
+        .put(boolean.class, new FakeDataGenerators.BooleanGenerator())
+        .put(float.class, new FakeDataGenerators.FloatGenerator())
+        .put(double.class, new FakeDataGenerators.DoubleGenerator())
+        .put(Short.class, new FakeDataGenerators.ShortGenerator())
+        .put(Integer.class, new FakeDataGenerators.IntegerGenerator())
+        .put(Long.class, new FakeDataGenerators.LongGenerator())
+        .put(Boolean.class, new FakeDataGenerators.BooleanGenerator())
+        .put(Float.class, new FakeDataGenerators.FloatGenerator())
+        .put(Double.class, new FakeDataGenerators.DoubleGenerator())
+        .build();
+  }
+
+  private interface FieldFaker {
+    void fake(Object target) throws IllegalAccessException;
+  }
+
+  private static List<FieldFaker> introspect(Class<?> klass, Map<Class<?>, FakeDataGenerator<?>> generators, Collection<String> skippedColumns, ImmutableSet.Builder<String> primitiveColumns, ImmutableSet.Builder<String> readonlyColumns) {
+    List<FieldFaker> fieldFakers = Lists.newArrayList();
+
+    for (final Field field : Fields.allFieldsIncludingPrivateAndSuper(klass)) {
+      if (field.getAnnotation(Column.class) != null) {
+        Column columnAnnotation = field.getAnnotation(Column.class);
+        if (field.getType().isPrimitive()) {
+          primitiveColumns.add(columnAnnotation.value());
+        }
+
+        if (columnAnnotation.readonly()) {
+          readonlyColumns.add(columnAnnotation.value());
+        }
+
+        if (!skippedColumns.contains(columnAnnotation.value()) && !columnAnnotation.treatNullAsDefault()) {
+          Class<?> fieldType = field.getType();
+
+          Preconditions.checkArgument(generators.containsKey(fieldType), "Forger doesn't know how to fake the " + fieldType.getName());
+          final FakeDataGenerator<?> generator = generators.get(fieldType);
+
+          field.setAccessible(true);
+          fieldFakers.add(new FieldFaker() {
+            @Override
+            public void fake(Object target) throws IllegalAccessException {
+              field.set(target, generator.generate());
+            }
+          });
+        }
+      } else if (field.getAnnotation(Embedded.class) != null) {
+        final Class<?> embeddedClass = field.getType();
+        final ClassFactory<Object> classFactory = ClassFactory.get(embeddedClass);
+        final List<FieldFaker> embeddedFieldFakers = introspect(embeddedClass, generators, skippedColumns, primitiveColumns, readonlyColumns);
+
+        field.setAccessible(true);
+        fieldFakers.add(new FieldFaker() {
+          @Override
+          public void fake(Object target) throws IllegalAccessException {
+            Object embeddedObject = instantiate(classFactory);
+            fill(embeddedClass, embeddedObject, embeddedFieldFakers);
+            field.set(target, embeddedObject);
+          }
+        });
+      }
+    }
+
+    return fieldFakers;
+  }
+
+  private static void fill(Class<?> klass, Object fake, List<FieldFaker> fieldFakers) {
+    try {
+      for (FieldFaker fieldFaker : fieldFakers) {
+        fieldFaker.fake(fake);
+      }
+    } catch (IllegalAccessException e) {
+      throw new IllegalArgumentException("Forger cannot initialize fields in " + klass.getSimpleName() + ".", e);
+    }
+  }
+
+  private static <T> T instantiate(ClassFactory<T> classFactory) {
+    try {
+      return classFactory.newInstance();
+    } catch (Exception e) {
+      throw new IllegalArgumentException("Forger cannot create the " + classFactory.getClass().getSimpleName() + ".", e);
+    }
+  }
+}
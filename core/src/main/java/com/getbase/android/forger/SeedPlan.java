@@ -0,0 +1,125 @@
+/*
+ * Copyright (C) 2013 Jerzy Chalupski
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.getbase.android.forger;
+
+import com.google.common.base.Strings;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Maps;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Dry run result of {@code Forger.ModelBuilder#plan()}: the requested objects and, nested below
+ * them, every parent object Forger would create automatically to satisfy their dependencies.
+ */
+public final class SeedPlan {
+  private final Class<?> mModelClass;
+  private final int mRows;
+  private final int mBatchSize;
+  private final ImmutableList<SeedPlan> mAutoCreatedParents;
+
+  SeedPlan(Class<?> modelClass, int rows, int batchSize, List<SeedPlan> autoCreatedParents) {
+    mModelClass = modelClass;
+    mRows = rows;
+    mBatchSize = batchSize;
+    mAutoCreatedParents = ImmutableList.copyOf(autoCreatedParents);
+  }
+
+  public Class<?> getModelClass() {
+    return mModelClass;
+  }
+
+  public int getRows() {
+    return mRows;
+  }
+
+  /**
+   * Returns the size of batches the rows of this model are inserted in, or 0 if they are inserted
+   * one by one.
+   */
+  public int getBatchSize() {
+    return mBatchSize;
+  }
+
+  public List<SeedPlan> getAutoCreatedParents() {
+    return mAutoCreatedParents;
+  }
+
+  public Map<Class<?>, Long> getRowsPerModel() {
+    Map<Class<?>, Long> rowsPerModel = Maps.newLinkedHashMap();
+    collectRowsPerModel(rowsPerModel);
+    return ImmutableMap.copyOf(rowsPerModel);
+  }
+
+  private void collectRowsPerModel(Map<Class<?>, Long> rowsPerModel) {
+    Long rows = rowsPerModel.get(mModelClass);
+    rowsPerModel.put(mModelClass, (rows != null ? rows : 0L) + mRows);
+    for (SeedPlan parent : mAutoCreatedParents) {
+      parent.collectRowsPerModel(rowsPerModel);
+    }
+  }
+
+  public long getTotalRows() {
+    long totalRows = mRows;
+    for (SeedPlan parent : mAutoCreatedParents) {
+      totalRows += parent.getTotalRows();
+    }
+    return totalRows;
+  }
+
+  public long getInsertCalls() {
+    long insertCalls = mBatchSize > 0 ? (mRows + mBatchSize - 1) / mBatchSize : mRows;
+    for (SeedPlan parent : mAutoCreatedParents) {
+      insertCalls += parent.getInsertCalls();
+    }
+    return insertCalls;
+  }
+
+  public long getReadBacks() {
+    return getTotalRows();
+  }
+
+  public long getProviderCalls() {
+    return getInsertCalls() + getReadBacks();
+  }
+
+  @Override
+  public String toString() {
+    StringBuilder builder = new StringBuilder();
+    appendTo(builder, 0);
+    builder
+        .append("total rows: ").append(getTotalRows())
+        .append(", insert calls: ").append(getInsertCalls())
+        .append(", read-backs: ").append(getReadBacks());
+    return builder.toString();
+  }
+
+  private void appendTo(StringBuilder builder, int depth) {
+    builder
+        .append(Strings.repeat("  ", depth))
+        .append(mRows).append(" x ").append(mModelClass.getSimpleName());
+    if (mBatchSize > 0) {
+      builder.append(" in batches of ").append(mBatchSize);
+    }
+    builder.append('\n');
+    for (SeedPlan parent : mAutoCreatedParents) {
+      parent.appendTo(builder, depth + 1);
+    }
+  }
+}
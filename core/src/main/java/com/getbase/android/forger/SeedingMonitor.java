@@ -0,0 +1,303 @@
+/*
+ * Copyright (C) 2013 Jerzy Chalupski
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.getbase.android.forger;
+
+import com.google.common.base.Preconditions;
+import com.google.common.base.Ticker;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Maps;
+
+import java.lang.management.ManagementFactory;
+import java.util.Map;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+/**
+ * Live progress of a seeding run: inserted rows per model class, throughput over sliding windows
+ * of 1, 10 and 60 seconds, batches being flushed, rows waiting in the pending batches and the
+ * estimated time remaining for the rows announced with {@link #plan(SeedPlan)}. The run can be
+ * paused, resumed and cancelled; Forger checks the state before inserting every row, i.e. after
+ * the row and its automatically created parents were built, blocks while the monitor is paused
+ * and throws {@link CancellationException} once it's cancelled.
+ * <p>
+ * Pass it to the Forger builder to start monitoring and {@link #register(String)} it in the
+ * platform MBean server to watch and control the run with JConsole, VisualVM or any other JMX
+ * client. JMX is not available on Android, so on devices the monitor can only be used directly.
+ */
+public final class SeedingMonitor implements SeedingMonitorMXBean {
+  // the longest window plus the current, not yet completed second
+  private static final int WINDOW_SECONDS = 61;
+
+  private final Ticker mTicker;
+  private final ConcurrentMap<Class<?>, AtomicLong> mRowsPerModel = Maps.newConcurrentMap();
+  private final AtomicLong mRowsInserted = new AtomicLong();
+  private final AtomicLong mQueuedRows = new AtomicLong();
+  private final AtomicLong mPlannedRows = new AtomicLong();
+  private final AtomicInteger mInFlightBatches = new AtomicInteger();
+
+  private static final long EMPTY_BUCKET = -1;
+
+  // rows inserted in each of the last WINDOW_SECONDS seconds, indexed by second modulo window size;
+  // every bucket packs the second, counted since the monitor was created, in the upper 32 bits and
+  // the rows in the lower 32 bits, so moving the bucket to a new second can't lose added rows
+  private final AtomicLongArray mBuckets = new AtomicLongArray(WINDOW_SECONDS);
+  private final long mStartSecond;
+
+  private final Object mLock = new Object();
+  private volatile boolean mPaused;
+  private volatile boolean mCancelled;
+
+  private ObjectName mObjectName;
+
+  public SeedingMonitor() {
+    this(Ticker.systemTicker());
+  }
+
+  public SeedingMonitor(Ticker ticker) {
+    mTicker = Preconditions.checkNotNull(ticker);
+    mStartSecond = TimeUnit.NANOSECONDS.toSeconds(mTicker.read());
+    for (int i = 0; i < WINDOW_SECONDS; i++) {
+      mBuckets.set(i, EMPTY_BUCKET);
+    }
+  }
+
+  /**
+   * Adds the rows of given plan to the planned rows used for estimating the remaining time.
+   */
+  public void plan(SeedPlan plan) {
+    mPlannedRows.addAndGet(plan.getTotalRows());
+  }
+
+  /**
+   * Blocks while the monitor is paused.
+   *
+   * @throws CancellationException if the monitor was cancelled
+   */
+  void checkpoint() {
+    if (mPaused) {
+      synchronized (mLock) {
+        while (mPaused && !mCancelled) {
+          try {
+            mLock.wait();
+          } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new CancellationException("Interrupted while seeding was paused.");
+          }
+        }
+      }
+    }
+    if (mCancelled) {
+      throw new CancellationException("Seeding was cancelled.");
+    }
+  }
+
+  void recordQueued(int rows) {
+    mQueuedRows.addAndGet(rows);
+  }
+
+  void recordDiscarded(int rows) {
+    mQueuedRows.addAndGet(-rows);
+  }
+
+  void recordBatchStarted() {
+    mInFlightBatches.incrementAndGet();
+  }
+
+  void recordBatchFinished() {
+    mInFlightBatches.decrementAndGet();
+  }
+
+  void recordInserted(Class<?> klass, int rows) {
+    AtomicLong modelRows = mRowsPerModel.get(klass);
+    if (modelRows == null) {
+      AtomicLong newModelRows = new AtomicLong();
+      modelRows = mRowsPerModel.putIfAbsent(klass, newModelRows);
+      if (modelRows == null) {
+        modelRows = newModelRows;
+      }
+    }
+    modelRows.addAndGet(rows);
+    mRowsInserted.addAndGet(rows);
+    mQueuedRows.addAndGet(-rows);
+
+    long second = getCurrentSecond();
+    int index = (int) (second % WINDOW_SECONDS);
+    while (true) {
+      long bucket = mBuckets.get(index);
+      long bucketSecond = getBucketSecond(bucket);
+      if (bucketSecond > second) {
+        // the thread was stalled for the whole window, its rows are out of it already
+        return;
+      }
+
+      long newBucket = bucketSecond == second ? bucket + rows : (second << 32) + rows;
+      if (mBuckets.compareAndSet(index, bucket, newBucket)) {
+        return;
+      }
+    }
+  }
+
+  private long getCurrentSecond() {
+    return TimeUnit.NANOSECONDS.toSeconds(mTicker.read()) - mStartSecond;
+  }
+
+  private static long getBucketSecond(long bucket) {
+    return bucket == EMPTY_BUCKET ? -1 : bucket >>> 32;
+  }
+
+  private static long getBucketRows(long bucket) {
+    return bucket == EMPTY_BUCKET ? 0 : bucket & 0xffffffffL;
+  }
+
+  @Override
+  public long getRowsInserted() {
+    return mRowsInserted.get();
+  }
+
+  @Override
+  public Map<String, Long> getRowsPerModel() {
+    Map<String, Long> rows = Maps.newTreeMap();
+    for (Map.Entry<Class<?>, AtomicLong> entry : mRowsPerModel.entrySet()) {
+      rows.put(entry.getKey().getSimpleName(), entry.getValue().get());
+    }
+    return ImmutableMap.copyOf(rows);
+  }
+
+  @Override
+  public double getRowsPerSecondLast1s() {
+    return getRowsPerSecond(1);
+  }
+
+  @Override
+  public double getRowsPerSecondLast10s() {
+    return getRowsPerSecond(10);
+  }
+
+  @Override
+  public double getRowsPerSecondLast60s() {
+    return getRowsPerSecond(60);
+  }
+
+  /**
+   * Returns the average throughput over given number of the last completed seconds.
+   */
+  private double getRowsPerSecond(int seconds) {
+    long currentSecond = getCurrentSecond();
+    long rows = 0;
+    for (int i = 0; i < WINDOW_SECONDS; i++) {
+      long bucket = mBuckets.get(i);
+      long second = getBucketSecond(bucket);
+      if (second < currentSecond && second >= currentSecond - seconds) {
+        rows += getBucketRows(bucket);
+      }
+    }
+    return rows / (double) seconds;
+  }
+
+  @Override
+  public int getInFlightBatches() {
+    return mInFlightBatches.get();
+  }
+
+  @Override
+  public long getQueuedRows() {
+    return mQueuedRows.get();
+  }
+
+  @Override
+  public long getPlannedRows() {
+    return mPlannedRows.get();
+  }
+
+  @Override
+  public long getEstimatedSecondsRemaining() {
+    long remainingRows = mPlannedRows.get() - mRowsInserted.get();
+    if (remainingRows <= 0) {
+      return mPlannedRows.get() > 0 ? 0 : -1;
+    }
+
+    double rowsPerSecond = getRowsPerSecondLast10s();
+    return rowsPerSecond > 0 ? (long) Math.ceil(remainingRows / rowsPerSecond) : -1;
+  }
+
+  @Override
+  public boolean isPaused() {
+    return mPaused;
+  }
+
+  @Override
+  public boolean isCancelled() {
+    return mCancelled;
+  }
+
+  @Override
+  public void pause() {
+    mPaused = true;
+  }
+
+  @Override
+  public void resume() {
+    synchronized (mLock) {
+      mPaused = false;
+      mLock.notifyAll();
+    }
+  }
+
+  @Override
+  public void cancel() {
+    synchronized (mLock) {
+      mCancelled = true;
+      mLock.notifyAll();
+    }
+  }
+
+  /**
+   * Registers the monitor in the platform MBean server as
+   * {@code com.getbase.android.forger:type=SeedingMonitor,name=<name>}.
+   */
+  public synchronized void register(String name) {
+    Preconditions.checkState(mObjectName == null, "SeedingMonitor is already registered");
+    try {
+      ObjectName objectName = new ObjectName("com.getbase.android.forger:type=SeedingMonitor,name=" + ObjectName.quote(name));
+      ManagementFactory.getPlatformMBeanServer().registerMBean(this, objectName);
+      mObjectName = objectName;
+    } catch (JMException e) {
+      throw new IllegalStateException("Cannot register SeedingMonitor " + name + ".", e);
+    }
+  }
+
+  public synchronized void unregister() {
+    if (mObjectName != null) {
+      MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+      try {
+        server.unregisterMBean(mObjectName);
+      } catch (JMException e) {
+        throw new IllegalStateException("Cannot unregister SeedingMonitor " + mObjectName + ".", e);
+      } finally {
+        mObjectName = null;
+      }
+    }
+  }
+}
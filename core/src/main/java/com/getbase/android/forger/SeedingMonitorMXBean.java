@@ -0,0 +1,62 @@
+/*
+ * Copyright (C) 2013 Jerzy Chalupski
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.getbase.android.forger;
+
+import java.util.Map;
+
+/**
+ * Management interface of {@link SeedingMonitor}, exposed through JMX.
+ */
+public interface SeedingMonitorMXBean {
+  long getRowsInserted();
+
+  /**
+   * Returns the number of inserted rows keyed by simple name of the model class.
+   */
+  Map<String, Long> getRowsPerModel();
+
+  double getRowsPerSecondLast1s();
+
+  double getRowsPerSecondLast10s();
+
+  double getRowsPerSecondLast60s();
+
+  int getInFlightBatches();
+
+  /**
+   * Returns the number of rows which are built and waiting in the pending batches.
+   */
+  long getQueuedRows();
+
+  long getPlannedRows();
+
+  /**
+   * Returns the estimated number of seconds left until the planned rows are inserted, based on
+   * the throughput from the last 10 seconds, or -1 if it cannot be estimated.
+   */
+  long getEstimatedSecondsRemaining();
+
+  boolean isPaused();
+
+  boolean isCancelled();
+
+  void pause();
+
+  void resume();
+
+  void cancel();
+}
@@ -0,0 +1,98 @@
+/*
+ * Copyright (C) 2013 Jerzy Chalupski
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.getbase.android.forger.tests;
+
+import static org.fest.assertions.api.Assertions.assertThat;
+
+import com.getbase.android.forger.AdaptiveBatchSizer;
+
+import org.junit.Test;
+
+import java.util.concurrent.TimeUnit;
+
+public class AdaptiveBatchSizerTest {
+
+  private static final long MS = TimeUnit.MILLISECONDS.toNanos(1);
+
+  @Test
+  public void shouldStartWithMinimumBatchSize() throws Exception {
+    AdaptiveBatchSizer sizer = AdaptiveBatchSizer.builder().withBounds(10, 1000).withTargetLatency(10, TimeUnit.MILLISECONDS).build();
+
+    assertThat(sizer.getBatchSize()).isEqualTo(10);
+  }
+
+  @Test
+  public void shouldGrowAtMostTwiceAtATime() throws Exception {
+    AdaptiveBatchSizer sizer = AdaptiveBatchSizer.builder().withBounds(10, 1000).withTargetLatency(10, TimeUnit.MILLISECONDS).build();
+
+    assertThat(sizer.adjust(10, 100, MS)).isEqualTo(20);
+    assertThat(sizer.adjust(20, 200, 2 * MS)).isEqualTo(40);
+  }
+
+  @Test
+  public void shouldConvergeToTargetLatency() throws Exception {
+    AdaptiveBatchSizer sizer = AdaptiveBatchSizer.builder().withBounds(10, 1000).withTargetLatency(10, TimeUnit.MILLISECONDS).build();
+
+    // 0.1 ms per row
+    for (int i = 0; i < 10; i++) {
+      int rows = sizer.getBatchSize();
+      sizer.adjust(rows, rows, rows * MS / 10);
+    }
+
+    assertThat(sizer.getBatchSize()).isEqualTo(100);
+  }
+
+  @Test
+  public void shouldShrinkAtMostByHalf() throws Exception {
+    AdaptiveBatchSizer sizer = AdaptiveBatchSizer.builder().withBounds(1, 1000).withTargetLatency(10, TimeUnit.MILLISECONDS).build();
+    for (int i = 0; i < 10; i++) {
+      sizer.adjust(sizer.getBatchSize(), 0, 0);
+    }
+    assertThat(sizer.getBatchSize()).isEqualTo(1000);
+
+    assertThat(sizer.adjust(1000, 0, 1000 * MS)).isEqualTo(500);
+  }
+
+  @Test
+  public void shouldStayWithinBounds() throws Exception {
+    AdaptiveBatchSizer sizer = AdaptiveBatchSizer.builder().withBounds(10, 15).withTargetLatency(10, TimeUnit.MILLISECONDS).build();
+
+    assertThat(sizer.adjust(10, 0, 0)).isEqualTo(15);
+    assertThat(sizer.adjust(15, 0, 1000 * MS)).isEqualTo(10);
+  }
+
+  @Test
+  public void shouldLimitPayloadSize() throws Exception {
+    AdaptiveBatchSizer sizer = AdaptiveBatchSizer.builder()
+        .withBounds(10, 1000)
+        .withTargetLatency(10, TimeUnit.MILLISECONDS)
+        .withMaxPayloadBytes(1000)
+        .build();
+
+    assertThat(sizer.adjust(10, 800, MS)).isEqualTo(12);
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void shouldNotAllowInvertedBounds() throws Exception {
+    AdaptiveBatchSizer.builder().withBounds(100, 10);
+  }
+
+  @Test(expected = IllegalStateException.class)
+  public void shouldRequireTargetLatency() throws Exception {
+    AdaptiveBatchSizer.builder().withBounds(1, 10).build();
+  }
+}
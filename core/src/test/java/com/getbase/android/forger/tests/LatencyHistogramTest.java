@@ -0,0 +1,80 @@
+/*
+ * Copyright (C) 2013 Jerzy Chalupski
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.getbase.android.forger.tests;
+
+import static org.fest.assertions.api.Assertions.assertThat;
+
+import com.getbase.android.forger.LatencyHistogram;
+
+import org.junit.Test;
+
+import java.util.concurrent.TimeUnit;
+
+public class LatencyHistogramTest {
+
+  @Test
+  public void shouldReturnZeroForEmptyHistogram() throws Exception {
+    LatencyHistogram.Snapshot snapshot = new LatencyHistogram().snapshot();
+
+    assertThat(snapshot.getCount()).isEqualTo(0);
+    assertThat(snapshot.getPercentile(99, TimeUnit.NANOSECONDS)).isEqualTo(0);
+  }
+
+  @Test
+  public void shouldComputePercentilesWithinBucketPrecision() throws Exception {
+    LatencyHistogram histogram = new LatencyHistogram();
+    for (int i = 1; i <= 1000; i++) {
+      histogram.record(TimeUnit.MICROSECONDS.toNanos(i));
+    }
+
+    LatencyHistogram.Snapshot snapshot = histogram.snapshot();
+    assertThat(snapshot.getCount()).isEqualTo(1000);
+    assertThat(snapshot.getMax(TimeUnit.MICROSECONDS)).isEqualTo(1000);
+    assertThat(snapshot.getPercentile(50, TimeUnit.MICROSECONDS)).isGreaterThanOrEqualTo(500).isLessThanOrEqualTo(500 + 500 / 16);
+    assertThat(snapshot.getPercentile(99, TimeUnit.MICROSECONDS)).isGreaterThanOrEqualTo(990).isLessThanOrEqualTo(1000);
+    assertThat(snapshot.getPercentile(100, TimeUnit.MICROSECONDS)).isEqualTo(1000);
+  }
+
+  @Test
+  public void shouldRecordExactSmallValues() throws Exception {
+    LatencyHistogram histogram = new LatencyHistogram();
+    histogram.record(3);
+    histogram.record(7);
+
+    assertThat(histogram.snapshot().getPercentile(50, TimeUnit.NANOSECONDS)).isEqualTo(3);
+    assertThat(histogram.snapshot().getPercentile(100, TimeUnit.NANOSECONDS)).isEqualTo(7);
+  }
+
+  @Test
+  public void shouldReset() throws Exception {
+    LatencyHistogram histogram = new LatencyHistogram();
+    histogram.record(100);
+
+    histogram.reset();
+
+    assertThat(histogram.snapshot().getCount()).isEqualTo(0);
+    assertThat(histogram.snapshot().getMax(TimeUnit.NANOSECONDS)).isEqualTo(0);
+  }
+
+  @Test(expected = AssertionError.class)
+  public void shouldFailPercentileAssertion() throws Exception {
+    LatencyHistogram histogram = new LatencyHistogram();
+    histogram.record(TimeUnit.MILLISECONDS.toNanos(20));
+
+    histogram.snapshot().assertPercentileBelow(99, 10, TimeUnit.MILLISECONDS);
+  }
+}
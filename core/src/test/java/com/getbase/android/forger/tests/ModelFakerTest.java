@@ -0,0 +1,131 @@
+/*
+ * Copyright (C) 2013 Jerzy Chalupski
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.getbase.android.forger.tests;
+
+import static org.fest.assertions.api.Assertions.assertThat;
+
+import com.getbase.android.forger.FakeDataGenerator;
+import com.getbase.android.forger.ModelFaker;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
+
+import org.chalup.microorm.annotations.Column;
+import org.chalup.microorm.annotations.Embedded;
+import org.junit.Test;
+
+import java.util.Collections;
+import java.util.Date;
+
+public class ModelFakerTest {
+
+  public static class Address {
+    @Column("street")
+    public String street;
+  }
+
+  public static class Person {
+    @Column(value = "_id", readonly = true)
+    public long _id;
+
+    @Column("name")
+    public String name;
+
+    @Column("age")
+    public int age;
+
+    @Column("company_id")
+    public Long companyId;
+
+    @Column(value = "updated_at", treatNullAsDefault = true)
+    public String updatedAt;
+
+    @Embedded
+    public Address address;
+
+    private Person(String name) {
+      this.name = name;
+    }
+  }
+
+  public static class Event {
+    @Column("starts_at")
+    public Date startsAt;
+  }
+
+  @Test
+  public void shouldFillColumnsWithDefaultGenerators() throws Exception {
+    Person person = new ModelFaker<Person>(Person.class).fake();
+
+    assertThat(person.name).isEqualTo("Test1");
+    assertThat(person.age).isEqualTo(1);
+    assertThat(person.companyId).isEqualTo(1L);
+    assertThat(person.updatedAt).isNull();
+  }
+
+  @Test
+  public void shouldFillEmbeddedObjects() throws Exception {
+    Person person = new ModelFaker<Person>(Person.class).fake();
+
+    assertThat(person.address).isNotNull();
+    assertThat(person.address.street).isEqualTo("Test2");
+  }
+
+  @Test
+  public void shouldNotFillSkippedColumns() throws Exception {
+    Person person = new ModelFaker<Person>(Person.class, ModelFaker.getDefaultGenerators(), ImmutableSet.of("company_id")).fake();
+
+    assertThat(person.companyId).isNull();
+  }
+
+  @Test
+  public void shouldReportPrimitiveAndReadonlyColumns() throws Exception {
+    ModelFaker<Person> faker = new ModelFaker<Person>(Person.class);
+
+    assertThat(faker.getPrimitiveColumns()).containsOnly("_id", "age");
+    assertThat(faker.getReadonlyColumns()).containsOnly("_id");
+  }
+
+  @Test
+  public void shouldKeepGeneratorStateBetweenFakes() throws Exception {
+    ModelFaker<Person> faker = new ModelFaker<Person>(Person.class);
+
+    faker.fake();
+    Person person = faker.fake();
+
+    assertThat(person.name).isEqualTo("Test3");
+  }
+
+  @Test
+  public void shouldUseCustomGenerators() throws Exception {
+    final Date date = new Date(0);
+    ImmutableMap<Class<?>, FakeDataGenerator<?>> generators = ImmutableMap.<Class<?>, FakeDataGenerator<?>>of(Date.class, new FakeDataGenerator<Date>() {
+      @Override
+      public Date generate() {
+        return date;
+      }
+    });
+
+    Event event = new ModelFaker<Event>(Event.class, generators, Collections.<String>emptySet()).fake();
+
+    assertThat(event.startsAt).isSameAs(date);
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void shouldNotAcceptColumnsWithoutGenerator() throws Exception {
+    new ModelFaker<Event>(Event.class);
+  }
+}
@@ -0,0 +1,123 @@
+/*
+ * Copyright (C) 2013 Jerzy Chalupski
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.getbase.android.forger;
+
+import com.google.common.collect.ImmutableList;
+
+import android.content.ContentValues;
+import android.net.Uri;
+
+import java.util.List;
+
+class CompositeForgerListener extends ForgerListener {
+  private final ImmutableList<ForgerListener> mListeners;
+
+  private CompositeForgerListener(ImmutableList<ForgerListener> listeners) {
+    mListeners = listeners;
+  }
+
+  /**
+   * Returns null if no listeners are passed, so the callers can skip the notifications entirely.
+   */
+  static ForgerListener of(List<ForgerListener> listeners) {
+    switch (listeners.size()) {
+    case 0:
+      return null;
+    case 1:
+      return listeners.get(0);
+    default:
+      return new CompositeForgerListener(ImmutableList.copyOf(listeners));
+    }
+  }
+
+  @Override
+  public void onBeforeCreate(Class<?> klass, int amount) {
+    for (ForgerListener listener : mListeners) {
+      listener.onBeforeCreate(klass, amount);
+    }
+  }
+
+  @Override
+  public void onAfterCreate(Class<?> klass, int amount, long nanos) {
+    for (ForgerListener listener : mListeners) {
+      listener.onAfterCreate(klass, amount, nanos);
+    }
+  }
+
+  @Override
+  public void onModelFaked(Class<?> klass, long nanos) {
+    for (ForgerListener listener : mListeners) {
+      listener.onModelFaked(klass, nanos);
+    }
+  }
+
+  @Override
+  public void onBeforeInsert(Class<?> klass, Uri modelUri, ContentValues values) {
+    for (ForgerListener listener : mListeners) {
+      listener.onBeforeInsert(klass, modelUri, values);
+    }
+  }
+
+  @Override
+  public void onAfterInsert(Class<?> klass, Uri uri, long nanos) {
+    for (ForgerListener listener : mListeners) {
+      listener.onAfterInsert(klass, uri, nanos);
+    }
+  }
+
+  @Override
+  public void onBeforeBatchFlush(Class<?> klass, int rows) {
+    for (ForgerListener listener : mListeners) {
+      listener.onBeforeBatchFlush(klass, rows);
+    }
+  }
+
+  @Override
+  public void onInsertFailed(Class<?> klass, int rows, Throwable error) {
+    for (ForgerListener listener : mListeners) {
+      listener.onInsertFailed(klass, rows, error);
+    }
+  }
+
+  @Override
+  public void onBatchFlushed(Class<?> klass, List<Uri> uris, long nanos) {
+    for (ForgerListener listener : mListeners) {
+      listener.onBatchFlushed(klass, uris, nanos);
+    }
+  }
+
+  @Override
+  public void onBatchFlushFailed(Class<?> klass, int rows, Throwable error) {
+    for (ForgerListener listener : mListeners) {
+      listener.onBatchFlushFailed(klass, rows, error);
+    }
+  }
+
+  @Override
+  public void onReadBack(Class<?> klass, Uri uri, long nanos) {
+    for (ForgerListener listener : mListeners) {
+      listener.onReadBack(klass, uri, nanos);
+    }
+  }
+
+  @Override
+  public void onDependencyAutoCreated(Class<?> childClass, Object parent) {
+    for (ForgerListener listener : mListeners) {
+      listener.onDependencyAutoCreated(childClass, parent);
+    }
+  }
+}
@@ -0,0 +1,276 @@
+/*
+ * Copyright (C) 2013 Jerzy Chalupski
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.getbase.android.forger;
+
+import com.google.common.base.Preconditions;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
+
+import android.content.ContentProviderClient;
+import android.content.ContentProviderOperation;
+import android.content.ContentProviderResult;
+import android.content.ContentResolver;
+import android.content.ContentValues;
+import android.content.OperationApplicationException;
+import android.database.Cursor;
+import android.net.Uri;
+import android.os.RemoteException;
+
+import java.io.Closeable;
+import java.io.Flushable;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * {@link ForgerSink} writing to a {@link ContentResolver}. Batches are applied as a single
+ * {@link ContentResolver#applyBatch(String, ArrayList)} call, because unlike
+ * {@link ContentResolver#bulkInsert(Uri, ContentValues[])} it reports the Uris of inserted rows.
+ * Every batch contains the rows of a single model, so the transactions are split at model
+ * boundaries. Long batches can additionally be marked with yield points, which let a provider
+ * backed by SQLite commit the transaction and let the waiting readers in.
+ * <p>
+ * For bulk seeding the sink can ask the provider not to notify the observers about every insert,
+ * by adding a query parameter the provider honours to the insert Uris. The sink then notifies
+ * about every affected model Uri once, after each batch and on {@link #notifyPendingChanges()},
+ * which Forger calls through {@link #flush()} when it finishes inserting the requested objects.
+ * <p>
+ * By default every call goes through the ContentResolver, which looks up the provider each time.
+ * With {@link Builder#withProviderClients()} a {@link ContentProviderClient} is acquired once per
+ * authority and reused until {@link #close()}.
+ */
+public class ContentResolverSink implements ForgerSink, Closeable, Flushable {
+  private final ContentResolver mResolver;
+  private final int mYieldInterval;
+  private final String mSuppressNotificationParameter;
+  private final boolean mUseProviderClients;
+
+  // guarded by itself
+  private final Map<String, ContentProviderClient> mProviderClients = Maps.newHashMap();
+
+  // model Uris inserted into since the last notification, guarded by itself
+  private final Set<Uri> mPendingNotifications = Sets.newLinkedHashSet();
+
+  public static Builder builder() {
+    return new Builder();
+  }
+
+  public static class Builder {
+    private ContentResolver mResolver;
+    private int mYieldInterval;
+    private String mSuppressNotificationParameter;
+    private boolean mUseProviderClients;
+
+    private Builder() {
+    }
+
+    public Builder withContentResolver(ContentResolver resolver) {
+      Preconditions.checkState(mResolver == null, "You've already set ContentResolver");
+      mResolver = Preconditions.checkNotNull(resolver);
+      return this;
+    }
+
+    /**
+     * Allows the provider to yield the transaction of a batch every given number of rows, see
+     * {@link ContentProviderOperation.Builder#withYieldAllowed(boolean)}. By default the batches
+     * are applied without yield points.
+     */
+    public Builder withYieldInterval(int rows) {
+      Preconditions.checkArgument(rows > 0, "Passed yield interval must be greater than 0");
+      mYieldInterval = rows;
+      return this;
+    }
+
+    /**
+     * Adds the given query parameter set to "true" to every insert Uri, and notifies about the
+     * changes of each model Uri once per batch instead. The provider must skip the notifications
+     * for the Uris with this parameter.
+     */
+    public Builder withSuppressedNotifications(String queryParameter) {
+      Preconditions.checkState(mSuppressNotificationParameter == null, "You've already set suppress notification parameter");
+      mSuppressNotificationParameter = Preconditions.checkNotNull(queryParameter);
+      return this;
+    }
+
+    /**
+     * Acquires a {@link ContentProviderClient} for every authority on first use and uses it for
+     * all inserts, batches and queries, until the sink is closed.
+     */
+    public Builder withProviderClients() {
+      mUseProviderClients = true;
+      return this;
+    }
+
+    public ContentResolverSink build() {
+      Preconditions.checkState(mResolver != null, "ContentResolver is not set");
+      return new ContentResolverSink(this);
+    }
+  }
+
+  public ContentResolverSink(ContentResolver resolver) {
+    mResolver = Preconditions.checkNotNull(resolver);
+    mYieldInterval = 0;
+    mSuppressNotificationParameter = null;
+    mUseProviderClients = false;
+  }
+
+  private ContentResolverSink(Builder builder) {
+    mResolver = builder.mResolver;
+    mYieldInterval = builder.mYieldInterval;
+    mSuppressNotificationParameter = builder.mSuppressNotificationParameter;
+    mUseProviderClients = builder.mUseProviderClients;
+  }
+
+  @Override
+  public Uri insert(Uri uri, ContentValues values) {
+    Uri result;
+    if (mUseProviderClients) {
+      try {
+        result = getProviderClient(uri).insert(getInsertUri(uri), values);
+      } catch (RemoteException e) {
+        throw new IllegalStateException("Insert into " + uri + " failed.", e);
+      }
+    } else {
+      result = mResolver.insert(getInsertUri(uri), values);
+    }
+    addPendingNotification(uri);
+    return result;
+  }
+
+  @Override
+  public List<Uri> insert(Uri uri, List<ContentValues> values) {
+    Uri insertUri = getInsertUri(uri);
+    ArrayList<ContentProviderOperation> operations = Lists.newArrayListWithCapacity(values.size());
+    for (int i = 0; i < values.size(); i++) {
+      ContentProviderOperation.Builder operation = ContentProviderOperation.newInsert(insertUri).withValues(values.get(i));
+      if (mYieldInterval > 0 && i > 0 && i % mYieldInterval == 0) {
+        // the provider may yield before applying this operation
+        operation.withYieldAllowed(true);
+      }
+      operations.add(operation.build());
+    }
+
+    ContentProviderResult[] results;
+    try {
+      results = mUseProviderClients
+          ? getProviderClient(uri).applyBatch(operations)
+          : mResolver.applyBatch(uri.getAuthority(), operations);
+    } catch (RemoteException e) {
+      throw new IllegalStateException("Batch insert into " + uri + " failed.", e);
+    } catch (OperationApplicationException e) {
+      throw new IllegalStateException("Batch insert into " + uri + " failed.", e);
+    }
+
+    Preconditions.checkState(results != null && results.length == values.size(), "ContentResolver returned unexpected number of batch results.");
+
+    addPendingNotification(uri);
+    notifyPendingChanges();
+
+    List<Uri> uris = Lists.newArrayListWithCapacity(results.length);
+    for (ContentProviderResult result : results) {
+      uris.add(result.uri);
+    }
+    return uris;
+  }
+
+  /**
+   * Same as {@link #notifyPendingChanges()}.
+   */
+  @Override
+  public void flush() {
+    notifyPendingChanges();
+  }
+
+  /**
+   * Notifies the observers of every model Uri inserted into since the last notification. Does
+   * nothing unless the notifications are suppressed.
+   */
+  public void notifyPendingChanges() {
+    if (mSuppressNotificationParameter == null) {
+      return;
+    }
+
+    List<Uri> uris;
+    synchronized (mPendingNotifications) {
+      uris = Lists.newArrayList(mPendingNotifications);
+      mPendingNotifications.clear();
+    }
+    for (Uri uri : uris) {
+      mResolver.notifyChange(uri, null);
+    }
+  }
+
+  private Uri getInsertUri(Uri uri) {
+    return mSuppressNotificationParameter != null
+        ? uri.buildUpon().appendQueryParameter(mSuppressNotificationParameter, "true").build()
+        : uri;
+  }
+
+  private void addPendingNotification(Uri uri) {
+    if (mSuppressNotificationParameter != null) {
+      synchronized (mPendingNotifications) {
+        mPendingNotifications.add(uri);
+      }
+    }
+  }
+
+  @Override
+  public boolean supportsReadBack() {
+    return true;
+  }
+
+  @Override
+  public Cursor query(Uri uri, String[] projection) {
+    if (mUseProviderClients) {
+      try {
+        return getProviderClient(uri).query(uri, projection, null, null, null);
+      } catch (RemoteException e) {
+        throw new IllegalStateException("Query " + uri + " failed.", e);
+      }
+    }
+    return mResolver.query(uri, projection, null, null, null);
+  }
+
+  private ContentProviderClient getProviderClient(Uri uri) {
+    String authority = uri.getAuthority();
+    synchronized (mProviderClients) {
+      ContentProviderClient client = mProviderClients.get(authority);
+      if (client == null) {
+        client = mResolver.acquireContentProviderClient(authority);
+        Preconditions.checkState(client != null, "There is no ContentProvider for " + authority + " authority.");
+        mProviderClients.put(authority, client);
+      }
+      return client;
+    }
+  }
+
+  /**
+   * Releases the acquired {@link ContentProviderClient}s. The sink can still be used afterwards;
+   * the clients will be acquired again.
+   */
+  @Override
+  public void close() {
+    synchronized (mProviderClients) {
+      for (ContentProviderClient client : mProviderClients.values()) {
+        client.release();
+      }
+      mProviderClients.clear();
+    }
+  }
+}
@@ -0,0 +1,163 @@
+/*
+ * Copyright (C) 2013 Jerzy Chalupski
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.getbase.android.forger;
+
+import com.google.common.base.Charsets;
+import com.google.common.base.Preconditions;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Maps;
+import com.google.common.io.Files;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * {@link ForgerListener} recording the tree of objects created by {@link Forger}: every requested
+ * model class with the parent objects created automatically to satisfy its dependencies, their
+ * parents and so on. For every path in the tree the number of created objects, the total time and
+ * the self time, i.e. the total time minus the time spent creating the nested parents, are
+ * aggregated.
+ * <p>
+ * The tree can be written in the collapsed-stack format, one {@code Deal;Contact;User 12345} line
+ * per path with the self time in nanoseconds, which can be rendered by flamegraph.pl, speedscope
+ * and similar tools.
+ * <p>
+ * The time of every path includes generating the fake values of its objects. The objects are
+ * created on the thread which requested them, also with
+ * {@link Forger.MultiModelBuilder#pipelined(int, int)}, so every thread traces its own paths.
+ */
+public class CreationTreeTracer extends ForgerListener {
+  private final ThreadLocal<Deque<Frame>> mStacks = new ThreadLocal<Deque<Frame>>() {
+    @Override
+    protected Deque<Frame> initialValue() {
+      return new ArrayDeque<Frame>();
+    }
+  };
+
+  private final Map<String, Node> mNodes = Maps.newLinkedHashMap();
+
+  private static class Frame {
+    private final String mPath;
+    private long mChildrenNanos;
+
+    private Frame(String path) {
+      mPath = path;
+    }
+  }
+
+  private static class Node {
+    private long mCount;
+    private long mSelfNanos;
+    private long mTotalNanos;
+  }
+
+  @Override
+  public void onBeforeCreate(Class<?> klass, int amount) {
+    Deque<Frame> stack = mStacks.get();
+    Frame parent = stack.peek();
+    String name = klass.getSimpleName();
+    stack.push(new Frame(parent != null ? parent.mPath + ";" + name : name));
+  }
+
+  @Override
+  public void onAfterCreate(Class<?> klass, int amount, long nanos) {
+    Deque<Frame> stack = mStacks.get();
+    Frame frame = stack.pop();
+    Frame parent = stack.peek();
+    if (parent != null) {
+      parent.mChildrenNanos += nanos;
+    }
+
+    synchronized (mNodes) {
+      Node node = mNodes.get(frame.mPath);
+      if (node == null) {
+        node = new Node();
+        mNodes.put(frame.mPath, node);
+      }
+      node.mCount += amount;
+      node.mSelfNanos += Math.max(nanos - frame.mChildrenNanos, 0);
+      node.mTotalNanos += nanos;
+    }
+  }
+
+  /**
+   * Returns the recorded paths, e.g. {@code Deal;Contact;User}, in the order they were first
+   * completed.
+   */
+  public Set<String> getPaths() {
+    synchronized (mNodes) {
+      return ImmutableSet.copyOf(mNodes.keySet());
+    }
+  }
+
+  public long getCount(String path) {
+    synchronized (mNodes) {
+      return getNode(path).mCount;
+    }
+  }
+
+  public long getSelfTime(String path, TimeUnit unit) {
+    synchronized (mNodes) {
+      return unit.convert(getNode(path).mSelfNanos, TimeUnit.NANOSECONDS);
+    }
+  }
+
+  public long getTotalTime(String path, TimeUnit unit) {
+    synchronized (mNodes) {
+      return unit.convert(getNode(path).mTotalNanos, TimeUnit.NANOSECONDS);
+    }
+  }
+
+  private Node getNode(String path) {
+    Node node = mNodes.get(path);
+    Preconditions.checkArgument(node != null, "Nothing was recorded for " + path);
+    return node;
+  }
+
+  public void reset() {
+    synchronized (mNodes) {
+      mNodes.clear();
+    }
+  }
+
+  public void writeCollapsedStacks(Writer writer) throws IOException {
+    synchronized (mNodes) {
+      for (Map.Entry<String, Node> entry : mNodes.entrySet()) {
+        writer.write(entry.getKey());
+        writer.write(' ');
+        writer.write(Long.toString(entry.getValue().mSelfNanos));
+        writer.write('\n');
+      }
+    }
+    writer.flush();
+  }
+
+  public void writeCollapsedStacks(File file) throws IOException {
+    Writer writer = Files.newWriter(file, Charsets.UTF_8);
+    try {
+      writeCollapsedStacks(writer);
+    } finally {
+      writer.close();
+    }
+  }
+}
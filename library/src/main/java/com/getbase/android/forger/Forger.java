@@ -16,49 +16,58 @@
 
 package com.getbase.android.forger;
 
+import com.getbase.android.forger.ForgerSchema.Dependency;
+import com.getbase.android.forger.ForgerSchema.InsertPlan;
+import com.getbase.android.forger.ForgerSchema.InsertStep;
+import com.getbase.android.forger.StagingSink.StagedBatch;
 import com.google.common.base.Function;
-import com.google.common.base.Joiner;
-import com.google.common.base.Objects;
 import com.google.common.base.Preconditions;
 import com.google.common.base.Predicate;
+import com.google.common.base.Throwables;
 import com.google.common.collect.Collections2;
-import com.google.common.collect.HashMultimap;
 import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
 import com.google.common.collect.Iterables;
 import com.google.common.collect.Lists;
 import com.google.common.collect.Maps;
-import com.google.common.collect.Multimap;
 import com.google.common.collect.Sets;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.google.common.util.concurrent.Uninterruptibles;
 
 import org.chalup.microorm.MicroOrm;
-import org.chalup.microorm.annotations.Column;
-import org.chalup.microorm.annotations.Embedded;
-import org.chalup.thneed.ManyToManyRelationship;
 import org.chalup.thneed.ModelGraph;
-import org.chalup.thneed.ModelVisitor;
-import org.chalup.thneed.OneToManyRelationship;
-import org.chalup.thneed.OneToOneRelationship;
-import org.chalup.thneed.PolymorphicRelationship;
-import org.chalup.thneed.RecursiveModelRelationship;
-import org.chalup.thneed.RelationshipVisitor;
 import org.chalup.thneed.models.ContentProviderModel;
 import org.chalup.thneed.models.PojoModel;
 
 import android.content.ContentResolver;
+import android.content.ContentUris;
 import android.content.ContentValues;
 import android.database.Cursor;
+import android.database.MatrixCursor;
 import android.net.Uri;
+import android.provider.BaseColumns;
 
-import java.lang.reflect.Field;
+import java.io.Flushable;
+import java.io.IOException;
 import java.util.Collection;
 import java.util.Collections;
-import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
 
 public class Forger<TModel extends ContentProviderModel & PojoModel> {
 
+  private static final long PIPELINE_POLL_MILLIS = 10;
+
   public static <TModel extends ContentProviderModel & PojoModel> Builder<TModel> builder() {
     return new Builder<TModel>();
   }
@@ -66,18 +75,28 @@ public class Forger<TModel extends ContentProviderModel & PojoModel> {
   public static class Builder<TModel extends ContentProviderModel & PojoModel> {
 
     private ModelGraph<TModel> mModelGraph;
+    private ForgerSchema<TModel> mSchema;
     private MicroOrm mMicroOrm;
     private Map<Class<?>, FakeDataGenerator<?>> mCustomGenerators = Maps.newLinkedHashMap();
+    private ForgerMetrics mMetrics;
+    private List<ForgerListener> mListeners = Lists.newArrayList();
+    private SeedingMonitor mSeedingMonitor;
 
     private Builder() {
     }
 
     public Builder<TModel> withModelGraph(ModelGraph<TModel> modelGraph) {
-      Preconditions.checkState(mModelGraph == null, "You've already set ModelGraph");
+      Preconditions.checkState(mModelGraph == null && mSchema == null, "You've already set ModelGraph");
       mModelGraph = modelGraph;
       return this;
     }
 
+    public Builder<TModel> withSchema(ForgerSchema<TModel> schema) {
+      Preconditions.checkState(mModelGraph == null && mSchema == null, "You've already set ModelGraph");
+      mSchema = schema;
+      return this;
+    }
+
     public Builder<TModel> withMicroOrm(MicroOrm microOrm) {
       Preconditions.checkState(mMicroOrm == null, "You've already set ModelGraph");
       mMicroOrm = microOrm;
@@ -93,11 +112,37 @@ public class Forger<TModel extends ContentProviderModel & PojoModel> {
       return this;
     }
 
+    /**
+     * Records the per model metrics of everything the built Forger inserts in the given
+     * {@link ForgerMetrics}.
+     */
+    public Builder<TModel> withMetrics(ForgerMetrics metrics) {
+      Preconditions.checkState(mMetrics == null, "You've already set ForgerMetrics");
+      mMetrics = Preconditions.checkNotNull(metrics);
+      return this;
+    }
+
+    /**
+     * Reports the progress of everything the built Forger inserts to the given
+     * {@link SeedingMonitor}, which can also pause or cancel the inserts.
+     */
+    public Builder<TModel> withSeedingMonitor(SeedingMonitor monitor) {
+      Preconditions.checkState(mSeedingMonitor == null, "You've already set SeedingMonitor");
+      mSeedingMonitor = Preconditions.checkNotNull(monitor);
+      return this;
+    }
+
+    public Builder<TModel> registerListener(ForgerListener listener) {
+      Preconditions.checkArgument(listener != null, "Passed listener can't be null");
+      mListeners.add(listener);
+      return this;
+    }
+
     public Forger<TModel> build() {
-      Preconditions.checkState(mModelGraph != null, "ModelGraph is not set");
+      Preconditions.checkState(mModelGraph != null || mSchema != null, "ModelGraph is not set");
       Preconditions.checkState(mMicroOrm != null, "MicroOrm is not set");
       final Map<Class<?>, FakeDataGenerator<?>> filteredDefaults =
-          Maps.filterKeys(getDefaultGenerators(), new Predicate<Class<?>>() {
+          Maps.filterKeys(ModelFaker.getDefaultGenerators(), new Predicate<Class<?>>() {
             @Override
             public boolean apply(java.lang.Class<?> clazz) {
               return !mCustomGenerators.containsKey(clazz);
@@ -108,410 +153,831 @@ public class Forger<TModel extends ContentProviderModel & PojoModel> {
               .putAll(mCustomGenerators)
               .putAll(filteredDefaults)
               .build();
-      return new Forger<TModel>(mModelGraph, mMicroOrm, generators);
+      final ForgerSchema<TModel> schema = mSchema != null ? mSchema : ForgerSchema.of(mModelGraph);
+      final List<ForgerListener> listeners = Lists.newArrayList();
+      if (mSeedingMonitor != null) {
+        // notified first, so that the other listeners see the paused state and current counters
+        listeners.add(new SeedingMonitorListener(mSeedingMonitor));
+      }
+      listeners.addAll(mListeners);
+      return new Forger<TModel>(schema, mMicroOrm, generators, mMetrics, CompositeForgerListener.of(listeners));
     }
   }
 
-  private final Map<Class<?>, TModel> mModels;
+  private final ForgerSchema<TModel> mSchema;
   private final MicroOrm mMicroOrm;
   private final Map<Class<?>, FakeDataGenerator<?>> mGenerators;
-  private final Multimap<Class<?>, Dependency<TModel>> mDependencies;
-  private final Map<IdColumnKey, IdGetter> mIdGetters;
-  private final Map<Class<?>, Object> mContext;
+  private final ConcurrentMap<Class<?>, ModelFaker<?>> mModelFakers;
+  private final ForgerMetrics mMetrics;
+  private final ForgerListener mListener;
+  private final ForgerContext mContext;
 
-  private Forger(Forger<TModel> forger, Map<Class<?>, Object> context) {
-    mModels = forger.mModels;
+  private Forger(Forger<TModel> forger, ForgerContext context) {
+    mSchema = forger.mSchema;
     mMicroOrm = forger.mMicroOrm;
     mGenerators = forger.mGenerators;
-    mDependencies = forger.mDependencies;
-    mIdGetters = forger.mIdGetters;
+    mModelFakers = forger.mModelFakers;
+    mMetrics = forger.mMetrics;
+    mListener = forger.mListener;
 
     mContext = context;
   }
 
-  private interface Dependency<T extends ContentProviderModel & PojoModel> {
-    boolean canBeSatisfiedWith(Class<?> klass);
+  public Forger(ModelGraph<TModel> modelGraph, MicroOrm microOrm) {
+    this(ForgerSchema.of(modelGraph), microOrm);
+  }
 
-    Collection<String> getColumns();
+  public Forger(ForgerSchema<TModel> schema, MicroOrm microOrm) {
+    this(schema, microOrm, ModelFaker.getDefaultGenerators(), null, null);
+  }
 
-    void satisfyDependencyWith(ContentValues contentValues, Object o);
+  private Forger(ForgerSchema<TModel> schema, MicroOrm microOrm, Map<Class<?>, FakeDataGenerator<?>> generators, ForgerMetrics metrics, ForgerListener listener) {
+    mSchema = schema;
+    mMicroOrm = microOrm;
+    mGenerators = generators;
+    mModelFakers = Maps.newConcurrentMap();
+    mMetrics = metrics;
+    mListener = listener;
+    mContext = ForgerContext.EMPTY;
+  }
 
-    void satisfyDependencyWithNewObject(ContentValues contentValues, Forger<T> forger, ContentResolver resolver);
+  public <T> SingleModelBuilder<T> iNeed(Class<T> klass) {
+    return new SingleModelBuilder<T>(klass);
   }
 
-  public Forger(ModelGraph<TModel> modelGraph, MicroOrm microOrm) {
-    this(modelGraph, microOrm, getDefaultGenerators());
+  public AmountBuilder iNeed(int amount) {
+    return new AmountBuilder(amount);
+  }
+
+  public Forger<TModel> inContextOf(Object o) {
+    Preconditions.checkArgument(mSchema.containsModel(o.getClass()), "Cannot create faking context for " + o.getClass().getName() + ", because it's not a part of ModelGraph.");
+
+    return new Forger<TModel>(this, mContext.push(o));
   }
 
-  private static class IdColumnKey {
-    private final Class<?> mClass;
-    private final String mColumn;
+  public <TContext> ContextBuilder<TContext> inContextOf(Class<TContext> klass) {
+    Preconditions.checkArgument(mSchema.containsModel(klass), "Cannot create faking context for " + klass.getName() + ", because it's not a part of ModelGraph.");
+
+    return new ContextBuilder<TContext>(klass);
+  }
 
-    private IdColumnKey(Class<?> klass, String column) {
-      Preconditions.checkNotNull(klass);
-      Preconditions.checkNotNull(column);
+  public class ContextBuilder<TContext> {
+    private final SingleModelBuilder<TContext> mBuilder;
 
-      mClass = klass;
-      mColumn = column;
+    private ContextBuilder(Class<TContext> klass) {
+      mBuilder = iNeed(klass);
     }
 
-    @Override
-    public boolean equals(Object o) {
-      if (this == o) return true;
-      if (o == null || getClass() != o.getClass()) return false;
+    public ContextBuilder<TContext> with(String key, Object value) {
+      mBuilder.with(key, value);
+      return this;
+    }
+
+    public Forger<TModel> in(ContentResolver resolver) {
+      return inContextOf(mBuilder.in(resolver));
+    }
+
+    public Forger<TModel> in(ForgerSink sink) {
+      return inContextOf(mBuilder.in(sink));
+    }
+  }
 
-      IdColumnKey that = (IdColumnKey) o;
+  public class AmountBuilder {
 
-      if (!mClass.equals(that.mClass)) return false;
-      if (!mColumn.equals(that.mColumn)) return false;
+    private final int mAmount;
 
-      return true;
+    private AmountBuilder(int amount) {
+      Preconditions.checkArgument(amount > 0, "Passed amount must be greater than 0");
+      mAmount = amount;
     }
 
-    @Override
-    public int hashCode() {
-      return Objects.hashCode(mClass, mColumn);
+    public <T> MultiModelBuilder<T> of(Class<T> klass) {
+      return new MultiModelBuilder<T>(mAmount, klass);
     }
   }
 
-  private interface IdGetter {
-    Object getId(Object o);
+  private interface Insertor<TResult, TModel, T> {
+    TResult insert(ForgerSink sink, TModel model, Class<T> klass, ContentValues contentValues);
   }
 
-  private IdGetter createIdGetter(final IdColumnKey idColumnKey) {
-    for (final Field field : Fields.allFieldsIncludingPrivateAndSuper(idColumnKey.mClass)) {
+  private class SingleInsertor<T> implements Insertor<T, TModel, T> {
+
+    @Override
+    public T insert(ForgerSink sink, TModel model, Class<T> klass, ContentValues contentValues) {
+      ContentValues contentValuesCopy = new ContentValues();
+      contentValuesCopy.putAll(contentValues);
+      return insertCopy(sink, model, klass, contentValuesCopy);
+    }
 
-      Column columnAnnotation = field.getAnnotation(Column.class);
-      if (columnAnnotation != null && columnAnnotation.value().equals(idColumnKey.mColumn)) {
-        return new IdGetter() {
+    private T insertCopy(ForgerSink sink, TModel model, Class<T> klass, ContentValues contentValuesCopy) {
+      return insertCopy(sink, model, klass, contentValuesCopy, mSchema.getInsertPlan(klass, contentValuesCopy, ImmutableSet.<String>of(), mContext.getClasses()));
+    }
 
-          @Override
-          public Object getId(Object o) {
-            boolean wasAccessible = field.isAccessible();
-            try {
-              field.setAccessible(true);
-              return field.get(o);
-            } catch (IllegalAccessException e) {
-              throw new IllegalArgumentException("Forger cannot access " + idColumnKey.mColumn + " column in " + o, e);
-            } finally {
-              field.setAccessible(wasAccessible);
-            }
-          }
-        };
+    private T insertCopy(ForgerSink sink, TModel model, Class<T> klass, ContentValues contentValuesCopy, InsertPlan<TModel> insertPlan) {
+      insertPlan.execute(contentValuesCopy, Forger.this, sink);
+
+      if (mListener != null) {
+        mListener.onBeforeInsert(klass, model.getUri(), contentValuesCopy);
       }
-    }
 
-    throw new IllegalArgumentException("Forger cannot create id getter in " + idColumnKey.mClass + ". Make sure that this class has a field annotated with @Column('" + idColumnKey.mColumn + "').");
+      long start = startTiming();
+      Uri uri;
+      try {
+        uri = sink.insert(model.getUri(), contentValuesCopy);
+      } catch (RuntimeException e) {
+        if (mListener != null) {
+          mListener.onInsertFailed(klass, 1, e);
+        }
+        throw e;
+      }
+      if (start != 0) {
+        long nanos = System.nanoTime() - start;
+        if (mMetrics != null) {
+          mMetrics.recordInsert(klass, 1, nanos);
+        }
+        if (mListener != null) {
+          mListener.onAfterInsert(klass, uri, nanos);
+        }
+      }
+
+      return readBack(sink, uri, klass, contentValuesCopy);
+    }
   }
 
-  private Forger(ModelGraph<TModel> modelGraph, MicroOrm microOrm, Map<Class<?>, FakeDataGenerator<?>> generators) {
-    mModels = Maps.newHashMap();
-    mMicroOrm = microOrm;
-    mGenerators = generators;
-    mDependencies = HashMultimap.create();
-    mIdGetters = Maps.newHashMap();
-    mContext = Maps.newLinkedHashMap();
+  private class MultiInsertor<T> implements Insertor<List<T>, TModel, T> {
 
-    modelGraph.accept(new ModelVisitor<TModel>() {
-      @Override
-      public void visit(TModel model) {
-        Class<?> modelClass = model.getModelClass();
+    private final SingleInsertor<T> mSingleInsertor = new SingleInsertor<T>();
+    private final int mAmount;
+    private WeightedParents mParents;
+    private int mBatchSize;
+    private ProgressCallback mProgressCallback;
+    private int mProgressInterval;
+    private CancellationToken mCancellationToken;
+    private long mTimeBudgetNanos;
+    private AdaptiveBatchSizer mBatchSizer;
+    private int mWriterThreads;
+    private int mQueueCapacity;
+
+    private MultiInsertor(int amount) {
+      mAmount = amount;
+    }
 
-        mModels.put(modelClass, model);
+    @Override
+    public List<T> insert(ForgerSink sink, TModel model, Class<T> klass, ContentValues contentValues) {
+      Collection<String> parentColumns = mParents != null ? mParents.mDependency.getColumns() : ImmutableSet.<String>of();
+      InsertPlan<TModel> insertPlan = mSchema.getInsertPlan(klass, contentValues, parentColumns, mContext.getClasses());
+
+      if (mWriterThreads > 0) {
+        return insertPipelined(sink, model, klass, contentValues, insertPlan);
       }
-    });
 
-    modelGraph.accept(new RelationshipVisitor<TModel>() {
-      private Object getId(Object o, String idColumn) {
-        IdColumnKey idColumnKey = new IdColumnKey(o.getClass(), idColumn);
+      List<T> inserted = Lists.newArrayListWithCapacity(mAmount);
+      int batchSize = mBatchSizer != null ? mBatchSizer.getBatchSize() : mBatchSize;
+      PendingBatch batch = new PendingBatch(sink, model.getUri(), true, mBatchSizer != null);
+      long deadline = mTimeBudgetNanos > 0 ? System.nanoTime() + mTimeBudgetNanos : 0;
+      try {
+        for (int i = 0; i < mAmount && !shouldStop(deadline); i++) {
+          if (batchSize == 0) {
+            ContentValues rowValues = new ContentValues(contentValues);
+            if (mParents != null) {
+              rowValues.putAll(mParents.next());
+            }
+            inserted.add(mSingleInsertor.insertCopy(sink, model, klass, rowValues, insertPlan));
+            reportProgress(inserted.size() - 1, inserted.size());
+          } else {
+            ContentValues parentValues = mParents != null ? mParents.next() : null;
+            batch.add(buildRow(sink, model, klass, contentValues, parentValues, insertPlan));
+            if (batch.size() >= batchSize) {
+              insertBatch(sink, model, klass, batch, inserted);
+              if (mBatchSizer != null) {
+                batchSize = mBatchSizer.getBatchSize();
+              }
+            }
+          }
+        }
 
-        final IdGetter idGetter;
-        if (mIdGetters.containsKey(idColumnKey)) {
-          idGetter = mIdGetters.get(idColumnKey);
-        } else {
-          idGetter = createIdGetter(idColumnKey);
-          mIdGetters.put(idColumnKey, idGetter);
+        if (batch.size() > 0) {
+          insertBatch(sink, model, klass, batch, inserted);
         }
-        return idGetter.getId(o);
+      } catch (RuntimeException e) {
+        discardPendingRows(klass, batch, e);
+        throw e;
       }
 
-      @Override
-      public void visit(final OneToManyRelationship<? extends TModel> relationship) {
-        TModel model = relationship.mModel;
-        mDependencies.put(model.getModelClass(), new Dependency<TModel>() {
-          @Override
-          public boolean canBeSatisfiedWith(Class<?> klass) {
-            TModel parentModel = relationship.mReferencedModel;
-            return parentModel.getModelClass().equals(klass);
-          }
+      return inserted;
+    }
 
-          @Override
-          public Collection<String> getColumns() {
-            return Lists.newArrayList(relationship.mLinkedByColumn);
-          }
+    private void discardPendingRows(Class<T> klass, PendingBatch batch, Throwable error) {
+      int pendingRows = batch.size();
+      batch.clear();
 
-          @Override
-          public void satisfyDependencyWith(ContentValues contentValues, Object o) {
-            putIntoContentValues(contentValues, relationship.mLinkedByColumn, getId(o, relationship.mReferencedModelIdColumn));
-          }
+      if (mListener != null && pendingRows > 0) {
+        mListener.onInsertFailed(klass, pendingRows, error);
+      }
+    }
 
-          @Override
-          public void satisfyDependencyWithNewObject(ContentValues contentValues, Forger<TModel> forger, ContentResolver resolver) {
-            TModel referencedModel = relationship.mReferencedModel;
-            Class<?> modelClass = referencedModel.getModelClass();
-
-            if (forger.mContext.containsKey(modelClass)) {
-              satisfyDependencyWith(contentValues, forger.mContext.get(modelClass));
-            } else {
-              satisfyDependencyWith(contentValues, forger.iNeed(modelClass).in(resolver));
-            }
-          }
-        });
+    private ContentValues buildRow(ForgerSink sink, TModel model, Class<T> klass, ContentValues contentValues, ContentValues parentValues, InsertPlan<TModel> insertPlan) {
+      ContentValues rowValues = new ContentValues(contentValues);
+      if (parentValues != null) {
+        rowValues.putAll(parentValues);
       }
 
-      @Override
-      public void visit(final OneToOneRelationship<? extends TModel> relationship) {
-        TModel linkedModel = relationship.mLinkedModel;
-        mDependencies.put(linkedModel.getModelClass(), new Dependency<TModel>() {
-          @Override
-          public boolean canBeSatisfiedWith(Class<?> klass) {
-            TModel model = relationship.mModel;
-            return model.getModelClass().equals(klass);
-          }
+      insertPlan.execute(rowValues, Forger.this, sink);
+      if (mListener != null) {
+        mListener.onBeforeInsert(klass, model.getUri(), rowValues);
+      }
+      return rowValues;
+    }
 
-          @Override
-          public Collection<String> getColumns() {
-            return Lists.newArrayList(relationship.mLinkedByColumn);
-          }
+    private void insertBatch(ForgerSink sink, TModel model, Class<T> klass, PendingBatch batch, List<T> inserted) {
+      int insertedBefore = inserted.size();
+      List<InsertedRow> insertedRows;
+      try {
+        insertedRows = flushBatch(sink, model, klass, batch, mMicroOrm.getProjection(klass));
+      } finally {
+        // the listener was told about the fate of these rows by flushBatch
+        batch.clear();
+      }
 
-          @Override
-          public void satisfyDependencyWith(ContentValues contentValues, Object o) {
-            putIntoContentValues(contentValues, relationship.mLinkedByColumn, getId(o, relationship.mParentModelIdColumn));
-          }
+      try {
+        for (InsertedRow insertedRow : insertedRows) {
+          inserted.add(toObject(insertedRow, klass));
+        }
+      } finally {
+        closeAll(insertedRows);
+      }
+
+      reportProgress(insertedBefore, inserted.size());
+    }
 
+    /**
+     * Builds the rows on the calling thread and inserts them with the writer threads. The writers
+     * take the rows from a bounded queue in batches, insert them and query them back, and hand the
+     * queried rows back to the calling thread, which converts them to objects whenever it's not
+     * building rows. The first failure interrupts the writers and is rethrown.
+     */
+    private List<T> insertPipelined(final ForgerSink sink, final TModel model, final Class<T> klass, ContentValues contentValues, InsertPlan<TModel> insertPlan) {
+      final BlockingQueue<PipelinedRow> queue = new ArrayBlockingQueue<PipelinedRow>(mQueueCapacity);
+      final BlockingQueue<PipelinedBatch> insertedBatches = new LinkedBlockingQueue<PipelinedBatch>();
+      final AtomicBoolean building = new AtomicBoolean(true);
+      final AtomicInteger flushedRows = new AtomicInteger();
+      final AtomicInteger runningWriters = new AtomicInteger(mWriterThreads);
+      final AtomicReference<Throwable> failure = new AtomicReference<Throwable>();
+      final String[] projection = mMicroOrm.getProjection(klass);
+
+      // all writers are created before any is started, so that the failing one can interrupt the rest
+      final List<Thread> writers = Lists.newArrayListWithCapacity(mWriterThreads);
+      ThreadFactory threadFactory = new ThreadFactoryBuilder()
+          .setNameFormat("forger-" + klass.getSimpleName() + "-%d")
+          .setDaemon(true)
+          .build();
+
+      for (int i = 0; i < mWriterThreads; i++) {
+        writers.add(threadFactory.newThread(new Runnable() {
           @Override
-          public void satisfyDependencyWithNewObject(ContentValues contentValues, Forger<TModel> forger, ContentResolver resolver) {
-            TModel model = relationship.mModel;
-            Class<?> modelClass = model.getModelClass();
-
-            if (forger.mContext.containsKey(modelClass)) {
-              satisfyDependencyWith(contentValues, forger.mContext.get(modelClass));
-            } else {
-              satisfyDependencyWith(contentValues, forger.iNeed(modelClass).in(resolver));
+          public void run() {
+            try {
+              while (true) {
+                PipelinedRow row = queue.poll(PIPELINE_POLL_MILLIS, TimeUnit.MILLISECONDS);
+                if (row == null) {
+                  if (!building.get() && queue.isEmpty()) {
+                    return;
+                  }
+                  continue;
+                }
+
+                List<PipelinedRow> rows = Lists.newArrayList(row);
+                int batchSize = mBatchSizer != null ? mBatchSizer.getBatchSize() : mBatchSize;
+                queue.drainTo(rows, batchSize - 1);
+
+                PendingBatch batch = new PendingBatch(sink, model.getUri(), false, mBatchSizer != null);
+                for (PipelinedRow pipelinedRow : rows) {
+                  batch.add(pipelinedRow.mValues);
+                }
+                flushedRows.addAndGet(rows.size());
+                insertedBatches.add(new PipelinedBatch(rows, flushBatch(sink, model, klass, batch, projection)));
+              }
+            } catch (InterruptedException e) {
+              // the pipeline was aborted
+            } catch (Throwable t) {
+              abortPipeline(writers, failure, t);
+            } finally {
+              runningWriters.decrementAndGet();
             }
           }
-        });
+        }));
       }
 
-      @Override
-      public void visit(final RecursiveModelRelationship<? extends TModel> relationship) {
-        TModel model = relationship.mModel;
-        mDependencies.put(model.getModelClass(), new Dependency<TModel>() {
-          @Override
-          public boolean canBeSatisfiedWith(Class<?> klass) {
-            TModel model = relationship.mModel;
-            return model.getModelClass().equals(klass);
-          }
+      for (Thread writer : writers) {
+        writer.start();
+      }
 
-          @Override
-          public Collection<String> getColumns() {
-            return Lists.newArrayList(relationship.mGroupByColumn);
-          }
+      List<T> inserted = Lists.newArrayList(Collections.<T>nCopies(mAmount, null));
+      int builtRows = 0;
+      int convertedRows = 0;
+      long deadline = mTimeBudgetNanos > 0 ? System.nanoTime() + mTimeBudgetNanos : 0;
+      try {
+        for (int i = 0; i < mAmount && !shouldStop(deadline) && failure.get() == null; i++) {
+          ContentValues parentValues = mParents != null ? mParents.next() : null;
+          PipelinedRow row = new PipelinedRow(i, buildRow(sink, model, klass, contentValues, parentValues, insertPlan));
+          builtRows++;
 
-          @Override
-          public void satisfyDependencyWith(ContentValues contentValues, Object o) {
-            putIntoContentValues(contentValues, relationship.mGroupByColumn, getId(o, relationship.mModelIdColumn));
+          while (!queue.offer(row, PIPELINE_POLL_MILLIS, TimeUnit.MILLISECONDS) && failure.get() == null) {
+            convertedRows = convertInsertedBatches(insertedBatches, klass, inserted, convertedRows);
           }
+          convertedRows = convertInsertedBatches(insertedBatches, klass, inserted, convertedRows);
+        }
+        building.set(false);
 
-          @Override
-          public void satisfyDependencyWithNewObject(ContentValues contentValues, Forger<TModel> forger, ContentResolver resolver) {
-            TModel model = relationship.mModel;
-            Class<?> modelClass = model.getModelClass();
-
-            if (forger.mContext.containsKey(modelClass)) {
-              satisfyDependencyWith(contentValues, forger.mContext.get(modelClass));
-            } else {
-              contentValues.putNull(relationship.mGroupByColumn);
-            }
+        while (runningWriters.get() > 0 || !insertedBatches.isEmpty()) {
+          PipelinedBatch insertedBatch = insertedBatches.poll(PIPELINE_POLL_MILLIS, TimeUnit.MILLISECONDS);
+          if (insertedBatch != null) {
+            convertedRows = convertInsertedBatch(insertedBatch, klass, inserted, convertedRows);
+          }
+        }
+      } catch (InterruptedException e) {
+        abortPipeline(writers, failure, e);
+        Thread.currentThread().interrupt();
+        throw new IllegalStateException("Interrupted while inserting " + klass.getSimpleName() + " objects.", e);
+      } catch (RuntimeException e) {
+        abortPipeline(writers, failure, e);
+      } finally {
+        building.set(false);
+        if (failure.get() != null) {
+          for (Thread writer : writers) {
+            Uninterruptibles.joinUninterruptibly(writer);
           }
-        });
+          for (PipelinedBatch insertedBatch : insertedBatches) {
+            closeAll(insertedBatch.mInsertedRows);
+          }
+        }
       }
 
-      @Override
-      public void visit(final ManyToManyRelationship<? extends TModel> relationship) {
-        // no implementation needed, both sides of relationship will be visited
+      Throwable cause = failure.get();
+      if (cause != null) {
+        int discardedRows = builtRows - flushedRows.get();
+        if (mListener != null && discardedRows > 0) {
+          mListener.onInsertFailed(klass, discardedRows, cause);
+        }
+        Throwables.propagateIfPossible(cause);
+        throw new IllegalStateException("Inserting " + klass.getSimpleName() + " objects failed.", cause);
       }
 
-      @Override
-      public void visit(final PolymorphicRelationship<? extends TModel> relationship) {
-        TModel model = relationship.mModel;
-        mDependencies.put(model.getModelClass(), new Dependency<TModel>() {
-          @Override
-          public boolean canBeSatisfiedWith(Class<?> klass) {
-            for (TModel model : relationship.mPolymorphicModels.values()) {
-              if (model.getModelClass().equals(klass)) {
-                return true;
-              }
-            }
+      return Lists.newArrayList(inserted.subList(0, builtRows));
+    }
 
-            return false;
-          }
+    private int convertInsertedBatches(BlockingQueue<PipelinedBatch> insertedBatches, Class<T> klass, List<T> inserted, int convertedRows) {
+      for (PipelinedBatch insertedBatch = insertedBatches.poll(); insertedBatch != null; insertedBatch = insertedBatches.poll()) {
+        convertedRows = convertInsertedBatch(insertedBatch, klass, inserted, convertedRows);
+      }
+      return convertedRows;
+    }
 
-          @Override
-          public Collection<String> getColumns() {
-            return Lists.newArrayList(relationship.mTypeColumnName, relationship.mIdColumnName);
-          }
+    private int convertInsertedBatch(PipelinedBatch insertedBatch, Class<T> klass, List<T> inserted, int convertedRows) {
+      try {
+        for (int i = 0; i < insertedBatch.mRows.size(); i++) {
+          inserted.set(insertedBatch.mRows.get(i).mIndex, toObject(insertedBatch.mInsertedRows.get(i), klass));
+        }
+      } finally {
+        closeAll(insertedBatch.mInsertedRows);
+      }
 
-          @Override
-          public void satisfyDependencyWith(ContentValues contentValues, Object o) {
-            for (Map.Entry<String, ? extends TModel> polymorphicType : relationship.mPolymorphicModels.entrySet()) {
-              TModel model = polymorphicType.getValue();
-              if (model.getModelClass().equals(o.getClass())) {
-                contentValues.put(relationship.mTypeColumnName, polymorphicType.getKey());
-                putIntoContentValues(contentValues, relationship.mIdColumnName, getId(o, relationship.mPolymorphicModelIdColumn));
-                return;
-              }
-            }
+      reportProgress(convertedRows, convertedRows + insertedBatch.mRows.size());
+      return convertedRows + insertedBatch.mRows.size();
+    }
 
-            throw new IllegalStateException();
-          }
+    private void abortPipeline(List<Thread> writers, AtomicReference<Throwable> failure, Throwable cause) {
+      failure.compareAndSet(null, cause);
+      for (Thread writer : writers) {
+        if (writer != Thread.currentThread()) {
+          writer.interrupt();
+        }
+      }
+    }
 
-          @Override
-          public void satisfyDependencyWithNewObject(ContentValues contentValues, Forger<TModel> forger, ContentResolver resolver) {
-            for (Class<?> klass : Lists.reverse(Lists.newArrayList(forger.mContext.keySet()))) {
-              if (canBeSatisfiedWith(klass)) {
-                satisfyDependencyWith(contentValues, forger.mContext.get(klass));
-                return;
-              }
-            }
+    private List<InsertedRow> flushBatch(ForgerSink sink, TModel model, Class<T> klass, PendingBatch batch, String[] projection) {
+      if (mListener != null) {
+        mListener.onBeforeBatchFlush(klass, batch.size());
+      }
 
-            throw new UnsupportedOperationException("Forger cannot automatically satisfy dependency for polymorphic relationship. Please provide object with Forger.relatedTo(Object o) or add the parent object to context using Forger.inContextOf().");
-          }
-        });
+      long start = mBatchSizer != null ? System.nanoTime() : startTiming();
+      List<Uri> uris;
+      try {
+        uris = batch.insert();
+      } catch (RuntimeException e) {
+        if (mListener != null) {
+          mListener.onBatchFlushFailed(klass, batch.size(), e);
+        }
+        throw e;
       }
-    });
-  }
+      long nanos = start != 0 ? System.nanoTime() - start : 0;
+      if (mMetrics != null) {
+        mMetrics.recordInsert(klass, batch.size(), nanos);
+      }
+      if (mListener != null) {
+        mListener.onBatchFlushed(klass, uris, nanos);
+      }
+      Preconditions.checkState(uris.size() == batch.size(), "ForgerSink returned " + uris.size() + " Uris for a batch of " + batch.size() + " rows.");
 
-  public <T> SingleModelBuilder<T> iNeed(Class<T> klass) {
-    return new SingleModelBuilder<T>(klass);
+      if (mBatchSizer != null) {
+        adjustBatchSize(klass, batch.size(), batch.getPayloadBytes(), nanos);
+      }
+
+      List<InsertedRow> insertedRows = Lists.newArrayListWithCapacity(batch.size());
+      try {
+        for (int i = 0; i < batch.size(); i++) {
+          insertedRows.add(query(sink, uris.get(i), klass, projection, batch.getValues(i)));
+        }
+      } catch (RuntimeException e) {
+        closeAll(insertedRows);
+        throw e;
+      }
+      return insertedRows;
+    }
+
+    private void adjustBatchSize(Class<T> klass, int rows, long payloadBytes, long nanos) {
+      int oldBatchSize = mBatchSizer.getBatchSize();
+      int newBatchSize = mBatchSizer.adjust(rows, payloadBytes, nanos);
+      if (mMetrics != null && newBatchSize != oldBatchSize) {
+        mMetrics.recordBatchSizeChange(klass, oldBatchSize, newBatchSize);
+      }
+    }
+
+    private boolean shouldStop(long deadline) {
+      return (mCancellationToken != null && mCancellationToken.isCancelled())
+          || (deadline != 0 && System.nanoTime() - deadline >= 0);
+    }
+
+    private void reportProgress(int insertedBefore, int inserted) {
+      if (mProgressCallback != null && inserted / mProgressInterval > insertedBefore / mProgressInterval) {
+        mProgressCallback.onProgress(inserted, mAmount);
+      }
+    }
   }
 
-  public AmountBuilder iNeed(int amount) {
-    return new AmountBuilder(amount);
+  private <T> T readBack(ForgerSink sink, Uri uri, Class<T> klass, ContentValues insertedValues) {
+    return toObject(query(sink, uri, klass, mMicroOrm.getProjection(klass), insertedValues), klass);
   }
 
-  public Forger<TModel> inContextOf(Object o) {
-    Preconditions.checkArgument(mModels.containsKey(o.getClass()), "Cannot create faking context for " + o.getClass().getName() + ", because it's not a part of ModelGraph.");
+  /**
+   * Queries the inserted row back from the sink, or builds it from the inserted values if the sink
+   * doesn't support reading back. Doesn't use {@link MicroOrm}, so the writer threads of pipelined
+   * inserts can call it.
+   */
+  private InsertedRow query(ForgerSink sink, Uri uri, Class<?> klass, String[] projection, ContentValues insertedValues) {
+    long start = startTiming();
+    Cursor c;
+    if (sink.supportsReadBack()) {
+      c = sink.query(uri, projection);
+      if (mMetrics != null) {
+        mMetrics.recordReadBack(klass, System.nanoTime() - start);
+      }
+    } else {
+      c = buildCursor(uri, projection, insertedValues);
+    }
+    return new InsertedRow(uri, c, start != 0 ? System.nanoTime() - start : 0);
+  }
 
-    HashMap<Class<?>, Object> contextCopy = Maps.newLinkedHashMap(mContext);
-    contextCopy.put(o.getClass(), o);
+  private <T> T toObject(InsertedRow insertedRow, Class<T> klass) {
+    long start = startTiming();
+    Cursor c = insertedRow.mCursor;
+    try {
+      if (c != null && c.moveToFirst()) {
+        T result = mMicroOrm.fromCursor(c, klass);
+        if (mListener != null) {
+          mListener.onReadBack(klass, insertedRow.mUri, insertedRow.mQueryNanos + System.nanoTime() - start);
+        }
+        return result;
+      } else {
+        throw new IllegalStateException("ForgerSink returned null or empty Cursor.");
+      }
+    } finally {
+      if (c != null && !c.isClosed()) {
+        c.close();
+      }
+    }
+  }
 
-    return new Forger<TModel>(this, contextCopy);
+  private static void closeAll(List<InsertedRow> insertedRows) {
+    for (InsertedRow insertedRow : insertedRows) {
+      if (insertedRow.mCursor != null && !insertedRow.mCursor.isClosed()) {
+        insertedRow.mCursor.close();
+      }
+    }
   }
 
-  public <TContext> ContextBuilder<TContext> inContextOf(Class<TContext> klass) {
-    Preconditions.checkArgument(mModels.containsKey(klass), "Cannot create faking context for " + klass.getName() + ", because it's not a part of ModelGraph.");
+  private static class InsertedRow {
+    private final Uri mUri;
+    private final Cursor mCursor;
+    private final long mQueryNanos;
 
-    return new ContextBuilder<TContext>(klass);
+    private InsertedRow(Uri uri, Cursor cursor, long queryNanos) {
+      mUri = uri;
+      mCursor = cursor;
+      mQueryNanos = queryNanos;
+    }
   }
 
-  public class ContextBuilder<TContext> {
-    private final SingleModelBuilder<TContext> mBuilder;
-
-    private ContextBuilder(Class<TContext> klass) {
-      mBuilder = iNeed(klass);
+  /**
+   * Rows waiting for a batch insert. A {@link StagingSink} converts them into its own form as
+   * they're added, so their values are kept only if the inserted objects have to be built from
+   * them.
+   */
+  private static class PendingBatch {
+    private final ForgerSink mSink;
+    private final Uri mUri;
+    private final StagedBatch mStagedBatch;
+    private final boolean mTrackPayload;
+    private final List<ContentValues> mValues = Lists.newArrayList();
+    private int mSize;
+    private long mPayloadBytes;
+
+    private PendingBatch(ForgerSink sink, Uri uri, boolean staged, boolean trackPayload) {
+      mSink = sink;
+      mUri = uri;
+      mStagedBatch = staged && sink instanceof StagingSink ? ((StagingSink) sink).newBatch(uri) : null;
+      mTrackPayload = trackPayload;
     }
 
-    public ContextBuilder<TContext> with(String key, Object value) {
-      mBuilder.with(key, value);
-      return this;
+    private void add(ContentValues values) {
+      if (mTrackPayload) {
+        mPayloadBytes += estimateSize(values);
+      }
+      if (mStagedBatch != null) {
+        mStagedBatch.add(values);
+      }
+      if (mStagedBatch == null || !mSink.supportsReadBack()) {
+        mValues.add(values);
+      }
+      mSize++;
     }
 
-    public Forger<TModel> in(ContentResolver resolver) {
-      return inContextOf(mBuilder.in(resolver));
+    private int size() {
+      return mSize;
     }
-  }
 
-  public class AmountBuilder {
+    private long getPayloadBytes() {
+      return mPayloadBytes;
+    }
 
-    private final int mAmount;
+    /**
+     * Returns the values of the row at given position, or null if they were staged and dropped.
+     */
+    private ContentValues getValues(int index) {
+      return mValues.isEmpty() ? null : mValues.get(index);
+    }
 
-    private AmountBuilder(int amount) {
-      Preconditions.checkArgument(amount > 0, "Passed amount must be greater than 0");
-      mAmount = amount;
+    private List<Uri> insert() {
+      return mStagedBatch != null ? mStagedBatch.insert() : mSink.insert(mUri, mValues);
     }
 
-    public <T> ModelBuilder<List<T>, T> of(Class<T> klass) {
-      return new MultiModelBuilder<T>(mAmount, klass);
+    private void clear() {
+      if (mStagedBatch != null) {
+        mStagedBatch.clear();
+      }
+      mValues.clear();
+      mSize = 0;
+      mPayloadBytes = 0;
     }
   }
 
-  private interface Insertor<TResult, TModel, T> {
-    TResult insert(ContentResolver resolver, TModel model, Class<T> klass, ContentValues contentValues);
+  private static class PipelinedRow {
+    private final int mIndex;
+    private final ContentValues mValues;
+
+    private PipelinedRow(int index, ContentValues values) {
+      mIndex = index;
+      mValues = values;
+    }
   }
 
-  private class SingleInsertor<T> implements Insertor<T, TModel, T> {
+  private static class PipelinedBatch {
+    private final List<PipelinedRow> mRows;
+    private final List<InsertedRow> mInsertedRows;
 
-    @Override
-    public T insert(ContentResolver resolver, TModel model, Class<T> klass, ContentValues contentValues) {
-      ContentValues contentValuesCopy = new ContentValues();
-      contentValuesCopy.putAll(contentValues);
-      for (Dependency<TModel> dependency : mDependencies.get(klass)) {
-        Collection<String> keysOf = getKeysOf(contentValuesCopy);
-        Collection columns = dependency.getColumns();
-        if (Collections.disjoint(keysOf, columns)) {
-          dependency.satisfyDependencyWithNewObject(contentValuesCopy, Forger.this, resolver);
-        } else if (!keysOf.containsAll(columns)) {
-          throw new IllegalStateException("Either override columns [" + Joiner.on(", ").join(columns) + "] using Forger.with(), or satisfy this dependency of " + klass.getSimpleName() + " using Forger.relatedTo().");
-        }
-      }
-      Uri uri = resolver.insert(model.getUri(), contentValuesCopy);
+    private PipelinedBatch(List<PipelinedRow> rows, List<InsertedRow> insertedRows) {
+      mRows = rows;
+      mInsertedRows = insertedRows;
+    }
+  }
 
-      Cursor c = resolver.query(uri, mMicroOrm.getProjection(klass), null, null, null);
-      try {
-        if (c != null && c.moveToFirst()) {
-          return mMicroOrm.fromCursor(c, klass);
-        } else {
-          throw new IllegalStateException("ContentResolver returned null or empty Cursor.");
-        }
-      } finally {
-        if (c != null && !c.isClosed()) {
-          c.close();
-        }
-      }
+  private static Cursor buildCursor(Uri uri, String[] projection, ContentValues insertedValues) {
+    Object[] row = new Object[projection.length];
+    for (int i = 0; i < projection.length; i++) {
+      Object value = BaseColumns._ID.equals(projection[i]) && !insertedValues.containsKey(BaseColumns._ID)
+          ? ContentUris.parseId(uri)
+          : insertedValues.get(projection[i]);
+
+      // Cursors backed by SQLite return booleans as integers, so MicroOrm expects them that way
+      row[i] = value instanceof Boolean ? (((Boolean) value) ? 1 : 0) : value;
     }
+
+    MatrixCursor cursor = new MatrixCursor(projection, 1);
+    cursor.addRow(row);
+    return cursor;
   }
 
-  private class MultiInsertor<T> implements Insertor<List<T>, TModel, T> {
+  /**
+   * Hands out the parent objects registered with {@link MultiModelBuilder#spreadAcross(Collection, int)}
+   * using smooth weighted round robin between pools and plain round robin within each pool, so the
+   * children are interleaved across parent types instead of being inserted in per-type runs.
+   */
+  private class WeightedParents {
+    private final Dependency<TModel> mDependency;
+    private final List<List<ContentValues>> mPools = Lists.newArrayList();
+    private final List<Integer> mWeights = Lists.newArrayList();
+    private int[] mCurrentWeights = new int[0];
+    private int[] mPositions = new int[0];
+    private int mTotalWeight;
+
+    private WeightedParents(Dependency<TModel> dependency) {
+      mDependency = dependency;
+    }
 
-    private final SingleInsertor<T> mSingleInsertor = new SingleInsertor<T>();
-    private final int mAmount;
+    private void addPool(Collection<?> parentObjects, int weight) {
+      List<ContentValues> pool = Lists.newArrayListWithCapacity(parentObjects.size());
+      for (Object parentObject : parentObjects) {
+        ContentValues parentValues = new ContentValues();
+        mDependency.satisfyDependencyWith(parentValues, parentObject);
+        pool.add(parentValues);
+      }
 
-    private MultiInsertor(int amount) {
-      mAmount = amount;
+      mPools.add(pool);
+      mWeights.add(weight);
+      mTotalWeight += weight;
+      mCurrentWeights = new int[mPools.size()];
+      mPositions = new int[mPools.size()];
     }
 
-    @Override
-    public List<T> insert(ContentResolver resolver, TModel model, Class<T> klass, ContentValues contentValues) {
-      List<T> inserted = Lists.newArrayList();
-      for (int i = 0; i < mAmount; i++) {
-        inserted.add(mSingleInsertor.insert(resolver, model, klass, contentValues));
+    private ContentValues next() {
+      int selected = 0;
+      for (int i = 0; i < mCurrentWeights.length; i++) {
+        mCurrentWeights[i] += mWeights.get(i);
+        if (mCurrentWeights[i] > mCurrentWeights[selected]) {
+          selected = i;
+        }
       }
-      return inserted;
+      mCurrentWeights[selected] -= mTotalWeight;
+
+      List<ContentValues> pool = mPools.get(selected);
+      ContentValues parentValues = pool.get(mPositions[selected]);
+      mPositions[selected] = (mPositions[selected] + 1) % pool.size();
+      return parentValues;
     }
   }
 
   public class SingleModelBuilder<T> extends ModelBuilder<T, T> {
 
     private SingleModelBuilder(Class<T> klass) {
-      super(klass, new SingleInsertor<T>());
+      super(klass, 1, new SingleInsertor<T>());
     }
   }
 
   public class MultiModelBuilder<T> extends ModelBuilder<List<T>, T> {
 
+    private final MultiInsertor<T> mMultiInsertor;
+
     private MultiModelBuilder(int amount, Class<T> klass) {
-      super(klass, new MultiInsertor<T>(amount));
+      this(klass, amount, new MultiInsertor<T>(amount));
+    }
+
+    private MultiModelBuilder(Class<T> klass, int amount, MultiInsertor<T> insertor) {
+      super(klass, amount, insertor);
+      mMultiInsertor = insertor;
+    }
+
+    @Override
+    public MultiModelBuilder<T> relatedTo(Object... parentObjects) {
+      super.relatedTo(parentObjects);
+      return this;
+    }
+
+    @Override
+    public MultiModelBuilder<T> with(String key, Object value) {
+      super.with(key, value);
+      return this;
+    }
+
+    @Override
+    Collection<String> getSatisfiedColumns() {
+      if (mMultiInsertor.mParents == null) {
+        return super.getSatisfiedColumns();
+      }
+
+      Set<String> columns = Sets.newHashSet(super.getSatisfiedColumns());
+      columns.addAll(mMultiInsertor.mParents.mDependency.getColumns());
+      return columns;
+    }
+
+    @Override
+    int getBatchSize() {
+      return mMultiInsertor.mBatchSizer != null ? mMultiInsertor.mBatchSizer.getBatchSize() : mMultiInsertor.mBatchSize;
+    }
+
+    /**
+     * Inserts the requested objects with {@link ForgerSink#insert(Uri, List)} in batches of
+     * given size instead of one by one. Parent objects created automatically are still inserted
+     * one by one, because their ids are needed before the batch is built.
+     */
+    public MultiModelBuilder<T> inBatchesOf(int batchSize) {
+      Preconditions.checkArgument(batchSize > 0, "Passed batch size must be greater than 0");
+      Preconditions.checkState(mMultiInsertor.mBatchSizer == null, "You've already set AdaptiveBatchSizer");
+      mMultiInsertor.mBatchSize = batchSize;
+      return this;
+    }
+
+    /**
+     * Inserts the requested objects in batches like {@link #inBatchesOf(int)}, but lets the given
+     * {@link AdaptiveBatchSizer} choose the size of every batch based on the latency and payload
+     * size of the previous one.
+     */
+    public MultiModelBuilder<T> inAdaptiveBatches(AdaptiveBatchSizer batchSizer) {
+      Preconditions.checkNotNull(batchSizer);
+      Preconditions.checkState(mMultiInsertor.mBatchSize == 0, "You've already set batch size");
+      mMultiInsertor.mBatchSizer = batchSizer;
+      return this;
+    }
+
+    /**
+     * Calls the given callback every time the given number of objects is inserted. In the batched
+     * mode the callback is called after the batch which reached the next multiple of the interval.
+     */
+    public MultiModelBuilder<T> withProgressCallback(ProgressCallback callback, int interval) {
+      Preconditions.checkNotNull(callback);
+      Preconditions.checkArgument(interval > 0, "Passed interval must be greater than 0");
+      mMultiInsertor.mProgressCallback = callback;
+      mMultiInsertor.mProgressInterval = interval;
+      return this;
+    }
+
+    /**
+     * Stops creating new objects once the given token is cancelled. The objects already built are
+     * still inserted and {@link #in(ForgerSink)} returns all created objects, which might be less
+     * than the requested amount.
+     */
+    public MultiModelBuilder<T> withCancellationToken(CancellationToken cancellationToken) {
+      mMultiInsertor.mCancellationToken = Preconditions.checkNotNull(cancellationToken);
+      return this;
+    }
+
+    /**
+     * Stops creating new objects after the given time, measured from the {@link #in(ForgerSink)}
+     * call. As with the {@link #withCancellationToken(CancellationToken)}, the objects created so
+     * far are returned. The budget is checked before each object is built, so a batch or an
+     * object with many automatically created parents can overrun it.
+     */
+    public MultiModelBuilder<T> withTimeBudget(long duration, TimeUnit unit) {
+      Preconditions.checkArgument(duration > 0, "Passed time budget must be greater than 0");
+      mMultiInsertor.mTimeBudgetNanos = unit.toNanos(duration);
+      return this;
+    }
+
+    /**
+     * Inserts the rows on the given number of writer threads, while the calling thread builds the
+     * next rows and puts them into a queue of given capacity, waiting when it's full. The writers
+     * take the rows from the queue in batches of the size set with {@link #inBatchesOf(int)} or
+     * {@link #inAdaptiveBatches(AdaptiveBatchSizer)}, or as they come if no batch size was set,
+     * insert them and query them back. The calling thread converts the queried rows to the returned
+     * objects, which are in the requested order.
+     * <p>
+     * All work done with {@link MicroOrm} and the {@link FakeDataGenerator}s, i.e. faking the
+     * models, creating the missing parents and converting the rows, stays on the calling thread,
+     * so they don't have to be thread-safe. The {@link ForgerSink} and the registered
+     * {@link ForgerListener}s are called from multiple threads, so they have to be thread-safe.
+     * {@link ContentResolverSink} and {@link InMemoryContentProvider} are, {@link JdbcSink} and
+     * {@link SQLiteDatabaseSink} are not.
+     */
+    public MultiModelBuilder<T> pipelined(int writerThreads, int queueCapacity) {
+      Preconditions.checkArgument(writerThreads > 0, "Passed number of writer threads must be greater than 0");
+      Preconditions.checkArgument(queueCapacity > 0, "Passed queue capacity must be greater than 0");
+      mMultiInsertor.mWriterThreads = writerThreads;
+      mMultiInsertor.mQueueCapacity = queueCapacity;
+      return this;
+    }
+
+    public MultiModelBuilder<T> spreadAcross(Collection<?> parentObjects) {
+      return spreadAcross(parentObjects, 1);
+    }
+
+    public MultiModelBuilder<T> spreadAcross(Collection<?> parentObjects, int weight) {
+      Preconditions.checkNotNull(parentObjects);
+      Preconditions.checkArgument(!parentObjects.isEmpty(), "Cannot spread objects across an empty collection of parents");
+      Preconditions.checkArgument(weight > 0, "Passed weight must be greater than 0");
+
+      Dependency<TModel> dependency = null;
+      for (Object parentObject : parentObjects) {
+        Dependency<TModel> parentDependency = findDependencyFor(parentObject);
+        Preconditions.checkArgument(dependency == null || dependency == parentDependency, "All parents passed to spreadAcross() must satisfy the same dependency of " + mKlass.getSimpleName());
+        dependency = parentDependency;
+      }
+
+      if (mMultiInsertor.mParents == null) {
+        mMultiInsertor.mParents = new WeightedParents(dependency);
+      }
+      Preconditions.checkArgument(mMultiInsertor.mParents.mDependency == dependency, "All parents passed to spreadAcross() must satisfy the same dependency of " + mKlass.getSimpleName());
+      mMultiInsertor.mParents.addPool(parentObjects, weight);
+
+      return this;
     }
   }
 
@@ -519,20 +985,22 @@ public class Forger<TModel extends ContentProviderModel & PojoModel> {
 
     private final TModel mModel;
     private final Insertor<TResult, TModel, T> mInsertor;
-    private final Class<T> mKlass;
-    private final ClassFactory<T> mClassFactory;
+    final Class<T> mKlass;
+    private final int mAmount;
+    private final ModelFaker<T> mModelFaker;
     private ContentValues mContentValues;
-    private Set<String> mPrimitiveColumns = Sets.newHashSet();
-    private Set<String> mReadonlyColumns = Sets.newHashSet();
+    private long mFakingNanos;
 
-    private ModelBuilder(Class<T> klass, Insertor<TResult, TModel, T> insertor) {
+    private ModelBuilder(Class<T> klass, int amount, Insertor<TResult, TModel, T> insertor) {
       mKlass = klass;
-      mClassFactory = ClassFactory.get(klass);
+      mAmount = amount;
       mInsertor = insertor;
 
-      mModel = mModels.get(klass);
+      mModel = mSchema.getModel(klass);
       Preconditions.checkNotNull(mModel, "Forger cannot create an object of " + klass.getSimpleName() + " from the provided ModelGraph");
 
+      mModelFaker = getModelFaker(klass);
+
       mContentValues = initializeContentValues();
     }
 
@@ -546,10 +1014,14 @@ public class Forger<TModel extends ContentProviderModel & PojoModel> {
       return this;
     }
 
-    private void satisfyDependencyWith(final Object parentObject) {
+    private void satisfyDependencyWith(Object parentObject) {
+      findDependencyFor(parentObject).satisfyDependencyWith(mContentValues, parentObject);
+    }
+
+    Dependency<TModel> findDependencyFor(final Object parentObject) {
       Preconditions.checkNotNull(parentObject);
 
-      Collection<Dependency<TModel>> dependencies = Collections2.filter(mDependencies.get(mKlass), new Predicate<Dependency<TModel>>() {
+      Collection<Dependency<TModel>> dependencies = Collections2.filter(mSchema.getDependencies(mKlass), new Predicate<Dependency<TModel>>() {
         @Override
         public boolean apply(Dependency<TModel> dependency) {
           return dependency.canBeSatisfiedWith(parentObject.getClass());
@@ -560,90 +1032,165 @@ public class Forger<TModel extends ContentProviderModel & PojoModel> {
       case 0:
         throw new IllegalArgumentException(mKlass.getName() + " model is not related to " + parentObject.getClass().getName());
       case 1:
-        Iterables.get(dependencies, 0).satisfyDependencyWith(mContentValues, parentObject);
-        break;
+        return Iterables.get(dependencies, 0);
       default:
         throw new IllegalStateException();
       }
     }
 
     public ModelBuilder<TResult, T> with(String key, Object value) {
-      Preconditions.checkArgument(value != null || !mPrimitiveColumns.contains(key), "Cannot override column for primitive field with null");
-      Preconditions.checkArgument(!mReadonlyColumns.contains(key), "Cannot override readonly column");
+      Preconditions.checkArgument(value != null || !mModelFaker.getPrimitiveColumns().contains(key), "Cannot override column for primitive field with null");
+      Preconditions.checkArgument(!mModelFaker.getReadonlyColumns().contains(key), "Cannot override readonly column");
 
       putIntoContentValues(mContentValues, key, value);
       return this;
     }
 
     public TResult in(ContentResolver resolver) {
-      return mInsertor.insert(resolver, mModel, mKlass, mContentValues);
+      return in(new ContentResolverSink(resolver));
     }
 
-    private ContentValues initializeContentValues() {
-      T fake = instantiateFake(mClassFactory);
+    public TResult in(ForgerSink sink) {
+      Preconditions.checkNotNull(sink);
+      try {
+        return insert(sink);
+      } finally {
+        flush(sink);
+      }
+    }
 
-      Collection<String> dependenciesColumns = Lists.newArrayList();
-      for (Dependency<?> dependency : mDependencies.get(mKlass)) {
-        dependenciesColumns.addAll(dependency.getColumns());
+    /**
+     * Same as {@link #in(ForgerSink)}, but doesn't flush the sink, for the objects created as
+     * a part of inserting other objects.
+     */
+    TResult insert(ForgerSink sink) {
+      if (mListener == null) {
+        return mInsertor.insert(sink, mModel, mKlass, mContentValues);
+      }
+
+      mListener.onBeforeCreate(mKlass, mAmount);
+      long start = System.nanoTime();
+      try {
+        return mInsertor.insert(sink, mModel, mKlass, mContentValues);
+      } finally {
+        // the fake values were generated when this builder was created
+        mListener.onAfterCreate(mKlass, mAmount, System.nanoTime() - start + mFakingNanos);
       }
+    }
+
+    /**
+     * Resolves the dependencies of this builder without touching any ForgerSink and returns
+     * the tree of objects {@link #in(ForgerSink)} would insert.
+     */
+    public SeedPlan plan() {
+      return Forger.this.plan(mKlass, mAmount, getBatchSize(), getSatisfiedColumns(), Lists.<Class<?>>newArrayList());
+    }
+
+    int getBatchSize() {
+      return 0;
+    }
+
+    Collection<String> getSatisfiedColumns() {
+      return getKeysOf(mContentValues);
+    }
 
-      fillFake(mKlass, fake, dependenciesColumns);
+    private ContentValues initializeContentValues() {
+      long start = startTiming();
+      T fake = mModelFaker.fake();
+      if (start != 0) {
+        long nanos = System.nanoTime() - start;
+        if (mMetrics != null) {
+          mMetrics.recordGeneratorTime(mKlass, nanos);
+        }
+        if (mListener != null) {
+          mListener.onModelFaked(mKlass, nanos);
+        }
+        mFakingNanos = nanos;
+      }
 
       ContentValues values = mMicroOrm.toContentValues(fake);
-      for (String column : dependenciesColumns) {
-        values.remove(column);
+      for (Dependency<?> dependency : mSchema.getDependencies(mKlass)) {
+        for (String column : dependency.getColumns()) {
+          values.remove(column);
+        }
       }
 
       return values;
     }
+  }
 
-    private void fillFake(Class<?> klass, Object fake, Collection<String> dependenciesColumns) {
-      try {
-        for (Field field : Fields.allFieldsIncludingPrivateAndSuper(klass)) {
-          boolean wasAccessible = field.isAccessible();
-          field.setAccessible(true);
-
-          if (field.getAnnotation(Column.class) != null) {
-            Column columnAnnotation = field.getAnnotation(Column.class);
-            if (field.getType().isPrimitive()) {
-              mPrimitiveColumns.add(columnAnnotation.value());
-            }
+  private SeedPlan plan(Class<?> klass, int rows, int batchSize, Collection<String> satisfiedColumns, List<Class<?>> path) {
+    Preconditions.checkState(!path.contains(klass), "Forger cannot plan creation of " + klass.getSimpleName() + ", because it transitively depends on itself.");
+    path.add(klass);
 
-            if (columnAnnotation.readonly()) {
-              mReadonlyColumns.add(columnAnnotation.value());
-            }
+    List<SeedPlan> parents = Lists.newArrayList();
+    for (InsertStep<TModel> step : mSchema.getInsertPlan(klass, satisfiedColumns, mContext.getClasses()).mSteps) {
+      if (!step.mFromContext) {
+        Class<?> newObjectClass = step.mDependency.getNewObjectClass();
+        if (newObjectClass != null) {
+          parents.add(plan(newObjectClass, rows, 0, Collections.<String>emptySet(), path));
+        }
+      }
+    }
 
-            if (!dependenciesColumns.contains(columnAnnotation.value())) {
-              if (!columnAnnotation.treatNullAsDefault()) {
-                Class<?> fieldType = field.getType();
+    path.remove(path.size() - 1);
+    return new SeedPlan(klass, rows, batchSize, parents);
+  }
 
-                Preconditions.checkArgument(mGenerators.containsKey(fieldType), "Forger doesn't know how to fake the " + fieldType.getName());
-                field.set(fake, mGenerators.get(fieldType).generate());
-              }
-            }
-          } else if (field.getAnnotation(Embedded.class) != null) {
-            final ClassFactory<Object> classFactory = ClassFactory.get(field.getType());
-            Object embeddedObject = instantiateFake(classFactory);
-            fillFake(field.getType(), embeddedObject, dependenciesColumns);
-            field.set(fake, embeddedObject);
-          }
+  @SuppressWarnings("unchecked")
+  private <T> ModelFaker<T> getModelFaker(Class<T> klass) {
+    ModelFaker<T> modelFaker = (ModelFaker<T>) mModelFakers.get(klass);
+    if (modelFaker == null) {
+      Collection<String> dependenciesColumns = Lists.newArrayList();
+      for (Dependency<?> dependency : mSchema.getDependencies(klass)) {
+        dependenciesColumns.addAll(dependency.getColumns());
+      }
 
-          field.setAccessible(wasAccessible);
-        }
-      } catch (IllegalAccessException e) {
-        throw new IllegalArgumentException("Forger cannot initialize fields in " + klass.getSimpleName() + ".", e);
+      modelFaker = new ModelFaker<T>(klass, mGenerators, dependenciesColumns);
+      ModelFaker<T> existing = (ModelFaker<T>) mModelFakers.putIfAbsent(klass, modelFaker);
+      if (existing != null) {
+        modelFaker = existing;
       }
     }
+    return modelFaker;
+  }
 
-    private <T> T instantiateFake(ClassFactory<T> mClassFactory) {
+  /**
+   * Inserts the parent object needed to satisfy a dependency of childClass no parent was
+   * provided for.
+   */
+  <T> T insertAutoCreatedParent(Class<?> childClass, Class<T> klass, ForgerSink sink) {
+    T parent = iNeed(klass).insert(sink);
+    if (mMetrics != null) {
+      mMetrics.recordAutoCreatedParent(klass);
+    }
+    if (mListener != null) {
+      mListener.onDependencyAutoCreated(childClass, parent);
+    }
+    return parent;
+  }
+
+  private static void flush(ForgerSink sink) {
+    if (sink instanceof Flushable) {
       try {
-        return mClassFactory.newInstance();
-      } catch (Exception e) {
-        throw new IllegalArgumentException("Forger cannot create the " + mClassFactory.getClass().getSimpleName() + ".", e);
+        ((Flushable) sink).flush();
+      } catch (IOException e) {
+        throw new IllegalStateException("Cannot flush ForgerSink.", e);
       }
     }
   }
 
+  /**
+   * Returns the start timestamp, or 0 if neither metrics nor listeners need the timings.
+   */
+  private long startTiming() {
+    return mMetrics != null || mListener != null ? System.nanoTime() : 0;
+  }
+
+  ForgerContext getContext() {
+    return mContext;
+  }
+
   private static Collection<String> getKeysOf(ContentValues values) {
     return Collections2.transform(values.valueSet(), new Function<Map.Entry<String, Object>, String>() {
       @Override
@@ -653,7 +1200,7 @@ public class Forger<TModel extends ContentProviderModel & PojoModel> {
     });
   }
 
-  private void putIntoContentValues(ContentValues values, String key, Object o) {
+  static void putIntoContentValues(ContentValues values, String key, Object o) {
     if (o == null) {
       values.putNull(key);
     } else if (o instanceof Boolean) {
@@ -665,21 +1212,33 @@ public class Forger<TModel extends ContentProviderModel & PojoModel> {
     }
   }
 
-  private static Map<Class<?>, FakeDataGenerator<?>> getDefaultGenerators() {
-    return ImmutableMap.<Class<?>, FakeDataGenerator<?>>builder()
-        .put(String.class, new FakeDataGenerators.StringGenerator())
-        .put(short.class, new FakeDataGenerators.ShortGenerator())
-        .put(int.class, new FakeDataGenerators.IntegerGenerator())
-        .put(long.class, new FakeDataGenerators.LongGenerator())
-        .put(boolean.class, new FakeDataGenerators.BooleanGenerator())
-        .put(float.class, new FakeDataGenerators.FloatGenerator())
-        .put(double.class, new FakeDataGenerators.DoubleGenerator())
-        .put(Short.class, new FakeDataGenerators.ShortGenerator())
-        .put(Integer.class, new FakeDataGenerators.IntegerGenerator())
-        .put(Long.class, new FakeDataGenerators.LongGenerator())
-        .put(Boolean.class, new FakeDataGenerators.BooleanGenerator())
-        .put(Float.class, new FakeDataGenerators.FloatGenerator())
-        .put(Double.class, new FakeDataGenerators.DoubleGenerator())
-        .build();
+  /**
+   * Estimates the payload size of the values: the UTF-16 size of column names and strings, the
+   * length of blobs and the size of primitives.
+   */
+  static long estimateSize(ContentValues values) {
+    long size = 0;
+    for (Map.Entry<String, Object> entry : values.valueSet()) {
+      size += 2 * entry.getKey().length() + estimateSize(entry.getValue());
+    }
+    return size;
+  }
+
+  private static long estimateSize(Object value) {
+    if (value == null) {
+      return 0;
+    } else if (value instanceof String) {
+      return 2 * ((String) value).length();
+    } else if (value instanceof byte[]) {
+      return ((byte[]) value).length;
+    } else if (value instanceof Long || value instanceof Double) {
+      return 8;
+    } else if (value instanceof Integer || value instanceof Float) {
+      return 4;
+    } else if (value instanceof Short) {
+      return 2;
+    } else {
+      return 1;
+    }
   }
 }
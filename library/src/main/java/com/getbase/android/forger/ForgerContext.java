@@ -0,0 +1,90 @@
+/*
+ * Copyright (C) 2013 Jerzy Chalupski
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.getbase.android.forger;
+
+import com.getbase.android.forger.ForgerSchema.Dependency;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
+
+import java.util.Set;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Faking context created by {@link Forger#inContextOf(Object)}. Every scope only links to its
+ * parent, so entering a nested scope doesn't copy anything, and the objects satisfying the
+ * dependencies are looked up once per scope and dependency.
+ */
+final class ForgerContext {
+  static final ForgerContext EMPTY = new ForgerContext(null, null);
+
+  private final ForgerContext mParent;
+  private final Object mObject;
+
+  private volatile ImmutableList<Class<?>> mClasses;
+  private volatile ConcurrentMap<Dependency<?>, Object> mResolvedDependencies;
+
+  private ForgerContext(ForgerContext parent, Object object) {
+    mParent = parent;
+    mObject = object;
+  }
+
+  ForgerContext push(Object o) {
+    return new ForgerContext(this, o);
+  }
+
+  /**
+   * Returns the distinct classes of objects in this context, starting with the most recently
+   * added one.
+   */
+  ImmutableList<Class<?>> getClasses() {
+    ImmutableList<Class<?>> classes = mClasses;
+    if (classes == null) {
+      Set<Class<?>> distinctClasses = Sets.newLinkedHashSet();
+      for (ForgerContext scope = this; scope.mParent != null; scope = scope.mParent) {
+        distinctClasses.add(scope.mObject.getClass());
+      }
+      classes = ImmutableList.copyOf(distinctClasses);
+      mClasses = classes;
+    }
+    return classes;
+  }
+
+  /**
+   * Returns the most recently added object which can satisfy given dependency, or null if there
+   * is no such object in this context.
+   */
+  Object resolve(Dependency<?> dependency) {
+    ConcurrentMap<Dependency<?>, Object> resolvedDependencies = mResolvedDependencies;
+    if (resolvedDependencies == null) {
+      resolvedDependencies = Maps.newConcurrentMap();
+      mResolvedDependencies = resolvedDependencies;
+    }
+
+    Object resolved = resolvedDependencies.get(dependency);
+    if (resolved == null) {
+      for (ForgerContext scope = this; scope.mParent != null; scope = scope.mParent) {
+        if (dependency.canBeSatisfiedWith(scope.mObject.getClass())) {
+          resolved = scope.mObject;
+          resolvedDependencies.put(dependency, resolved);
+          break;
+        }
+      }
+    }
+    return resolved;
+  }
+}
@@ -0,0 +1,116 @@
+/*
+ * Copyright (C) 2013 Jerzy Chalupski
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.getbase.android.forger;
+
+import android.content.ContentValues;
+import android.net.Uri;
+
+import java.util.List;
+
+/**
+ * Callbacks invoked by {@link Forger} around every faked object, insert, read-back and
+ * automatically created parent object. The callbacks are invoked synchronously on the thread
+ * doing the work, so they can be used for tracing, sampling or throttling the inserts. All methods
+ * do nothing by default.
+ * <p>
+ * Usually that's the thread calling {@link Forger.ModelBuilder#in(ForgerSink)}, but with
+ * {@link Forger.MultiModelBuilder#pipelined(int, int)} the batches are inserted on the writer
+ * threads, so {@link #onBeforeBatchFlush}, {@link #onBatchFlushed} and
+ * {@link #onBatchFlushFailed} are called from them, at the same time as the callbacks for the
+ * rows built and converted on the calling thread. Listeners used with pipelined inserts have to
+ * be thread-safe.
+ * <p>
+ * Register listeners with {@link Forger.Builder#registerListener(ForgerListener)}.
+ */
+public abstract class ForgerListener {
+
+  /**
+   * Called when {@link Forger.ModelBuilder#in(ForgerSink)} starts creating the given amount of
+   * objects, including the ones created automatically to satisfy the dependencies. The calls are
+   * nested like the creation of the objects, and each call is paired with {@link #onAfterCreate}.
+   */
+  public void onBeforeCreate(Class<?> klass, int amount) {
+  }
+
+  /**
+   * Called when {@link Forger.ModelBuilder#in(ForgerSink)} finished creating the objects, including
+   * their automatically created parent objects, or failed. The time includes generating the fake
+   * values, which happens when the builder is created, before {@link #onBeforeCreate}.
+   */
+  public void onAfterCreate(Class<?> klass, int amount, long nanos) {
+  }
+
+  /**
+   * Called after a fake object of given class was created and its fields were filled by the
+   * {@link FakeDataGenerator}s.
+   */
+  public void onModelFaked(Class<?> klass, long nanos) {
+  }
+
+  /**
+   * Called right before the row is passed to {@link ForgerSink}. For the batched inserts it's
+   * called when the row is added to the pending batch.
+   */
+  public void onBeforeInsert(Class<?> klass, Uri modelUri, ContentValues values) {
+  }
+
+  /**
+   * Called after a single row was inserted with {@link ForgerSink#insert(Uri, ContentValues)}.
+   */
+  public void onAfterInsert(Class<?> klass, Uri uri, long nanos) {
+  }
+
+  /**
+   * Called when the given number of rows passed to {@link #onBeforeInsert} won't be inserted,
+   * because {@link ForgerSink#insert(Uri, ContentValues)} failed, or the bulk insert failed with
+   * the rows still waiting in the pending batch.
+   */
+  public void onInsertFailed(Class<?> klass, int rows, Throwable error) {
+  }
+
+  /**
+   * Called right before a batch of rows is passed to {@link ForgerSink#insert(Uri, List)}.
+   */
+  public void onBeforeBatchFlush(Class<?> klass, int rows) {
+  }
+
+  /**
+   * Called after a batch of rows was inserted with {@link ForgerSink#insert(Uri, List)}.
+   */
+  public void onBatchFlushed(Class<?> klass, List<Uri> uris, long nanos) {
+  }
+
+  /**
+   * Called instead of {@link #onBatchFlushed} when {@link ForgerSink#insert(Uri, List)} failed.
+   */
+  public void onBatchFlushFailed(Class<?> klass, int rows, Throwable error) {
+  }
+
+  /**
+   * Called after the inserted row was read back and converted to the model object, either by
+   * querying the {@link ForgerSink} or from the inserted values.
+   */
+  public void onReadBack(Class<?> klass, Uri uri, long nanos) {
+  }
+
+  /**
+   * Called after the parent object needed by the object of given class was created and inserted
+   * automatically.
+   */
+  public void onDependencyAutoCreated(Class<?> childClass, Object parent) {
+  }
+}
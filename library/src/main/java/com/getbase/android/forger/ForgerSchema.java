@@ -0,0 +1,484 @@
+/*
+ * Copyright (C) 2013 Jerzy Chalupski
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.getbase.android.forger;
+
+import com.google.common.base.Joiner;
+import com.google.common.base.Objects;
+import com.google.common.base.Preconditions;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableListMultimap;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+
+import org.chalup.microorm.annotations.Column;
+import org.chalup.thneed.ManyToManyRelationship;
+import org.chalup.thneed.ModelGraph;
+import org.chalup.thneed.ModelVisitor;
+import org.chalup.thneed.OneToManyRelationship;
+import org.chalup.thneed.OneToOneRelationship;
+import org.chalup.thneed.PolymorphicRelationship;
+import org.chalup.thneed.RecursiveModelRelationship;
+import org.chalup.thneed.RelationshipVisitor;
+import org.chalup.thneed.models.ContentProviderModel;
+import org.chalup.thneed.models.PojoModel;
+
+import android.content.ContentValues;
+
+import java.lang.ref.SoftReference;
+import java.lang.reflect.Field;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.WeakHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * The part of {@link Forger} derived from a {@link ModelGraph}: the models, the dependencies
+ * between them, the id getters and the compiled insert plans. It is immutable apart from the
+ * caches it fills lazily, so it can be shared by any number of Forgers, each with their own
+ * generators and faking context.
+ */
+public final class ForgerSchema<TModel extends ContentProviderModel & PojoModel> {
+
+  /**
+   * Schemas are held through soft references so the cache does not keep the classes of the model
+   * graph, and hence their class loader, reachable forever.
+   */
+  private static final Map<ModelGraph<?>, SoftReference<ForgerSchema<?>>> sSchemas = new WeakHashMap<ModelGraph<?>, SoftReference<ForgerSchema<?>>>();
+
+  /**
+   * Returns the schema compiled from given {@link ModelGraph}, compiling it only if there is no
+   * cached schema for the same ModelGraph instance.
+   */
+  @SuppressWarnings("unchecked")
+  public static <TModel extends ContentProviderModel & PojoModel> ForgerSchema<TModel> of(ModelGraph<TModel> modelGraph) {
+    Preconditions.checkNotNull(modelGraph);
+
+    synchronized (sSchemas) {
+      SoftReference<ForgerSchema<?>> schemaReference = sSchemas.get(modelGraph);
+      ForgerSchema<TModel> schema = schemaReference != null ? (ForgerSchema<TModel>) schemaReference.get() : null;
+      if (schema == null) {
+        schema = new ForgerSchema<TModel>(modelGraph);
+        sSchemas.put(modelGraph, new SoftReference<ForgerSchema<?>>(schema));
+      }
+      return schema;
+    }
+  }
+
+  interface Dependency<T extends ContentProviderModel & PojoModel> {
+    boolean canBeSatisfiedWith(Class<?> klass);
+
+    Collection<String> getColumns();
+
+    void satisfyDependencyWith(ContentValues contentValues, Object o);
+
+    void satisfyDependencyWithNewObject(ContentValues contentValues, Forger<T> forger, ForgerSink sink);
+
+    /**
+     * Returns the class of object created by {@link #satisfyDependencyWithNewObject}, or null if
+     * no object is created.
+     */
+    Class<?> getNewObjectClass();
+  }
+
+  private static final String POLYMORPHIC_DEPENDENCY_ERROR = "Forger cannot automatically satisfy dependency for polymorphic relationship. Please provide object with Forger.relatedTo(Object o), add the parent object to context using Forger.inContextOf() or spread the objects across parents using MultiModelBuilder.spreadAcross().";
+
+  private final ImmutableMap<Class<?>, TModel> mModels;
+  private final ImmutableListMultimap<Class<?>, Dependency<TModel>> mDependencies;
+  private final ConcurrentMap<IdColumnKey, IdGetter> mIdGetters = Maps.newConcurrentMap();
+  private final ConcurrentMap<InsertPlanKey, InsertPlan<TModel>> mInsertPlans = Maps.newConcurrentMap();
+
+  private ForgerSchema(ModelGraph<TModel> modelGraph) {
+    final Map<Class<?>, TModel> models = Maps.newHashMap();
+    final ImmutableListMultimap.Builder<Class<?>, Dependency<TModel>> dependencies = ImmutableListMultimap.builder();
+
+    modelGraph.accept(new ModelVisitor<TModel>() {
+      @Override
+      public void visit(TModel model) {
+        Class<?> modelClass = model.getModelClass();
+
+        models.put(modelClass, model);
+      }
+    });
+
+    modelGraph.accept(new RelationshipVisitor<TModel>() {
+      private Object getId(Object o, String idColumn) {
+        IdColumnKey idColumnKey = new IdColumnKey(o.getClass(), idColumn);
+
+        IdGetter idGetter = mIdGetters.get(idColumnKey);
+        if (idGetter == null) {
+          idGetter = createIdGetter(idColumnKey);
+          mIdGetters.putIfAbsent(idColumnKey, idGetter);
+        }
+        return idGetter.getId(o);
+      }
+
+      @Override
+      public void visit(final OneToManyRelationship<? extends TModel> relationship) {
+        TModel model = relationship.mModel;
+        dependencies.put(model.getModelClass(), new Dependency<TModel>() {
+          @Override
+          public boolean canBeSatisfiedWith(Class<?> klass) {
+            TModel parentModel = relationship.mReferencedModel;
+            return parentModel.getModelClass().equals(klass);
+          }
+
+          private final ImmutableList<String> mColumns = ImmutableList.of(relationship.mLinkedByColumn);
+
+          @Override
+          public Collection<String> getColumns() {
+            return mColumns;
+          }
+
+          @Override
+          public void satisfyDependencyWith(ContentValues contentValues, Object o) {
+            Forger.putIntoContentValues(contentValues, relationship.mLinkedByColumn, getId(o, relationship.mReferencedModelIdColumn));
+          }
+
+          @Override
+          public void satisfyDependencyWithNewObject(ContentValues contentValues, Forger<TModel> forger, ForgerSink sink) {
+            Class<?> modelClass = relationship.mReferencedModel.getModelClass();
+            satisfyDependencyWith(contentValues, forger.insertAutoCreatedParent(relationship.mModel.getModelClass(), modelClass, sink));
+          }
+
+          @Override
+          public Class<?> getNewObjectClass() {
+            return relationship.mReferencedModel.getModelClass();
+          }
+        });
+      }
+
+      @Override
+      public void visit(final OneToOneRelationship<? extends TModel> relationship) {
+        TModel linkedModel = relationship.mLinkedModel;
+        dependencies.put(linkedModel.getModelClass(), new Dependency<TModel>() {
+          @Override
+          public boolean canBeSatisfiedWith(Class<?> klass) {
+            TModel model = relationship.mModel;
+            return model.getModelClass().equals(klass);
+          }
+
+          private final ImmutableList<String> mColumns = ImmutableList.of(relationship.mLinkedByColumn);
+
+          @Override
+          public Collection<String> getColumns() {
+            return mColumns;
+          }
+
+          @Override
+          public void satisfyDependencyWith(ContentValues contentValues, Object o) {
+            Forger.putIntoContentValues(contentValues, relationship.mLinkedByColumn, getId(o, relationship.mParentModelIdColumn));
+          }
+
+          @Override
+          public void satisfyDependencyWithNewObject(ContentValues contentValues, Forger<TModel> forger, ForgerSink sink) {
+            Class<?> modelClass = relationship.mModel.getModelClass();
+            satisfyDependencyWith(contentValues, forger.insertAutoCreatedParent(relationship.mLinkedModel.getModelClass(), modelClass, sink));
+          }
+
+          @Override
+          public Class<?> getNewObjectClass() {
+            return relationship.mModel.getModelClass();
+          }
+        });
+      }
+
+      @Override
+      public void visit(final RecursiveModelRelationship<? extends TModel> relationship) {
+        TModel model = relationship.mModel;
+        dependencies.put(model.getModelClass(), new Dependency<TModel>() {
+          @Override
+          public boolean canBeSatisfiedWith(Class<?> klass) {
+            TModel model = relationship.mModel;
+            return model.getModelClass().equals(klass);
+          }
+
+          private final ImmutableList<String> mColumns = ImmutableList.of(relationship.mGroupByColumn);
+
+          @Override
+          public Collection<String> getColumns() {
+            return mColumns;
+          }
+
+          @Override
+          public void satisfyDependencyWith(ContentValues contentValues, Object o) {
+            Forger.putIntoContentValues(contentValues, relationship.mGroupByColumn, getId(o, relationship.mModelIdColumn));
+          }
+
+          @Override
+          public void satisfyDependencyWithNewObject(ContentValues contentValues, Forger<TModel> forger, ForgerSink sink) {
+            contentValues.putNull(relationship.mGroupByColumn);
+          }
+
+          @Override
+          public Class<?> getNewObjectClass() {
+            return null;
+          }
+        });
+      }
+
+      @Override
+      public void visit(final ManyToManyRelationship<? extends TModel> relationship) {
+        // no implementation needed, both sides of relationship will be visited
+      }
+
+      @Override
+      public void visit(final PolymorphicRelationship<? extends TModel> relationship) {
+        TModel model = relationship.mModel;
+
+        ImmutableMap.Builder<Class<?>, String> typeKeysBuilder = ImmutableMap.builder();
+        for (Map.Entry<String, ? extends TModel> polymorphicType : relationship.mPolymorphicModels.entrySet()) {
+          typeKeysBuilder.put(polymorphicType.getValue().getModelClass(), polymorphicType.getKey());
+        }
+        final ImmutableMap<Class<?>, String> typeKeys = typeKeysBuilder.build();
+
+        dependencies.put(model.getModelClass(), new Dependency<TModel>() {
+          @Override
+          public boolean canBeSatisfiedWith(Class<?> klass) {
+            return typeKeys.containsKey(klass);
+          }
+
+          private final ImmutableList<String> mColumns = ImmutableList.of(relationship.mTypeColumnName, relationship.mIdColumnName);
+
+          @Override
+          public Collection<String> getColumns() {
+            return mColumns;
+          }
+
+          @Override
+          public void satisfyDependencyWith(ContentValues contentValues, Object o) {
+            String typeKey = typeKeys.get(o.getClass());
+            if (typeKey == null) {
+              throw new IllegalStateException();
+            }
+
+            contentValues.put(relationship.mTypeColumnName, typeKey);
+            Forger.putIntoContentValues(contentValues, relationship.mIdColumnName, getId(o, relationship.mPolymorphicModelIdColumn));
+          }
+
+          @Override
+          public void satisfyDependencyWithNewObject(ContentValues contentValues, Forger<TModel> forger, ForgerSink sink) {
+            throw new UnsupportedOperationException(POLYMORPHIC_DEPENDENCY_ERROR);
+          }
+
+          @Override
+          public Class<?> getNewObjectClass() {
+            throw new UnsupportedOperationException(POLYMORPHIC_DEPENDENCY_ERROR);
+          }
+        });
+      }
+    });
+
+    mModels = ImmutableMap.copyOf(models);
+    mDependencies = dependencies.build();
+  }
+
+  TModel getModel(Class<?> klass) {
+    return mModels.get(klass);
+  }
+
+  boolean containsModel(Class<?> klass) {
+    return mModels.containsKey(klass);
+  }
+
+  Collection<Dependency<TModel>> getDependencies(Class<?> klass) {
+    return mDependencies.get(klass);
+  }
+
+  private static class IdColumnKey {
+    private final Class<?> mClass;
+    private final String mColumn;
+
+    private IdColumnKey(Class<?> klass, String column) {
+      Preconditions.checkNotNull(klass);
+      Preconditions.checkNotNull(column);
+
+      mClass = klass;
+      mColumn = column;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+      if (this == o) return true;
+      if (o == null || getClass() != o.getClass()) return false;
+
+      IdColumnKey that = (IdColumnKey) o;
+
+      if (!mClass.equals(that.mClass)) return false;
+      if (!mColumn.equals(that.mColumn)) return false;
+
+      return true;
+    }
+
+    @Override
+    public int hashCode() {
+      return Objects.hashCode(mClass, mColumn);
+    }
+  }
+
+  private interface IdGetter {
+    Object getId(Object o);
+  }
+
+  private static IdGetter createIdGetter(final IdColumnKey idColumnKey) {
+    for (final Field field : Fields.allFieldsIncludingPrivateAndSuper(idColumnKey.mClass)) {
+
+      Column columnAnnotation = field.getAnnotation(Column.class);
+      if (columnAnnotation != null && columnAnnotation.value().equals(idColumnKey.mColumn)) {
+        // the getter is shared by every Forger using this schema, so the field is made accessible
+        // once instead of toggling the flag around each read
+        field.setAccessible(true);
+        return new IdGetter() {
+
+          @Override
+          public Object getId(Object o) {
+            try {
+              return field.get(o);
+            } catch (IllegalAccessException e) {
+              throw new IllegalArgumentException("Forger cannot access " + idColumnKey.mColumn + " column in " + o, e);
+            }
+          }
+        };
+      }
+    }
+
+    throw new IllegalArgumentException("Forger cannot create id getter in " + idColumnKey.mClass + ". Make sure that this class has a field annotated with @Column('" + idColumnKey.mColumn + "').");
+  }
+
+  private static class InsertPlanKey {
+    private final Class<?> mClass;
+    private final Set<String> mSatisfiedColumns;
+    private final List<Class<?>> mContextClasses;
+
+    private InsertPlanKey(Class<?> klass, Set<String> satisfiedColumns, List<Class<?>> contextClasses) {
+      mClass = klass;
+      mSatisfiedColumns = satisfiedColumns;
+      mContextClasses = contextClasses;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+      if (this == o) return true;
+      if (o == null || getClass() != o.getClass()) return false;
+
+      InsertPlanKey that = (InsertPlanKey) o;
+
+      if (!mClass.equals(that.mClass)) return false;
+      if (!mSatisfiedColumns.equals(that.mSatisfiedColumns)) return false;
+      if (!mContextClasses.equals(that.mContextClasses)) return false;
+
+      return true;
+    }
+
+    @Override
+    public int hashCode() {
+      return Objects.hashCode(mClass, mSatisfiedColumns, mContextClasses);
+    }
+  }
+
+  /**
+   * Dependency resolution compiled for a model class, the dependency columns already present in
+   * the inserted values and the classes of objects in the faking context.
+   */
+  static class InsertPlan<T extends ContentProviderModel & PojoModel> {
+    final ImmutableList<InsertStep<T>> mSteps;
+
+    private InsertPlan(List<InsertStep<T>> steps) {
+      mSteps = ImmutableList.copyOf(steps);
+    }
+
+    void execute(ContentValues contentValues, Forger<T> forger, ForgerSink sink) {
+      for (InsertStep<T> step : mSteps) {
+        if (step.mFromContext) {
+          step.mDependency.satisfyDependencyWith(contentValues, forger.getContext().resolve(step.mDependency));
+        } else {
+          step.mDependency.satisfyDependencyWithNewObject(contentValues, forger, sink);
+        }
+      }
+    }
+  }
+
+  static class InsertStep<T extends ContentProviderModel & PojoModel> {
+    final Dependency<T> mDependency;
+    final boolean mFromContext;
+
+    private InsertStep(Dependency<T> dependency, boolean fromContext) {
+      mDependency = dependency;
+      mFromContext = fromContext;
+    }
+  }
+
+  InsertPlan<TModel> getInsertPlan(Class<?> klass, ContentValues contentValues, Collection<String> additionalColumns, ImmutableList<Class<?>> contextClasses) {
+    ImmutableSet.Builder<String> satisfiedColumns = ImmutableSet.builder();
+    for (Dependency<TModel> dependency : mDependencies.get(klass)) {
+      for (String column : dependency.getColumns()) {
+        if (contentValues.containsKey(column) || additionalColumns.contains(column)) {
+          satisfiedColumns.add(column);
+        }
+      }
+    }
+    return getInsertPlan(klass, satisfiedColumns.build(), contextClasses);
+  }
+
+  InsertPlan<TModel> getInsertPlan(Class<?> klass, Collection<String> columns, ImmutableList<Class<?>> contextClasses) {
+    ImmutableSet.Builder<String> satisfiedColumns = ImmutableSet.builder();
+    for (Dependency<TModel> dependency : mDependencies.get(klass)) {
+      for (String column : dependency.getColumns()) {
+        if (columns.contains(column)) {
+          satisfiedColumns.add(column);
+        }
+      }
+    }
+    return getInsertPlan(klass, satisfiedColumns.build(), contextClasses);
+  }
+
+  private InsertPlan<TModel> getInsertPlan(Class<?> klass, ImmutableSet<String> satisfiedColumns, ImmutableList<Class<?>> contextClasses) {
+    InsertPlanKey key = new InsertPlanKey(klass, satisfiedColumns, contextClasses);
+    InsertPlan<TModel> insertPlan = mInsertPlans.get(key);
+    if (insertPlan == null) {
+      insertPlan = compileInsertPlan(klass, satisfiedColumns, contextClasses);
+      mInsertPlans.putIfAbsent(key, insertPlan);
+    }
+    return insertPlan;
+  }
+
+  private InsertPlan<TModel> compileInsertPlan(Class<?> klass, Set<String> satisfiedColumns, ImmutableList<Class<?>> contextClasses) {
+    List<InsertStep<TModel>> steps = Lists.newArrayList();
+    for (Dependency<TModel> dependency : mDependencies.get(klass)) {
+      Collection<String> columns = dependency.getColumns();
+      if (Collections.disjoint(satisfiedColumns, columns)) {
+        steps.add(new InsertStep<TModel>(dependency, isSatisfiedByContext(dependency, contextClasses)));
+      } else if (!satisfiedColumns.containsAll(columns)) {
+        throw new IllegalStateException("Either override columns [" + Joiner.on(", ").join(columns) + "] using Forger.with(), or satisfy this dependency of " + klass.getSimpleName() + " using Forger.relatedTo().");
+      }
+    }
+    return new InsertPlan<TModel>(steps);
+  }
+
+  private static boolean isSatisfiedByContext(Dependency<?> dependency, ImmutableList<Class<?>> contextClasses) {
+    for (Class<?> contextClass : contextClasses) {
+      if (dependency.canBeSatisfiedWith(contextClass)) {
+        return true;
+      }
+    }
+    return false;
+  }
+}
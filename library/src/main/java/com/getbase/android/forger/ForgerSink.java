@@ -0,0 +1,59 @@
+/*
+ * Copyright (C) 2013 Jerzy Chalupski
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.getbase.android.forger;
+
+import android.content.ContentValues;
+import android.database.Cursor;
+import android.net.Uri;
+
+import java.util.List;
+
+/**
+ * Storage Forger writes the faked rows to. Rows are addressed with the {@link Uri} of their model
+ * and identified with the {@link Uri} returned from insert, which carries the row id as its last
+ * path segment, just like the Uris returned from {@link android.content.ContentResolver#insert(Uri, ContentValues)}.
+ * <p>
+ * Sinks which also implement {@link java.io.Flushable} are flushed every time
+ * {@link Forger.ModelBuilder#in(ForgerSink)} finishes inserting the requested objects, including
+ * their automatically created parents.
+ *
+ * @see ContentResolverSink
+ */
+public interface ForgerSink {
+  /**
+   * Inserts a single row and returns the Uri identifying it.
+   */
+  Uri insert(Uri uri, ContentValues values);
+
+  /**
+   * Inserts all rows in a single batch and returns the Uris identifying them, in the same order
+   * as the passed rows.
+   */
+  List<Uri> insert(Uri uri, List<ContentValues> values);
+
+  /**
+   * Returns true if the inserted rows can be read back with {@link #query(Uri, String[])}. When
+   * the read-back is not supported, Forger builds the objects from the inserted values and the
+   * row id carried by the Uri returned from insert.
+   */
+  boolean supportsReadBack();
+
+  /**
+   * Reads back the row identified by the Uri returned from insert.
+   */
+  Cursor query(Uri uri, String[] projection);
+}
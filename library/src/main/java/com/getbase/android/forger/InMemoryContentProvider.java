@@ -0,0 +1,393 @@
+/*
+ * Copyright (C) 2013 Jerzy Chalupski
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.getbase.android.forger;
+
+import com.google.common.base.Preconditions;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+
+import android.content.ContentProvider;
+import android.content.ContentUris;
+import android.content.ContentValues;
+import android.database.Cursor;
+import android.database.MatrixCursor;
+import android.net.Uri;
+import android.provider.BaseColumns;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentMap;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Thread-safe ContentProvider keeping the inserted rows in memory, meant as a fast stand-in for
+ * the real provider in tests and benchmarks. Every Uri gets its own table with the values stored
+ * in primitive column arrays and auto-incremented {@link BaseColumns#_ID}s.
+ * <p>
+ * Supports insert, bulkInsert, applyBatch with insert operations and queries for all rows, for a
+ * single row addressed with the row Uri and for rows selected with {@code _id = ?} or
+ * {@code _id IN (?, ...)}. Since it's also a {@link ForgerSink}, it can be passed directly to
+ * {@link Forger.ModelBuilder#in(ForgerSink)}.
+ */
+public class InMemoryContentProvider extends ContentProvider implements ForgerSink {
+  private static final Pattern ID_SELECTION = Pattern.compile("\\s*" + BaseColumns._ID + "\\s*(?:=\\s*(\\S+)|IN\\s*\\((.*)\\))\\s*", Pattern.CASE_INSENSITIVE);
+
+  private final ConcurrentMap<Uri, Table> mTables = Maps.newConcurrentMap();
+
+  @Override
+  public boolean onCreate() {
+    return true;
+  }
+
+  @Override
+  public String getType(Uri uri) {
+    return null;
+  }
+
+  @Override
+  public Uri insert(Uri uri, ContentValues values) {
+    Table table = getTable(uri);
+    synchronized (table) {
+      return ContentUris.withAppendedId(uri, table.insert(values));
+    }
+  }
+
+  @Override
+  public List<Uri> insert(Uri uri, List<ContentValues> values) {
+    List<Uri> uris = Lists.newArrayListWithCapacity(values.size());
+
+    Table table = getTable(uri);
+    synchronized (table) {
+      for (ContentValues rowValues : values) {
+        uris.add(ContentUris.withAppendedId(uri, table.insert(rowValues)));
+      }
+    }
+
+    return uris;
+  }
+
+  @Override
+  public int bulkInsert(Uri uri, ContentValues[] values) {
+    Table table = getTable(uri);
+    synchronized (table) {
+      for (ContentValues rowValues : values) {
+        table.insert(rowValues);
+      }
+    }
+    return values.length;
+  }
+
+  @Override
+  public boolean supportsReadBack() {
+    return true;
+  }
+
+  @Override
+  public Cursor query(Uri uri, String[] projection) {
+    return query(uri, projection, null, null, null);
+  }
+
+  @Override
+  public Cursor query(Uri uri, String[] projection, String selection, String[] selectionArgs, String sortOrder) {
+    long[] ids = null;
+
+    Table table = mTables.get(uri);
+    if (table == null && isRowUri(uri)) {
+      table = mTables.get(SqlSinks.getModelUri(uri));
+      ids = new long[] { ContentUris.parseId(uri) };
+    }
+
+    if (selection != null) {
+      Preconditions.checkArgument(ids == null, "Cannot use selection with row Uri " + uri);
+      ids = parseIdSelection(selection, selectionArgs);
+    }
+
+    if (table == null) {
+      return new MatrixCursor(projection != null ? projection : new String[] { BaseColumns._ID }, 0);
+    }
+
+    synchronized (table) {
+      return table.query(projection, ids);
+    }
+  }
+
+  /**
+   * Returns the number of rows inserted for given Uri.
+   */
+  public int getCount(Uri uri) {
+    Table table = mTables.get(uri);
+    if (table == null) {
+      return 0;
+    }
+
+    synchronized (table) {
+      return table.mSize;
+    }
+  }
+
+  @Override
+  public int update(Uri uri, ContentValues values, String selection, String[] selectionArgs) {
+    throw new UnsupportedOperationException("InMemoryContentProvider doesn't support updates");
+  }
+
+  @Override
+  public int delete(Uri uri, String selection, String[] selectionArgs) {
+    throw new UnsupportedOperationException("InMemoryContentProvider doesn't support deletes");
+  }
+
+  private Table getTable(Uri uri) {
+    Table table = mTables.get(uri);
+    if (table == null) {
+      table = new Table();
+      Table existing = mTables.putIfAbsent(uri, table);
+      if (existing != null) {
+        table = existing;
+      }
+    }
+    return table;
+  }
+
+  private static boolean isRowUri(Uri uri) {
+    String lastPathSegment = uri.getLastPathSegment();
+    if (lastPathSegment == null || lastPathSegment.isEmpty()) {
+      return false;
+    }
+    for (int i = 0; i < lastPathSegment.length(); i++) {
+      if (!Character.isDigit(lastPathSegment.charAt(i))) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  private static long[] parseIdSelection(String selection, String[] selectionArgs) {
+    Matcher matcher = ID_SELECTION.matcher(selection);
+    if (!matcher.matches()) {
+      throw new UnsupportedOperationException("InMemoryContentProvider supports only the selection by " + BaseColumns._ID + ", got: " + selection);
+    }
+
+    String[] tokens = matcher.group(1) != null
+        ? new String[] { matcher.group(1) }
+        : matcher.group(2).split(",");
+
+    long[] ids = new long[tokens.length];
+    int argIndex = 0;
+    for (int i = 0; i < tokens.length; i++) {
+      String token = tokens[i].trim();
+      if ("?".equals(token)) {
+        Preconditions.checkArgument(selectionArgs != null && argIndex < selectionArgs.length, "Not enough selection arguments for: " + selection);
+        token = selectionArgs[argIndex++];
+      }
+      ids[i] = Long.parseLong(token);
+    }
+    return ids;
+  }
+
+  private static class Table {
+    private static final int INITIAL_CAPACITY = 16;
+
+    private final Map<String, Column> mColumns = Maps.newLinkedHashMap();
+    private long[] mIds = new long[INITIAL_CAPACITY];
+    private boolean mIdsSorted = true;
+    private long mNextId = 1;
+    private int mSize;
+
+    long insert(ContentValues values) {
+      long id;
+      if (values.containsKey(BaseColumns._ID) && values.getAsLong(BaseColumns._ID) != null) {
+        id = values.getAsLong(BaseColumns._ID);
+        mNextId = Math.max(mNextId, id + 1);
+      } else {
+        id = mNextId++;
+      }
+
+      if (mSize == mIds.length) {
+        mIds = Arrays.copyOf(mIds, mSize * 2);
+      }
+      mIdsSorted &= mSize == 0 || mIds[mSize - 1] < id;
+      mIds[mSize] = id;
+
+      for (Map.Entry<String, Object> entry : values.valueSet()) {
+        if (BaseColumns._ID.equals(entry.getKey())) {
+          continue;
+        }
+
+        Column column = mColumns.get(entry.getKey());
+        if (column == null) {
+          column = new Column(mIds.length);
+          mColumns.put(entry.getKey(), column);
+        }
+        column.set(mSize, entry.getValue());
+      }
+
+      mSize++;
+      return id;
+    }
+
+    Cursor query(String[] projection, long[] ids) {
+      if (projection == null) {
+        List<String> allColumns = Lists.newArrayList(BaseColumns._ID);
+        allColumns.addAll(mColumns.keySet());
+        projection = allColumns.toArray(new String[allColumns.size()]);
+      }
+
+      Column[] columns = new Column[projection.length];
+      for (int i = 0; i < projection.length; i++) {
+        columns[i] = mColumns.get(projection[i]);
+      }
+
+      if (ids == null) {
+        MatrixCursor cursor = new MatrixCursor(projection, mSize);
+        for (int row = 0; row < mSize; row++) {
+          addRow(cursor, projection, columns, row);
+        }
+        return cursor;
+      }
+
+      MatrixCursor cursor = new MatrixCursor(projection, ids.length);
+      for (long id : ids) {
+        int row = findRow(id);
+        if (row >= 0) {
+          addRow(cursor, projection, columns, row);
+        }
+      }
+      return cursor;
+    }
+
+    private void addRow(MatrixCursor cursor, String[] projection, Column[] columns, int row) {
+      Object[] values = new Object[projection.length];
+      for (int i = 0; i < projection.length; i++) {
+        if (BaseColumns._ID.equals(projection[i])) {
+          values[i] = mIds[row];
+        } else if (columns[i] != null) {
+          values[i] = columns[i].get(row);
+        }
+      }
+      cursor.addRow(values);
+    }
+
+    private int findRow(long id) {
+      if (mIdsSorted) {
+        int row = Arrays.binarySearch(mIds, 0, mSize, id);
+        return row >= 0 ? row : -1;
+      }
+
+      for (int row = 0; row < mSize; row++) {
+        if (mIds[row] == id) {
+          return row;
+        }
+      }
+      return -1;
+    }
+  }
+
+  /**
+   * Values of a single column. Integers and booleans are kept in a long array and floating point
+   * numbers in a double array, both allocated on first use; only strings and blobs are boxed.
+   */
+  private static class Column {
+    private static final byte TYPE_NULL = 0;
+    private static final byte TYPE_LONG = 1;
+    private static final byte TYPE_DOUBLE = 2;
+    private static final byte TYPE_OBJECT = 3;
+
+    private byte[] mTypes;
+    private long[] mLongs;
+    private double[] mDoubles;
+    private Object[] mObjects;
+
+    Column(int capacity) {
+      mTypes = new byte[capacity];
+    }
+
+    void set(int row, Object value) {
+      ensureCapacity(row + 1);
+
+      if (value == null) {
+        mTypes[row] = TYPE_NULL;
+      } else if (value instanceof Boolean) {
+        longs()[row] = ((Boolean) value) ? 1 : 0;
+        mTypes[row] = TYPE_LONG;
+      } else if (value instanceof Float || value instanceof Double) {
+        doubles()[row] = ((Number) value).doubleValue();
+        mTypes[row] = TYPE_DOUBLE;
+      } else if (value instanceof Number) {
+        longs()[row] = ((Number) value).longValue();
+        mTypes[row] = TYPE_LONG;
+      } else {
+        objects()[row] = value;
+        mTypes[row] = TYPE_OBJECT;
+      }
+    }
+
+    Object get(int row) {
+      if (row >= mTypes.length) {
+        return null;
+      }
+
+      switch (mTypes[row]) {
+      case TYPE_LONG:
+        return mLongs[row];
+      case TYPE_DOUBLE:
+        return mDoubles[row];
+      case TYPE_OBJECT:
+        return mObjects[row];
+      default:
+        return null;
+      }
+    }
+
+    private void ensureCapacity(int capacity) {
+      if (capacity > mTypes.length) {
+        int newCapacity = Math.max(capacity, mTypes.length * 2);
+        mTypes = Arrays.copyOf(mTypes, newCapacity);
+        if (mLongs != null) {
+          mLongs = Arrays.copyOf(mLongs, newCapacity);
+        }
+        if (mDoubles != null) {
+          mDoubles = Arrays.copyOf(mDoubles, newCapacity);
+        }
+        if (mObjects != null) {
+          mObjects = Arrays.copyOf(mObjects, newCapacity);
+        }
+      }
+    }
+
+    private long[] longs() {
+      if (mLongs == null) {
+        mLongs = new long[mTypes.length];
+      }
+      return mLongs;
+    }
+
+    private double[] doubles() {
+      if (mDoubles == null) {
+        mDoubles = new double[mTypes.length];
+      }
+      return mDoubles;
+    }
+
+    private Object[] objects() {
+      if (mObjects == null) {
+        mObjects = new Object[mTypes.length];
+      }
+      return mObjects;
+    }
+  }
+}
@@ -0,0 +1,659 @@
+/*
+ * Copyright (C) 2013 Jerzy Chalupski
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.getbase.android.forger;
+
+import com.google.common.base.Function;
+import com.google.common.base.Joiner;
+import com.google.common.base.Preconditions;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Iterables;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.collect.Ordering;
+import com.google.common.collect.Sets;
+
+import android.content.ContentUris;
+import android.content.ContentValues;
+import android.database.Cursor;
+import android.database.MatrixCursor;
+import android.net.Uri;
+import android.provider.BaseColumns;
+
+import java.io.Closeable;
+import java.sql.Blob;
+import java.sql.Clob;
+import java.sql.Connection;
+import java.sql.DatabaseMetaData;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Savepoint;
+import java.sql.Statement;
+import java.sql.Types;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * {@link ForgerSink} writing to a JDBC {@link Connection}, e.g. a local SQLite file or an in-memory
+ * H2 database. Every model {@link Uri} is mapped to a table, and every distinct set of inserted
+ * columns gets a cached {@link PreparedStatement}, to which the values are bound positionally.
+ * Batches are executed with {@link PreparedStatement#executeBatch()}.
+ * <p>
+ * The inserts are grouped in transactions of configurable size; {@link #close()} commits the last
+ * one. Row ids are taken from the generated keys. Some drivers, e.g. H2 and SQLite, report only the
+ * key of the last row of a batch. The first batch tells which kind of driver is used and is rolled
+ * back and repeated if the keys are missing. From then on, the ids of the batched rows are
+ * preassigned from the highest value of the id column ({@link BaseColumns#_ID} unless set with
+ * {@link Builder#withReadBack(String)}) when the sink runs its own transaction, or the rows are
+ * inserted one by one otherwise.
+ * <p>
+ * Once the kind of driver is known, the rows of a {@link StagingSink.StagedBatch} are bound to
+ * the JDBC batch as soon as they're added, so Forger doesn't keep their values until the batch
+ * is inserted. Staged batches use their own statements, and only one of them can be pending per
+ * table.
+ */
+public class JdbcSink implements StagingSink, Closeable {
+  private final Connection mConnection;
+  private final Function<Uri, String> mTableMapping;
+  private final int mTransactionSize;
+  private final boolean mReadBack;
+  private final String mIdColumn;
+  private final boolean mSingleRowInserts;
+
+  private final Map<String, Map<List<String>, PreparedStatement>> mInsertStatements = Maps.newHashMap();
+  private final Map<String, Map<List<String>, PreparedStatement>> mStagedInsertStatements = Maps.newHashMap();
+  private final Set<String> mStagingTables = Sets.newHashSet();
+  private final Map<String, Map<String, Integer>> mColumnTypes = Maps.newHashMap();
+  private int mRowsInTransaction;
+
+  // unknown until the first batch shows whether the driver returns the key of every batched row
+  private Boolean mBatchKeysSupported;
+
+  public static Builder builder() {
+    return new Builder();
+  }
+
+  public static class Builder {
+    private Connection mConnection;
+    private Function<Uri, String> mTableMapping = SqlSinks.LAST_PATH_SEGMENT;
+    private int mTransactionSize;
+    private boolean mReadBack;
+    private String mIdColumn = BaseColumns._ID;
+    private boolean mSingleRowInserts;
+
+    private Builder() {
+    }
+
+    public Builder withConnection(Connection connection) {
+      Preconditions.checkState(mConnection == null, "You've already set Connection");
+      mConnection = Preconditions.checkNotNull(connection);
+      return this;
+    }
+
+    /**
+     * Sets the function mapping the model Uris to table names. By default the last path segment
+     * of the Uri is used.
+     */
+    public Builder withTableMapping(Function<Uri, String> tableMapping) {
+      mTableMapping = Preconditions.checkNotNull(tableMapping);
+      return this;
+    }
+
+    /**
+     * Commits the inserts every given number of rows. By default the auto-commit mode of the
+     * connection is left untouched.
+     */
+    public Builder withTransactionSize(int transactionSize) {
+      Preconditions.checkArgument(transactionSize > 0, "Passed transaction size must be greater than 0");
+      mTransactionSize = transactionSize;
+      return this;
+    }
+
+    /**
+     * Reads the inserted rows back with a query by id column instead of building the objects
+     * from the inserted values.
+     */
+    public Builder withReadBack(String idColumn) {
+      mReadBack = true;
+      mIdColumn = Preconditions.checkNotNull(idColumn);
+      return this;
+    }
+
+    /**
+     * Executes every row with a separate {@link PreparedStatement#executeUpdate()} instead of
+     * a JDBC batch. By default this is done only for the drivers which don't return the generated
+     * keys of every row of a batch, when the sink doesn't run its own transaction.
+     */
+    public Builder withSingleRowInserts() {
+      mSingleRowInserts = true;
+      return this;
+    }
+
+    public JdbcSink build() {
+      Preconditions.checkState(mConnection != null, "Connection is not set");
+      return new JdbcSink(this);
+    }
+  }
+
+  private JdbcSink(Builder builder) {
+    mConnection = builder.mConnection;
+    mTableMapping = builder.mTableMapping;
+    mTransactionSize = builder.mTransactionSize;
+    mReadBack = builder.mReadBack;
+    mIdColumn = builder.mIdColumn;
+    mSingleRowInserts = builder.mSingleRowInserts;
+
+    if (mTransactionSize > 0) {
+      try {
+        mConnection.setAutoCommit(false);
+      } catch (SQLException e) {
+        throw new IllegalStateException("Cannot start transaction.", e);
+      }
+    }
+  }
+
+  @Override
+  public Uri insert(Uri uri, ContentValues values) {
+    return insert(uri, Lists.newArrayList(values)).get(0);
+  }
+
+  @Override
+  public List<Uri> insert(Uri uri, List<ContentValues> values) {
+    String table = mTableMapping.apply(uri);
+    List<Uri> uris = Lists.newArrayListWithCapacity(values.size());
+
+    try {
+      int batchStart = 0;
+      while (batchStart < values.size()) {
+        List<String> columns = SqlSinks.getColumns(values.get(batchStart));
+
+        // consecutive rows with the same columns share the statement and are executed as one batch
+        int batchEnd = batchStart + 1;
+        while (batchEnd < values.size() && hasColumns(values.get(batchEnd), columns)) {
+          batchEnd++;
+        }
+
+        for (long id : executeBatch(table, columns, values.subList(batchStart, batchEnd))) {
+          uris.add(ContentUris.withAppendedId(uri, id));
+        }
+        batchStart = batchEnd;
+      }
+
+      onRowsInserted(values.size());
+    } catch (SQLException e) {
+      throw new IllegalStateException("Insert into " + table + " failed.", e);
+    }
+
+    return uris;
+  }
+
+  private void onRowsInserted(int rows) {
+    mRowsInTransaction += rows;
+    if (mTransactionSize > 0 && mRowsInTransaction >= mTransactionSize) {
+      commit();
+    }
+  }
+
+  @Override
+  public StagedBatch newBatch(Uri uri) {
+    return new JdbcStagedBatch(uri);
+  }
+
+  /**
+   * Binds the added rows to the JDBC batch right away if the driver is known to return the key
+   * of every batched row, or if the ids can be preassigned. Otherwise, i.e. before the first
+   * batch and when the rows are inserted one by one, the values are kept and inserted with
+   * {@link #insert(Uri, List)}.
+   */
+  private class JdbcStagedBatch implements StagedBatch {
+    private final Uri mUri;
+    private final String mTable;
+
+    // statement of every added row, in the order in which the rows were added
+    private final List<PreparedStatement> mRowStatements = Lists.newArrayList();
+    private final Map<PreparedStatement, Integer> mStatementRows = Maps.newLinkedHashMap();
+    private final List<Long> mPreassignedIds = Lists.newArrayList();
+    private final List<ContentValues> mValues = Lists.newArrayList();
+
+    private boolean mStaged;
+    private boolean mPreassigningIds;
+    private long mLastId;
+
+    private JdbcStagedBatch(Uri uri) {
+      mUri = uri;
+      mTable = mTableMapping.apply(uri);
+    }
+
+    @Override
+    public void add(ContentValues values) {
+      try {
+        if (mRowStatements.isEmpty() && mValues.isEmpty()) {
+          start();
+        }
+
+        if (!mStaged) {
+          mValues.add(values);
+          return;
+        }
+
+        List<String> columns = SqlSinks.getColumns(values);
+        PreparedStatement statement;
+        if (mPreassigningIds) {
+          Long id = values.getAsLong(mIdColumn);
+          if (id == null) {
+            id = ++mLastId;
+          } else {
+            mLastId = Math.max(mLastId, id);
+          }
+          List<String> columnsWithId = Ordering.natural().sortedCopy(Iterables.concat(columns, ImmutableSet.of(mIdColumn)));
+          statement = getInsertStatement(mStagedInsertStatements, mTable, columnsWithId);
+          bindWithId(statement, mTable, columnsWithId, values, id);
+          mPreassignedIds.add(id);
+        } else {
+          statement = getInsertStatement(mStagedInsertStatements, mTable, columns);
+          bind(statement, mTable, columns, values);
+        }
+        statement.addBatch();
+
+        mRowStatements.add(statement);
+        Integer statementRows = mStatementRows.get(statement);
+        mStatementRows.put(statement, statementRows != null ? statementRows + 1 : 1);
+      } catch (SQLException e) {
+        throw new IllegalStateException("Cannot stage row for " + mTable + ".", e);
+      }
+    }
+
+    private void start() throws SQLException {
+      boolean staged = !mSingleRowInserts && mBatchKeysSupported != null && (mBatchKeysSupported || mTransactionSize > 0);
+      if (staged) {
+        Preconditions.checkState(mStagingTables.add(mTable), "Another staged batch for " + mTable + " is pending.");
+        mStaged = true;
+        mPreassigningIds = !mBatchKeysSupported;
+        if (mPreassigningIds) {
+          mLastId = queryMaxId(mTable);
+        }
+      }
+    }
+
+    @Override
+    public List<Uri> insert() {
+      try {
+        if (!mStaged) {
+          return JdbcSink.this.insert(mUri, mValues);
+        }
+
+        Map<PreparedStatement, long[]> statementIds = Maps.newHashMap();
+        for (Map.Entry<PreparedStatement, Integer> entry : mStatementRows.entrySet()) {
+          PreparedStatement statement = entry.getKey();
+          statement.executeBatch();
+
+          if (!mPreassigningIds) {
+            long[] ids = new long[entry.getValue()];
+            int keys = readGeneratedKeys(statement, ids, 0);
+            Preconditions.checkState(keys == ids.length, "JDBC driver didn't return generated keys for batch inserted into " + mTable + ".");
+            statementIds.put(statement, ids);
+          }
+        }
+
+        List<Uri> uris = Lists.newArrayListWithCapacity(mRowStatements.size());
+        Map<PreparedStatement, Integer> nextIds = Maps.newHashMap();
+        for (int i = 0; i < mRowStatements.size(); i++) {
+          long id;
+          if (mPreassigningIds) {
+            id = mPreassignedIds.get(i);
+          } else {
+            PreparedStatement statement = mRowStatements.get(i);
+            Integer nextId = nextIds.get(statement);
+            int index = nextId != null ? nextId : 0;
+            id = statementIds.get(statement)[index];
+            nextIds.put(statement, index + 1);
+          }
+          uris.add(ContentUris.withAppendedId(mUri, id));
+        }
+
+        onRowsInserted(uris.size());
+        return uris;
+      } catch (SQLException e) {
+        throw new IllegalStateException("Insert into " + mTable + " failed.", e);
+      } finally {
+        clear();
+      }
+    }
+
+    @Override
+    public void clear() {
+      try {
+        for (PreparedStatement statement : mStatementRows.keySet()) {
+          statement.clearBatch();
+        }
+      } catch (SQLException e) {
+        throw new IllegalStateException("Cannot clear batch for " + mTable + ".", e);
+      } finally {
+        if (mStaged) {
+          mStagingTables.remove(mTable);
+        }
+        mRowStatements.clear();
+        mStatementRows.clear();
+        mPreassignedIds.clear();
+        mValues.clear();
+        mStaged = false;
+      }
+    }
+  }
+
+  private long[] executeBatch(String table, List<String> columns, List<ContentValues> rows) throws SQLException {
+    if (mSingleRowInserts || rows.size() == 1) {
+      return executeSingleRows(table, columns, rows);
+    }
+
+    if (mBatchKeysSupported == null) {
+      long[] ids = probeBatchKeys(table, columns, rows);
+      if (ids != null) {
+        return ids;
+      }
+    }
+
+    if (mBatchKeysSupported) {
+      long[] ids = executeBatchWithGeneratedKeys(table, columns, rows);
+      Preconditions.checkState(ids != null, "JDBC driver didn't return generated keys for batch inserted into " + table + ".");
+      return ids;
+    } else if (mTransactionSize > 0 && !columns.contains(mIdColumn)) {
+      return executeBatchWithPreassignedIds(table, columns, rows);
+    } else {
+      return executeSingleRows(table, columns, rows);
+    }
+  }
+
+  /**
+   * Executes the batch in a savepoint and rolls it back if the driver didn't return the key of
+   * every row. Returns the ids of the inserted rows, or null if the batch was rolled back.
+   */
+  private long[] probeBatchKeys(String table, List<String> columns, List<ContentValues> rows) throws SQLException {
+    boolean autoCommit = mConnection.getAutoCommit();
+    if (autoCommit) {
+      mConnection.setAutoCommit(false);
+    }
+
+    try {
+      Savepoint savepoint = mConnection.setSavepoint();
+      try {
+        long[] ids = executeBatchWithGeneratedKeys(table, columns, rows);
+        if (ids == null) {
+          mConnection.rollback(savepoint);
+        }
+        mBatchKeysSupported = ids != null;
+        return ids;
+      } catch (SQLException e) {
+        mConnection.rollback(savepoint);
+        throw e;
+      }
+    } finally {
+      if (autoCommit) {
+        mConnection.setAutoCommit(true);
+      }
+    }
+  }
+
+  private long[] executeBatchWithGeneratedKeys(String table, List<String> columns, List<ContentValues> rows) throws SQLException {
+    PreparedStatement statement = getInsertStatement(table, columns);
+    for (ContentValues row : rows) {
+      bind(statement, table, columns, row);
+      statement.addBatch();
+    }
+    try {
+      statement.executeBatch();
+    } finally {
+      statement.clearBatch();
+    }
+
+    long[] ids = new long[rows.size()];
+    return readGeneratedKeys(statement, ids, 0) == ids.length ? ids : null;
+  }
+
+  /**
+   * Inserts the rows with explicit ids following the highest id in the table. It's safe only in
+   * the sink's own transaction: the ids are read and used by the same transaction, and a row with
+   * the same id inserted by someone else makes the insert fail instead of returning a wrong id.
+   */
+  private long[] executeBatchWithPreassignedIds(String table, List<String> columns, List<ContentValues> rows) throws SQLException {
+    List<String> columnsWithId = Ordering.natural().sortedCopy(Iterables.concat(columns, ImmutableSet.of(mIdColumn)));
+    PreparedStatement statement = getInsertStatement(table, columnsWithId);
+
+    long[] ids = new long[rows.size()];
+    long lastId = queryMaxId(table);
+    for (int i = 0; i < rows.size(); i++) {
+      ids[i] = ++lastId;
+      bindWithId(statement, table, columnsWithId, rows.get(i), ids[i]);
+      statement.addBatch();
+    }
+    try {
+      statement.executeBatch();
+    } finally {
+      statement.clearBatch();
+    }
+
+    return ids;
+  }
+
+  private long[] executeSingleRows(String table, List<String> columns, List<ContentValues> rows) throws SQLException {
+    PreparedStatement statement = getInsertStatement(table, columns);
+    long[] ids = new long[rows.size()];
+    for (int i = 0; i < rows.size(); i++) {
+      bind(statement, table, columns, rows.get(i));
+      statement.executeUpdate();
+
+      int keys = readGeneratedKeys(statement, ids, i);
+      Preconditions.checkState(keys == 1, "JDBC driver didn't return generated key for " + table + ".");
+    }
+    return ids;
+  }
+
+  private long queryMaxId(String table) throws SQLException {
+    Statement statement = mConnection.createStatement();
+    try {
+      ResultSet resultSet = statement.executeQuery("SELECT MAX(" + mIdColumn + ") FROM " + table);
+      try {
+        return resultSet.next() ? resultSet.getLong(1) : 0;
+      } finally {
+        resultSet.close();
+      }
+    } finally {
+      statement.close();
+    }
+  }
+
+  private void bind(PreparedStatement statement, String table, List<String> columns, ContentValues row) throws SQLException {
+    bindWithId(statement, table, columns, row, null);
+  }
+
+  /**
+   * Binds the row, taking the value of the id column from the passed id if it's not null.
+   */
+  private void bindWithId(PreparedStatement statement, String table, List<String> columns, ContentValues row, Long id) throws SQLException {
+    for (int i = 0; i < columns.size(); i++) {
+      Object value = id != null && columns.get(i).equals(mIdColumn) ? id : row.get(columns.get(i));
+      if (value == null) {
+        statement.setNull(i + 1, getColumnType(table, columns.get(i)));
+      } else {
+        statement.setObject(i + 1, value);
+      }
+    }
+  }
+
+  /**
+   * Returns the {@link Types} constant of given column, taken from the {@link DatabaseMetaData},
+   * because some drivers don't accept {@link Types#NULL} for binding nulls.
+   */
+  private int getColumnType(String table, String column) throws SQLException {
+    Map<String, Integer> columnTypes = mColumnTypes.get(table);
+    if (columnTypes == null) {
+      columnTypes = Maps.newTreeMap(String.CASE_INSENSITIVE_ORDER);
+      DatabaseMetaData metaData = mConnection.getMetaData();
+      // unquoted identifiers are stored upper or lower case, depending on the database
+      for (String tableName : ImmutableSet.of(table, table.toUpperCase(Locale.US), table.toLowerCase(Locale.US))) {
+        ResultSet resultSet = metaData.getColumns(null, null, tableName, null);
+        try {
+          while (resultSet.next()) {
+            columnTypes.put(resultSet.getString("COLUMN_NAME"), resultSet.getInt("DATA_TYPE"));
+          }
+        } finally {
+          resultSet.close();
+        }
+        if (!columnTypes.isEmpty()) {
+          break;
+        }
+      }
+      mColumnTypes.put(table, columnTypes);
+    }
+
+    Integer type = columnTypes.get(column);
+    return type != null ? type : Types.NULL;
+  }
+
+  private static int readGeneratedKeys(PreparedStatement statement, long[] ids, int offset) throws SQLException {
+    int keys = 0;
+    ResultSet generatedKeys = statement.getGeneratedKeys();
+    try {
+      while (offset + keys < ids.length && generatedKeys.next()) {
+        ids[offset + keys++] = generatedKeys.getLong(1);
+      }
+    } finally {
+      generatedKeys.close();
+    }
+    return keys;
+  }
+
+  private PreparedStatement getInsertStatement(String table, List<String> columns) throws SQLException {
+    return getInsertStatement(mInsertStatements, table, columns);
+  }
+
+  private PreparedStatement getInsertStatement(Map<String, Map<List<String>, PreparedStatement>> statements, String table, List<String> columns) throws SQLException {
+    Map<List<String>, PreparedStatement> tableStatements = statements.get(table);
+    if (tableStatements == null) {
+      tableStatements = Maps.newHashMap();
+      statements.put(table, tableStatements);
+    }
+
+    PreparedStatement statement = tableStatements.get(columns);
+    if (statement == null) {
+      String sql = SqlSinks.getInsertSql(table, columns);
+
+      statement = mConnection.prepareStatement(sql, Statement.RETURN_GENERATED_KEYS);
+      tableStatements.put(columns, statement);
+    }
+    return statement;
+  }
+
+  private static boolean hasColumns(ContentValues values, List<String> columns) {
+    if (values.size() != columns.size()) {
+      return false;
+    }
+    for (String column : columns) {
+      if (!values.containsKey(column)) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  @Override
+  public boolean supportsReadBack() {
+    return mReadBack;
+  }
+
+  @Override
+  public Cursor query(Uri uri, String[] projection) {
+    String table = mTableMapping.apply(SqlSinks.getModelUri(uri));
+
+    String sql = "SELECT " + Joiner.on(", ").join(projection) + " FROM " + table + " WHERE " + mIdColumn + " = ?";
+    try {
+      PreparedStatement statement = mConnection.prepareStatement(sql);
+      try {
+        statement.setLong(1, ContentUris.parseId(uri));
+        ResultSet resultSet = statement.executeQuery();
+        try {
+          MatrixCursor cursor = new MatrixCursor(projection);
+          while (resultSet.next()) {
+            Object[] row = new Object[projection.length];
+            for (int i = 0; i < projection.length; i++) {
+              row[i] = getValue(resultSet, i + 1);
+            }
+            cursor.addRow(row);
+          }
+          return cursor;
+        } finally {
+          resultSet.close();
+        }
+      } finally {
+        statement.close();
+      }
+    } catch (SQLException e) {
+      throw new IllegalStateException("Query " + sql + " failed.", e);
+    }
+  }
+
+  private static Object getValue(ResultSet resultSet, int columnIndex) throws SQLException {
+    Object value = resultSet.getObject(columnIndex);
+    if (value instanceof Boolean) {
+      // Cursors backed by SQLite return booleans as integers, so MicroOrm expects them that way
+      return ((Boolean) value) ? 1 : 0;
+    } else if (value instanceof Clob) {
+      return resultSet.getString(columnIndex);
+    } else if (value instanceof Blob) {
+      return resultSet.getBytes(columnIndex);
+    }
+    return value;
+  }
+
+  /**
+   * Commits the current transaction. Does nothing if the transaction size wasn't set.
+   */
+  public void commit() {
+    if (mTransactionSize > 0) {
+      try {
+        mConnection.commit();
+      } catch (SQLException e) {
+        throw new IllegalStateException("Cannot commit transaction.", e);
+      }
+      mRowsInTransaction = 0;
+    }
+  }
+
+  /**
+   * Commits the current transaction and closes the cached statements. The connection is left
+   * open.
+   */
+  @Override
+  public void close() {
+    commit();
+
+    try {
+      for (Map<List<String>, PreparedStatement> tableStatements : Iterables.concat(mInsertStatements.values(), mStagedInsertStatements.values())) {
+        for (PreparedStatement statement : tableStatements.values()) {
+          statement.close();
+        }
+      }
+    } catch (SQLException e) {
+      throw new IllegalStateException("Cannot close statements.", e);
+    } finally {
+      mInsertStatements.clear();
+      mStagedInsertStatements.clear();
+    }
+  }
+}
@@ -0,0 +1,206 @@
+/*
+ * Copyright (C) 2013 Jerzy Chalupski
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.getbase.android.forger;
+
+import com.google.common.base.Preconditions;
+
+import android.content.ContentValues;
+import android.database.Cursor;
+import android.net.Uri;
+
+import java.io.Flushable;
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * {@link ForgerSink} decorator which delays every call to the wrapped sink, to reproduce the binder
+ * and disk latencies of a device on a JVM, and counts the calls, rows and bytes passed to it.
+ * <p>
+ * Every call costs the configured call latency, every inserted row the row latency, and every
+ * transaction the commit cost, where each single insert and each batch is a separate transaction,
+ * like in case of a ContentProvider backed by SQLite. To use it with a ContentResolver, wrap
+ * a {@link ContentResolverSink}.
+ * <p>
+ * The byte counts are estimates of the payload size: the UTF-16 size of column names and strings,
+ * the length of blobs and the size of primitives.
+ */
+public class LatencyInjectingSink implements ForgerSink, Flushable {
+  private final ForgerSink mDelegate;
+  private final long mCallLatencyNanos;
+  private final long mRowLatencyNanos;
+  private final long mCommitCostNanos;
+
+  private final AtomicLong mInsertCalls = new AtomicLong();
+  private final AtomicLong mBatchInsertCalls = new AtomicLong();
+  private final AtomicLong mQueryCalls = new AtomicLong();
+  private final AtomicLong mRows = new AtomicLong();
+  private final AtomicLong mBytes = new AtomicLong();
+  private final AtomicLong mInjectedLatencyNanos = new AtomicLong();
+
+  public static Builder builder() {
+    return new Builder();
+  }
+
+  public static class Builder {
+    private ForgerSink mDelegate;
+    private long mCallLatencyNanos;
+    private long mRowLatencyNanos;
+    private long mCommitCostNanos;
+
+    private Builder() {
+    }
+
+    public Builder withDelegate(ForgerSink delegate) {
+      Preconditions.checkState(mDelegate == null, "You've already set delegate ForgerSink");
+      mDelegate = Preconditions.checkNotNull(delegate);
+      return this;
+    }
+
+    public Builder withCallLatency(long latency, TimeUnit unit) {
+      mCallLatencyNanos = toNanos(latency, unit);
+      return this;
+    }
+
+    public Builder withRowLatency(long latency, TimeUnit unit) {
+      mRowLatencyNanos = toNanos(latency, unit);
+      return this;
+    }
+
+    public Builder withCommitCost(long cost, TimeUnit unit) {
+      mCommitCostNanos = toNanos(cost, unit);
+      return this;
+    }
+
+    private static long toNanos(long duration, TimeUnit unit) {
+      Preconditions.checkArgument(duration >= 0, "Passed duration cannot be negative");
+      return unit.toNanos(duration);
+    }
+
+    public LatencyInjectingSink build() {
+      Preconditions.checkState(mDelegate != null, "Delegate ForgerSink is not set");
+      return new LatencyInjectingSink(this);
+    }
+  }
+
+  private LatencyInjectingSink(Builder builder) {
+    mDelegate = builder.mDelegate;
+    mCallLatencyNanos = builder.mCallLatencyNanos;
+    mRowLatencyNanos = builder.mRowLatencyNanos;
+    mCommitCostNanos = builder.mCommitCostNanos;
+  }
+
+  @Override
+  public Uri insert(Uri uri, ContentValues values) {
+    mInsertCalls.incrementAndGet();
+    mRows.incrementAndGet();
+    mBytes.addAndGet(Forger.estimateSize(values));
+
+    delay(mCallLatencyNanos + mRowLatencyNanos + mCommitCostNanos);
+    return mDelegate.insert(uri, values);
+  }
+
+  @Override
+  public List<Uri> insert(Uri uri, List<ContentValues> values) {
+    mBatchInsertCalls.incrementAndGet();
+    mRows.addAndGet(values.size());
+    for (ContentValues rowValues : values) {
+      mBytes.addAndGet(Forger.estimateSize(rowValues));
+    }
+
+    delay(mCallLatencyNanos + mRowLatencyNanos * values.size() + mCommitCostNanos);
+    return mDelegate.insert(uri, values);
+  }
+
+  @Override
+  public boolean supportsReadBack() {
+    return mDelegate.supportsReadBack();
+  }
+
+  @Override
+  public Cursor query(Uri uri, String[] projection) {
+    mQueryCalls.incrementAndGet();
+
+    delay(mCallLatencyNanos);
+    return mDelegate.query(uri, projection);
+  }
+
+  /**
+   * Flushes the wrapped sink if it's {@link Flushable}. Doesn't add any latency.
+   */
+  @Override
+  public void flush() throws IOException {
+    if (mDelegate instanceof Flushable) {
+      ((Flushable) mDelegate).flush();
+    }
+  }
+
+  public long getInsertCalls() {
+    return mInsertCalls.get();
+  }
+
+  public long getBatchInsertCalls() {
+    return mBatchInsertCalls.get();
+  }
+
+  public long getQueryCalls() {
+    return mQueryCalls.get();
+  }
+
+  public long getCalls() {
+    return getInsertCalls() + getBatchInsertCalls() + getQueryCalls();
+  }
+
+  public long getRows() {
+    return mRows.get();
+  }
+
+  public long getBytes() {
+    return mBytes.get();
+  }
+
+  public long getInjectedLatency(TimeUnit unit) {
+    return unit.convert(mInjectedLatencyNanos.get(), TimeUnit.NANOSECONDS);
+  }
+
+  public void reset() {
+    mInsertCalls.set(0);
+    mBatchInsertCalls.set(0);
+    mQueryCalls.set(0);
+    mRows.set(0);
+    mBytes.set(0);
+    mInjectedLatencyNanos.set(0);
+  }
+
+  private void delay(long nanos) {
+    if (nanos <= 0) {
+      return;
+    }
+
+    // Thread.sleep rounds the sub-millisecond delays up to a millisecond on some JVMs
+    long start = System.nanoTime();
+    long deadline = start + nanos;
+    long remaining = nanos;
+    while (remaining > 0 && !Thread.currentThread().isInterrupted()) {
+      LockSupport.parkNanos(remaining);
+      remaining = deadline - System.nanoTime();
+    }
+    mInjectedLatencyNanos.addAndGet(System.nanoTime() - start);
+  }
+}
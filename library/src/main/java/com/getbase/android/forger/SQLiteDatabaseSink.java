@@ -0,0 +1,236 @@
+/*
+ * Copyright (C) 2013 Jerzy Chalupski
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.getbase.android.forger;
+
+import com.google.common.base.Function;
+import com.google.common.base.Preconditions;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+
+import android.content.ContentUris;
+import android.content.ContentValues;
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteStatement;
+import android.net.Uri;
+import android.provider.BaseColumns;
+
+import java.io.Closeable;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * {@link ForgerSink} writing straight to a {@link SQLiteDatabase}, bypassing the ContentProvider
+ * dispatch and notifications. Every model {@link Uri} is mapped to a table, and every distinct set
+ * of inserted columns gets a compiled {@link SQLiteStatement}, to which the values are bound with
+ * the typed bind methods.
+ * <p>
+ * The inserts are grouped in transactions of configurable size; {@link #close()} commits the last
+ * one. The sink is not thread safe.
+ */
+public class SQLiteDatabaseSink implements ForgerSink, Closeable {
+  private final SQLiteDatabase mDatabase;
+  private final Function<Uri, String> mTableMapping;
+  private final int mTransactionSize;
+  private final boolean mReadBack;
+  private final String mIdColumn;
+
+  private final Map<String, Map<List<String>, SQLiteStatement>> mInsertStatements = Maps.newHashMap();
+  private int mRowsInTransaction;
+  private boolean mInTransaction;
+
+  public static Builder builder() {
+    return new Builder();
+  }
+
+  public static class Builder {
+    private SQLiteDatabase mDatabase;
+    private Function<Uri, String> mTableMapping = SqlSinks.LAST_PATH_SEGMENT;
+    private int mTransactionSize;
+    private boolean mReadBack;
+    private String mIdColumn = BaseColumns._ID;
+
+    private Builder() {
+    }
+
+    public Builder withDatabase(SQLiteDatabase database) {
+      Preconditions.checkState(mDatabase == null, "You've already set SQLiteDatabase");
+      mDatabase = Preconditions.checkNotNull(database);
+      return this;
+    }
+
+    /**
+     * Sets the function mapping the model Uris to table names. By default the last path segment
+     * of the Uri is used.
+     */
+    public Builder withTableMapping(Function<Uri, String> tableMapping) {
+      mTableMapping = Preconditions.checkNotNull(tableMapping);
+      return this;
+    }
+
+    /**
+     * Wraps every given number of inserted rows in a transaction. By default every insert is
+     * executed in its own implicit transaction.
+     */
+    public Builder withTransactionSize(int transactionSize) {
+      Preconditions.checkArgument(transactionSize > 0, "Passed transaction size must be greater than 0");
+      mTransactionSize = transactionSize;
+      return this;
+    }
+
+    /**
+     * Reads the inserted rows back with a query by id column instead of building the objects
+     * from the inserted values.
+     */
+    public Builder withReadBack(String idColumn) {
+      mReadBack = true;
+      mIdColumn = Preconditions.checkNotNull(idColumn);
+      return this;
+    }
+
+    public SQLiteDatabaseSink build() {
+      Preconditions.checkState(mDatabase != null, "SQLiteDatabase is not set");
+      return new SQLiteDatabaseSink(this);
+    }
+  }
+
+  private SQLiteDatabaseSink(Builder builder) {
+    mDatabase = builder.mDatabase;
+    mTableMapping = builder.mTableMapping;
+    mTransactionSize = builder.mTransactionSize;
+    mReadBack = builder.mReadBack;
+    mIdColumn = builder.mIdColumn;
+  }
+
+  @Override
+  public Uri insert(Uri uri, ContentValues values) {
+    return ContentUris.withAppendedId(uri, insert(mTableMapping.apply(uri), values));
+  }
+
+  @Override
+  public List<Uri> insert(Uri uri, List<ContentValues> values) {
+    String table = mTableMapping.apply(uri);
+
+    List<Uri> uris = Lists.newArrayListWithCapacity(values.size());
+    for (ContentValues rowValues : values) {
+      uris.add(ContentUris.withAppendedId(uri, insert(table, rowValues)));
+    }
+    return uris;
+  }
+
+  private long insert(String table, ContentValues values) {
+    if (mTransactionSize > 0 && !mInTransaction) {
+      mDatabase.beginTransaction();
+      mInTransaction = true;
+    }
+
+    List<String> columns = SqlSinks.getColumns(values);
+    SQLiteStatement statement = getInsertStatement(table, columns);
+    long id;
+    try {
+      for (int i = 0; i < columns.size(); i++) {
+        bind(statement, i + 1, values.get(columns.get(i)));
+      }
+      id = statement.executeInsert();
+    } finally {
+      statement.clearBindings();
+    }
+
+    Preconditions.checkState(id != -1, "Insert into " + table + " failed.");
+
+    if (mTransactionSize > 0 && ++mRowsInTransaction >= mTransactionSize) {
+      commit();
+    }
+
+    return id;
+  }
+
+  private static void bind(SQLiteStatement statement, int index, Object value) {
+    if (value == null) {
+      statement.bindNull(index);
+    } else if (value instanceof Boolean) {
+      statement.bindLong(index, ((Boolean) value) ? 1 : 0);
+    } else if (value instanceof Float || value instanceof Double) {
+      statement.bindDouble(index, ((Number) value).doubleValue());
+    } else if (value instanceof Number) {
+      statement.bindLong(index, ((Number) value).longValue());
+    } else if (value instanceof byte[]) {
+      statement.bindBlob(index, (byte[]) value);
+    } else {
+      statement.bindString(index, value.toString());
+    }
+  }
+
+  private SQLiteStatement getInsertStatement(String table, List<String> columns) {
+    Map<List<String>, SQLiteStatement> tableStatements = mInsertStatements.get(table);
+    if (tableStatements == null) {
+      tableStatements = Maps.newHashMap();
+      mInsertStatements.put(table, tableStatements);
+    }
+
+    SQLiteStatement statement = tableStatements.get(columns);
+    if (statement == null) {
+      String sql = SqlSinks.getInsertSql(table, columns);
+
+      statement = mDatabase.compileStatement(sql);
+      tableStatements.put(columns, statement);
+    }
+    return statement;
+  }
+
+  @Override
+  public boolean supportsReadBack() {
+    return mReadBack;
+  }
+
+  @Override
+  public Cursor query(Uri uri, String[] projection) {
+    return mDatabase.query(mTableMapping.apply(SqlSinks.getModelUri(uri)), projection, mIdColumn + " = ?", new String[] { String.valueOf(ContentUris.parseId(uri)) }, null, null, null);
+  }
+
+  /**
+   * Commits the current transaction. Does nothing if the transaction size wasn't set or there is
+   * no open transaction.
+   */
+  public void commit() {
+    if (mTransactionSize > 0 && mInTransaction) {
+      try {
+        mDatabase.setTransactionSuccessful();
+      } finally {
+        mDatabase.endTransaction();
+        mInTransaction = false;
+        mRowsInTransaction = 0;
+      }
+    }
+  }
+
+  /**
+   * Commits the current transaction and closes the compiled statements. The database is left
+   * open.
+   */
+  @Override
+  public void close() {
+    commit();
+
+    for (Map<List<String>, SQLiteStatement> tableStatements : mInsertStatements.values()) {
+      for (SQLiteStatement statement : tableStatements.values()) {
+        statement.close();
+      }
+    }
+    mInsertStatements.clear();
+  }
+}
@@ -0,0 +1,69 @@
+/*
+ * Copyright (C) 2013 Jerzy Chalupski
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.getbase.android.forger;
+
+import com.google.common.base.Preconditions;
+
+import android.content.ContentValues;
+import android.net.Uri;
+
+import java.util.List;
+
+/**
+ * Feeds the inserts of a Forger to the {@link SeedingMonitor} and pauses or cancels them when
+ * requested.
+ */
+class SeedingMonitorListener extends ForgerListener {
+  private final SeedingMonitor mMonitor;
+
+  SeedingMonitorListener(SeedingMonitor monitor) {
+    mMonitor = Preconditions.checkNotNull(monitor);
+  }
+
+  @Override
+  public void onBeforeInsert(Class<?> klass, Uri modelUri, ContentValues values) {
+    mMonitor.checkpoint();
+    mMonitor.recordQueued(1);
+  }
+
+  @Override
+  public void onAfterInsert(Class<?> klass, Uri uri, long nanos) {
+    mMonitor.recordInserted(klass, 1);
+  }
+
+  @Override
+  public void onInsertFailed(Class<?> klass, int rows, Throwable error) {
+    mMonitor.recordDiscarded(rows);
+  }
+
+  @Override
+  public void onBeforeBatchFlush(Class<?> klass, int rows) {
+    mMonitor.recordBatchStarted();
+  }
+
+  @Override
+  public void onBatchFlushed(Class<?> klass, List<Uri> uris, long nanos) {
+    mMonitor.recordBatchFinished();
+    mMonitor.recordInserted(klass, uris.size());
+  }
+
+  @Override
+  public void onBatchFlushFailed(Class<?> klass, int rows, Throwable error) {
+    mMonitor.recordBatchFinished();
+    mMonitor.recordDiscarded(rows);
+  }
+}
@@ -0,0 +1,67 @@
+/*
+ * Copyright (C) 2013 Jerzy Chalupski
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.getbase.android.forger;
+
+import com.google.common.base.Function;
+import com.google.common.base.Joiner;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Ordering;
+
+import android.content.ContentValues;
+import android.net.Uri;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+final class SqlSinks {
+  private SqlSinks() {
+  }
+
+  static final Function<Uri, String> LAST_PATH_SEGMENT = new Function<Uri, String>() {
+    @Override
+    public String apply(Uri uri) {
+      return uri.getLastPathSegment();
+    }
+  };
+
+  static List<String> getColumns(ContentValues values) {
+    List<String> columns = Lists.newArrayListWithCapacity(values.size());
+    for (Map.Entry<String, Object> entry : values.valueSet()) {
+      columns.add(entry.getKey());
+    }
+    return Ordering.natural().sortedCopy(columns);
+  }
+
+  static String getInsertSql(String table, List<String> columns) {
+    return columns.isEmpty()
+        ? "INSERT INTO " + table + " DEFAULT VALUES"
+        : "INSERT INTO " + table + " (" + Joiner.on(", ").join(columns) + ") VALUES (" + Joiner.on(", ").join(Collections.nCopies(columns.size(), "?")) + ")";
+  }
+
+  /**
+   * Strips the row id from the Uri returned by {@link ForgerSink#insert(Uri, ContentValues)}.
+   */
+  static Uri getModelUri(Uri rowUri) {
+    List<String> pathSegments = rowUri.getPathSegments();
+    Uri.Builder modelUri = rowUri.buildUpon().path(null);
+    for (String segment : pathSegments.subList(0, pathSegments.size() - 1)) {
+      modelUri.appendPath(segment);
+    }
+    return modelUri.build();
+  }
+}
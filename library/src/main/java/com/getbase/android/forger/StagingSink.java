@@ -0,0 +1,56 @@
+/*
+ * Copyright (C) 2013 Jerzy Chalupski
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.getbase.android.forger;
+
+import android.content.ContentValues;
+import android.net.Uri;
+
+import java.util.List;
+
+/**
+ * {@link ForgerSink} which takes over the rows of a batched insert as soon as Forger builds them,
+ * and converts them into its own form, e.g. binds them to a JDBC batch, instead of letting Forger
+ * keep a {@link ContentValues} per pending row until the batch is inserted.
+ * <p>
+ * Forger still keeps the values if the sink doesn't support the read-back, because the inserted
+ * objects are then built from them. Pipelined inserts pass the rows between threads, so they
+ * don't use the staged batches.
+ */
+public interface StagingSink extends ForgerSink {
+  /**
+   * Returns an empty batch of rows for given model Uri.
+   */
+  StagedBatch newBatch(Uri uri);
+
+  interface StagedBatch {
+    /**
+     * Converts the row into the sink's own form. The passed values are not used afterwards.
+     */
+    void add(ContentValues values);
+
+    /**
+     * Inserts all added rows and returns the Uris identifying them, in the same order as the rows
+     * were added. The batch is empty afterwards, also when the insert fails.
+     */
+    List<Uri> insert();
+
+    /**
+     * Drops the added rows without inserting them.
+     */
+    void clear();
+  }
+}
@@ -0,0 +1,91 @@
+/*
+ * Copyright (C) 2013 Jerzy Chalupski
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.getbase.android.forger.tests;
+
+import static org.fest.assertions.api.Assertions.assertThat;
+
+import com.getbase.android.forger.AdaptiveBatchSizer;
+import com.getbase.android.forger.Forger;
+import com.getbase.android.forger.ForgerMetrics;
+import com.getbase.android.forger.InMemoryContentProvider;
+import com.getbase.android.forger.LatencyInjectingSink;
+
+import org.chalup.microorm.MicroOrm;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+@RunWith(RobolectricTestRunner.class)
+@Config(manifest = Config.NONE)
+public class AdaptiveBatchSizingTest {
+
+  ForgerMetrics mMetrics;
+  Forger<TestModels.TestModel> mTestSubject;
+
+  @Before
+  public void setUp() throws Exception {
+    mMetrics = new ForgerMetrics();
+    mTestSubject = Forger.<TestModels.TestModel>builder()
+        .withMicroOrm(new MicroOrm())
+        .withModelGraph(TestModels.MODEL_GRAPH)
+        .withMetrics(mMetrics)
+        .build();
+  }
+
+  @Test
+  public void shouldGrowBatchesOfFastSink() throws Exception {
+    AdaptiveBatchSizer sizer = AdaptiveBatchSizer.builder().withBounds(2, 64).withTargetLatency(1, TimeUnit.SECONDS).build();
+    LatencyInjectingSink sink = LatencyInjectingSink.builder().withDelegate(new InMemoryContentProvider()).build();
+
+    List<TestModels.User> users = mTestSubject.iNeed(200).of(TestModels.User.class).inAdaptiveBatches(sizer).in(sink);
+
+    assertThat(users).hasSize(200);
+    assertThat(sizer.getBatchSize()).isEqualTo(64);
+    // 2 + 4 + 8 + 16 + 32 + 64 + 64 + 10
+    assertThat(sink.getBatchInsertCalls()).isEqualTo(8);
+
+    ForgerMetrics.ModelMetrics metrics = mMetrics.snapshot().get(TestModels.User.class);
+    assertThat(metrics.getBatchSize()).isEqualTo(64);
+    assertThat(metrics.getBatchSizeIncreases()).isEqualTo(5);
+  }
+
+  @Test
+  public void shouldKeepBatchesOfSlowSinkSmall() throws Exception {
+    AdaptiveBatchSizer sizer = AdaptiveBatchSizer.builder().withBounds(1, 64).withTargetLatency(5, TimeUnit.MILLISECONDS).build();
+    LatencyInjectingSink sink = LatencyInjectingSink.builder()
+        .withDelegate(new InMemoryContentProvider())
+        .withRowLatency(1, TimeUnit.MILLISECONDS)
+        .build();
+
+    mTestSubject.iNeed(50).of(TestModels.User.class).inAdaptiveBatches(sizer).in(sink);
+
+    assertThat(sizer.getBatchSize()).isLessThanOrEqualTo(8);
+    assertThat(sink.getRows()).isEqualTo(50);
+  }
+
+  @Test(expected = IllegalStateException.class)
+  public void shouldNotAllowFixedAndAdaptiveBatches() throws Exception {
+    AdaptiveBatchSizer sizer = AdaptiveBatchSizer.builder().withBounds(1, 64).withTargetLatency(5, TimeUnit.MILLISECONDS).build();
+
+    mTestSubject.iNeed(50).of(TestModels.User.class).inBatchesOf(10).inAdaptiveBatches(sizer);
+  }
+}
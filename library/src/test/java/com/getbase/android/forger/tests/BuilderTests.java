@@ -4,6 +4,7 @@ import static org.fest.assertions.api.Assertions.assertThat;
 
 import com.getbase.android.forger.FakeDataGenerator;
 import com.getbase.android.forger.Forger;
+import com.getbase.android.forger.ForgerSchema;
 
 import org.chalup.microorm.MicroOrm;
 import org.chalup.microorm.TypeAdapter;
@@ -106,6 +107,34 @@ public class BuilderTests {
         .build();
   }
 
+  @Test
+  public void shouldShareSchemaCompiledFromTheSameModelGraph() throws Exception {
+    assertThat(ForgerSchema.of(TestModels.MODEL_GRAPH)).isSameAs(ForgerSchema.of(TestModels.MODEL_GRAPH));
+  }
+
+  @Test
+  public void shouldKeepSeparateGeneratorStateInForgersSharingSchema() throws Exception {
+    final ForgerSchema<TestModels.TestModel> schema = ForgerSchema.of(TestModels.MODEL_GRAPH);
+
+    final Forger<TestModels.TestModel> forgerA = Forger.<TestModels.TestModel>builder()
+        .withMicroOrm(new MicroOrm())
+        .withSchema(schema)
+        .build();
+    final Forger<TestModels.TestModel> forgerB = new Forger<>(schema, new MicroOrm());
+
+    final TestModels.User userA = forgerA.iNeed(TestModels.User.class).in(EchoContentResolver.get());
+    final TestModels.User userB = forgerB.iNeed(TestModels.User.class).in(EchoContentResolver.get());
+
+    assertThat(userA.email).isEqualTo(userB.email);
+  }
+
+  @Test(expected = IllegalStateException.class)
+  public void shouldNotAllowPuttingSchemaAndModelGraph() throws Exception {
+    Forger.<TestModels.TestModel>builder()
+        .withModelGraph(TestModels.MODEL_GRAPH)
+        .withSchema(ForgerSchema.of(TestModels.MODEL_GRAPH));
+  }
+
   private static class CustomDateAdapter
       implements FakeDataGenerator<TestModels.ComplexDate>, TypeAdapter<TestModels.ComplexDate> {
 
@@ -0,0 +1,151 @@
+/*
+ * Copyright (C) 2013 Jerzy Chalupski
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.getbase.android.forger.tests;
+
+import static org.fest.assertions.api.Assertions.assertThat;
+
+import com.getbase.android.forger.CancellationToken;
+import com.getbase.android.forger.Forger;
+import com.getbase.android.forger.InMemoryContentProvider;
+import com.getbase.android.forger.LatencyInjectingSink;
+import com.getbase.android.forger.ProgressCallback;
+import com.google.common.collect.Lists;
+
+import org.chalup.microorm.MicroOrm;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+@RunWith(RobolectricTestRunner.class)
+@Config(manifest = Config.NONE)
+public class BulkInsertControlTest {
+
+  private static class RecordingCallback implements ProgressCallback {
+    final List<Integer> mProgress = Lists.newArrayList();
+
+    @Override
+    public void onProgress(int inserted, int requested) {
+      mProgress.add(inserted);
+    }
+  }
+
+  Forger<TestModels.TestModel> mTestSubject;
+  InMemoryContentProvider mProvider;
+
+  @Before
+  public void setUp() throws Exception {
+    mTestSubject = new Forger<>(TestModels.MODEL_GRAPH, new MicroOrm());
+    mProvider = new InMemoryContentProvider();
+  }
+
+  @Test
+  public void shouldReportProgressEveryNRows() throws Exception {
+    RecordingCallback callback = new RecordingCallback();
+
+    mTestSubject.iNeed(10).of(TestModels.User.class).withProgressCallback(callback, 3).in(mProvider);
+
+    assertThat(callback.mProgress).containsExactly(3, 6, 9);
+  }
+
+  @Test
+  public void shouldReportProgressAfterBatches() throws Exception {
+    RecordingCallback callback = new RecordingCallback();
+
+    mTestSubject.iNeed(10).of(TestModels.User.class).inBatchesOf(4).withProgressCallback(callback, 3).in(mProvider);
+
+    assertThat(callback.mProgress).containsExactly(4, 8, 10);
+  }
+
+  @Test
+  public void shouldStopWhenCancelled() throws Exception {
+    final CancellationToken token = new CancellationToken();
+
+    List<TestModels.User> users = mTestSubject.iNeed(10).of(TestModels.User.class)
+        .withCancellationToken(token)
+        .withProgressCallback(new ProgressCallback() {
+          @Override
+          public void onProgress(int inserted, int requested) {
+            if (inserted == 5) {
+              token.cancel();
+            }
+          }
+        }, 1)
+        .in(mProvider);
+
+    assertThat(users).hasSize(5);
+    assertThat(mProvider.getCount(TestModels.USER.getUri())).isEqualTo(5);
+  }
+
+  @Test
+  public void shouldFlushPendingBatchWhenCancelled() throws Exception {
+    final CancellationToken token = new CancellationToken();
+
+    List<TestModels.Contact> contacts = mTestSubject.iNeed(10).of(TestModels.Contact.class)
+        .inBatchesOf(4)
+        .withCancellationToken(token)
+        .withProgressCallback(new ProgressCallback() {
+          @Override
+          public void onProgress(int inserted, int requested) {
+            token.cancel();
+          }
+        }, 1)
+        .in(mProvider);
+
+    assertThat(contacts).hasSize(4);
+    assertThat(mProvider.getCount(TestModels.CONTACT.getUri())).isEqualTo(4);
+    assertThat(mProvider.getCount(TestModels.USER.getUri())).isEqualTo(4);
+  }
+
+  @Test
+  public void shouldNotInsertAnythingWithCancelledToken() throws Exception {
+    CancellationToken token = new CancellationToken();
+    token.cancel();
+
+    List<TestModels.User> users = mTestSubject.iNeed(10).of(TestModels.User.class).withCancellationToken(token).in(mProvider);
+
+    assertThat(users).isEmpty();
+  }
+
+  @Test
+  public void shouldStopWhenTimeBudgetIsExhausted() throws Exception {
+    LatencyInjectingSink sink = LatencyInjectingSink.builder()
+        .withDelegate(mProvider)
+        .withCallLatency(20, TimeUnit.MILLISECONDS)
+        .build();
+
+    List<TestModels.User> users = mTestSubject.iNeed(1000).of(TestModels.User.class).withTimeBudget(200, TimeUnit.MILLISECONDS).in(sink);
+
+    assertThat(users).isNotEmpty();
+    assertThat(users.size()).isLessThan(1000);
+    assertThat(mProvider.getCount(TestModels.USER.getUri())).isEqualTo(users.size());
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void shouldNotAllowNonPositiveProgressInterval() throws Exception {
+    mTestSubject.iNeed(10).of(TestModels.User.class).withProgressCallback(new RecordingCallback(), 0);
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void shouldNotAllowNonPositiveTimeBudget() throws Exception {
+    mTestSubject.iNeed(10).of(TestModels.User.class).withTimeBudget(0, TimeUnit.SECONDS);
+  }
+}
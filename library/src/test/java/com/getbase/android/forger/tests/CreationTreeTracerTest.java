@@ -0,0 +1,159 @@
+/*
+ * Copyright (C) 2013 Jerzy Chalupski
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.getbase.android.forger.tests;
+
+import static org.fest.assertions.api.Assertions.assertThat;
+
+import com.getbase.android.forger.CreationTreeTracer;
+import com.getbase.android.forger.FakeDataGenerator;
+import com.getbase.android.forger.Forger;
+import com.getbase.android.forger.InMemoryContentProvider;
+import com.google.common.base.Charsets;
+import com.google.common.io.Files;
+import com.google.common.util.concurrent.Uninterruptibles;
+
+import org.chalup.microorm.MicroOrm;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+import java.io.File;
+import java.io.StringWriter;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+@RunWith(RobolectricTestRunner.class)
+@Config(manifest = Config.NONE)
+public class CreationTreeTracerTest {
+
+  @Rule
+  public TemporaryFolder mTemporaryFolder = new TemporaryFolder();
+
+  CreationTreeTracer mTracer;
+  Forger<TestModels.TestModel> mTestSubject;
+
+  @Before
+  public void setUp() throws Exception {
+    mTracer = new CreationTreeTracer();
+    mTestSubject = Forger.<TestModels.TestModel>builder()
+        .withMicroOrm(new MicroOrm())
+        .withModelGraph(TestModels.MODEL_GRAPH)
+        .registerListener(mTracer)
+        .build();
+  }
+
+  @Test
+  public void shouldRecordNestedCreationTree() throws Exception {
+    mTestSubject.iNeed(TestModels.Deal.class).in(new InMemoryContentProvider());
+
+    assertThat(mTracer.getPaths()).containsOnly("Deal", "Deal;Contact", "Deal;Contact;User", "Deal;User");
+    assertThat(mTracer.getCount("Deal")).isEqualTo(1);
+    assertThat(mTracer.getCount("Deal;Contact;User")).isEqualTo(1);
+  }
+
+  @Test
+  public void shouldAggregateRepeatedPaths() throws Exception {
+    InMemoryContentProvider provider = new InMemoryContentProvider();
+    mTestSubject.iNeed(3).of(TestModels.Contact.class).in(provider);
+    mTestSubject.iNeed(TestModels.Contact.class).in(provider);
+
+    assertThat(mTracer.getPaths()).containsOnly("Contact", "Contact;User");
+    assertThat(mTracer.getCount("Contact")).isEqualTo(4);
+    assertThat(mTracer.getCount("Contact;User")).isEqualTo(4);
+  }
+
+  @Test
+  public void shouldSplitSelfAndTotalTime() throws Exception {
+    mTestSubject.iNeed(TestModels.Deal.class).in(new InMemoryContentProvider());
+
+    long total = mTracer.getTotalTime("Deal", TimeUnit.NANOSECONDS);
+    long self = mTracer.getSelfTime("Deal", TimeUnit.NANOSECONDS);
+    long parents = mTracer.getTotalTime("Deal;Contact", TimeUnit.NANOSECONDS) + mTracer.getTotalTime("Deal;User", TimeUnit.NANOSECONDS);
+
+    assertThat(self).isEqualTo(total - parents);
+    assertThat(mTracer.getTotalTime("Deal;Contact;User", TimeUnit.NANOSECONDS)).isEqualTo(mTracer.getSelfTime("Deal;Contact;User", TimeUnit.NANOSECONDS));
+  }
+
+  @Test
+  public void shouldIncludeFakingTimeInCreationTime() throws Exception {
+    CreationTreeTracer tracer = new CreationTreeTracer();
+    Forger<TestModels.TestModel> forger = Forger.<TestModels.TestModel>builder()
+        .withMicroOrm(new MicroOrm())
+        .withModelGraph(TestModels.MODEL_GRAPH)
+        .registerCustomGenerator(boolean.class, new FakeDataGenerator<Boolean>() {
+          @Override
+          public Boolean generate() {
+            Uninterruptibles.sleepUninterruptibly(20, TimeUnit.MILLISECONDS);
+            return true;
+          }
+        })
+        .registerListener(tracer)
+        .build();
+    InMemoryContentProvider provider = new InMemoryContentProvider();
+
+    forger.iNeed(TestModels.User.class).in(provider);
+    forger.iNeed(TestModels.Contact.class).in(provider);
+
+    // only User has a boolean field
+    assertThat(tracer.getTotalTime("User", TimeUnit.MILLISECONDS)).isGreaterThanOrEqualTo(20);
+    assertThat(tracer.getTotalTime("Contact;User", TimeUnit.MILLISECONDS)).isGreaterThanOrEqualTo(20);
+    assertThat(tracer.getSelfTime("Contact", TimeUnit.NANOSECONDS)).isEqualTo(tracer.getTotalTime("Contact", TimeUnit.NANOSECONDS) - tracer.getTotalTime("Contact;User", TimeUnit.NANOSECONDS));
+  }
+
+  @Test
+  public void shouldRecordParentsOfPipelinedInsertUnderRequestedObjects() throws Exception {
+    mTestSubject.iNeed(20).of(TestModels.Contact.class)
+        .inBatchesOf(5)
+        .pipelined(2, 4)
+        .in(new InMemoryContentProvider());
+
+    assertThat(mTracer.getPaths()).containsOnly("Contact", "Contact;User");
+    assertThat(mTracer.getCount("Contact;User")).isEqualTo(20);
+  }
+
+  @Test
+  public void shouldWriteCollapsedStacks() throws Exception {
+    mTestSubject.iNeed(TestModels.Deal.class).in(new InMemoryContentProvider());
+
+    File file = mTemporaryFolder.newFile();
+    mTracer.writeCollapsedStacks(file);
+
+    List<String> lines = Files.readLines(file, Charsets.UTF_8);
+    assertThat(lines).hasSize(4);
+    assertThat(lines).contains("Deal;Contact;User " + mTracer.getSelfTime("Deal;Contact;User", TimeUnit.NANOSECONDS));
+  }
+
+  @Test
+  public void shouldReset() throws Exception {
+    mTestSubject.iNeed(TestModels.Deal.class).in(new InMemoryContentProvider());
+
+    mTracer.reset();
+
+    StringWriter writer = new StringWriter();
+    mTracer.writeCollapsedStacks(writer);
+    assertThat(writer.toString()).isEmpty();
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void shouldRejectUnknownPath() throws Exception {
+    mTracer.getCount("Deal");
+  }
+}
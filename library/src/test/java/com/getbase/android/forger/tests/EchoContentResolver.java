@@ -30,6 +30,8 @@ import com.google.common.collect.Sets;
 import org.mockito.invocation.InvocationOnMock;
 import org.mockito.stubbing.Answer;
 
+import android.content.ContentProviderOperation;
+import android.content.ContentProviderResult;
 import android.content.ContentResolver;
 import android.content.ContentUris;
 import android.content.ContentValues;
@@ -38,7 +40,9 @@ import android.database.MatrixCursor;
 import android.net.Uri;
 import android.provider.BaseColumns;
 
+import java.util.ArrayList;
 import java.util.Collection;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
 
@@ -98,6 +102,26 @@ public class EchoContentResolver {
       }
     });
 
+    try {
+      when(resolverMock.applyBatch(anyString(), any(ArrayList.class))).thenAnswer(new Answer<ContentProviderResult[]>() {
+        @Override
+        public ContentProviderResult[] answer(InvocationOnMock invocation) throws Throwable {
+          @SuppressWarnings("unchecked")
+          List<ContentProviderOperation> operations = (List<ContentProviderOperation>) invocation.getArguments()[1];
+
+          ContentProviderResult[] results = new ContentProviderResult[operations.size()];
+          for (int i = 0; i < operations.size(); i++) {
+            ContentProviderOperation operation = operations.get(i);
+            ContentValues values = operation.resolveValueBackReferences(results, i);
+            results[i] = new ContentProviderResult(resolverMock.insert(operation.getUri(), values));
+          }
+          return results;
+        }
+      });
+    } catch (Exception e) {
+      throw new RuntimeException(e);
+    }
+
     return resolverMock;
   }
 
@@ -105,4 +105,32 @@ public class FakingContextTest {
 
     assertThat(deal.contactId).isEqualTo(42);
   }
+
+  @Test
+  public void shouldResolveDependenciesSeparatelyForEachContext() throws Exception {
+    TestModels.Deal dealWithoutContext = mTestSubject.iNeed(TestModels.Deal.class).in(mContentResolver);
+
+    TestModels.Contact contact = mTestSubject.iNeed(TestModels.Contact.class).in(mContentResolver);
+    TestModels.Deal dealWithContext = mTestSubject.inContextOf(contact).iNeed(TestModels.Deal.class).in(mContentResolver);
+
+    TestModels.Deal anotherDealWithoutContext = mTestSubject.iNeed(TestModels.Deal.class).in(mContentResolver);
+
+    assertThat(dealWithContext.contactId).isEqualTo(contact.id);
+    assertThat(dealWithoutContext.contactId).isNotEqualTo(contact.id);
+    assertThat(anotherDealWithoutContext.contactId).isNotEqualTo(contact.id);
+    assertThat(anotherDealWithoutContext.contactId).isNotEqualTo(dealWithoutContext.contactId);
+  }
+
+  @Test
+  public void shouldSatisfyDependenciesFromDeeplyNestedContext() throws Exception {
+    TestModels.User user = mTestSubject.iNeed(TestModels.User.class).in(mContentResolver);
+
+    Forger<TestModels.TestModel> forgerWithContext = mTestSubject.inContextOf(user);
+    for (int i = 0; i < 100; i++) {
+      forgerWithContext = forgerWithContext.inContextOf(TestModels.Lead.class).in(mContentResolver);
+    }
+
+    TestModels.Contact contact = forgerWithContext.iNeed(TestModels.Contact.class).in(mContentResolver);
+    assertThat(contact.userId).isEqualTo(user.id);
+  }
 }
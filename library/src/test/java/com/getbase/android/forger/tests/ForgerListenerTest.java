@@ -0,0 +1,132 @@
+/*
+ * Copyright (C) 2013 Jerzy Chalupski
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.getbase.android.forger.tests;
+
+import static org.fest.assertions.api.Assertions.assertThat;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyLong;
+import static org.mockito.Matchers.anyListOf;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.inOrder;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+import com.getbase.android.forger.Forger;
+import com.getbase.android.forger.ForgerListener;
+import com.getbase.android.forger.InMemoryContentProvider;
+
+import org.chalup.microorm.MicroOrm;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.InOrder;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+import android.content.ContentValues;
+import android.net.Uri;
+
+@RunWith(RobolectricTestRunner.class)
+@Config(manifest = Config.NONE)
+public class ForgerListenerTest {
+
+  ForgerListener mListener;
+  Forger<TestModels.TestModel> mTestSubject;
+
+  @Before
+  public void setUp() throws Exception {
+    mListener = mock(ForgerListener.class);
+    mTestSubject = Forger.<TestModels.TestModel>builder()
+        .withMicroOrm(new MicroOrm())
+        .withModelGraph(TestModels.MODEL_GRAPH)
+        .registerListener(mListener)
+        .build();
+  }
+
+  @Test
+  public void shouldNotifyAboutSingleInsert() throws Exception {
+    TestModels.User user = mTestSubject.iNeed(TestModels.User.class).in(new InMemoryContentProvider());
+
+    InOrder inOrder = inOrder(mListener);
+    inOrder.verify(mListener).onBeforeInsert(eq(TestModels.User.class), eq(TestModels.USER.getUri()), any(ContentValues.class));
+    inOrder.verify(mListener).onAfterInsert(eq(TestModels.User.class), eq(Uri.withAppendedPath(TestModels.USER.getUri(), String.valueOf(user._id))), anyLong());
+    inOrder.verify(mListener).onReadBack(eq(TestModels.User.class), any(Uri.class), anyLong());
+    verify(mListener, never()).onDependencyAutoCreated(any(Class.class), any());
+  }
+
+  @Test
+  public void shouldNotifyAboutAutoCreatedDependencies() throws Exception {
+    TestModels.Contact contact = mTestSubject.iNeed(TestModels.Contact.class).in(new InMemoryContentProvider());
+
+    ArgumentCaptor<Object> parent = ArgumentCaptor.forClass(Object.class);
+    verify(mListener).onDependencyAutoCreated(eq(TestModels.Contact.class), parent.capture());
+    assertThat(parent.getValue()).isInstanceOf(TestModels.User.class);
+    assertThat(((TestModels.User) parent.getValue()).id).isEqualTo(contact.userId);
+  }
+
+  @Test
+  public void shouldNotifyAboutFlushedBatches() throws Exception {
+    mTestSubject.iNeed(5).of(TestModels.User.class).inBatchesOf(2).in(new InMemoryContentProvider());
+
+    verify(mListener, times(5)).onBeforeInsert(eq(TestModels.User.class), eq(TestModels.USER.getUri()), any(ContentValues.class));
+    verify(mListener, times(3)).onBatchFlushed(eq(TestModels.User.class), anyListOf(Uri.class), anyLong());
+    verify(mListener, never()).onAfterInsert(any(Class.class), any(Uri.class), anyLong());
+    verify(mListener, times(5)).onReadBack(eq(TestModels.User.class), any(Uri.class), anyLong());
+  }
+
+  @Test
+  public void shouldNotifyAboutFakedModels() throws Exception {
+    mTestSubject.iNeed(TestModels.Contact.class).in(new InMemoryContentProvider());
+
+    verify(mListener).onModelFaked(eq(TestModels.Contact.class), anyLong());
+    verify(mListener).onModelFaked(eq(TestModels.User.class), anyLong());
+  }
+
+  @Test
+  public void shouldNotifyAllRegisteredListeners() throws Exception {
+    ForgerListener anotherListener = mock(ForgerListener.class);
+    Forger<TestModels.TestModel> forger = Forger.<TestModels.TestModel>builder()
+        .withMicroOrm(new MicroOrm())
+        .withModelGraph(TestModels.MODEL_GRAPH)
+        .registerListener(mListener)
+        .registerListener(anotherListener)
+        .build();
+
+    forger.iNeed(TestModels.User.class).in(new InMemoryContentProvider());
+
+    verify(mListener).onAfterInsert(eq(TestModels.User.class), any(Uri.class), anyLong());
+    verify(anotherListener).onAfterInsert(eq(TestModels.User.class), any(Uri.class), anyLong());
+  }
+
+  @Test
+  public void shouldKeepListenersInFakingContext() throws Exception {
+    InMemoryContentProvider provider = new InMemoryContentProvider();
+    TestModels.User user = mTestSubject.iNeed(TestModels.User.class).in(provider);
+
+    mTestSubject.inContextOf(user).iNeed(TestModels.Contact.class).in(provider);
+
+    verify(mListener).onAfterInsert(eq(TestModels.Contact.class), any(Uri.class), anyLong());
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void shouldNotAllowNullListener() throws Exception {
+    Forger.<TestModels.TestModel>builder().registerListener(null);
+  }
+}
@@ -0,0 +1,115 @@
+/*
+ * Copyright (C) 2013 Jerzy Chalupski
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.getbase.android.forger.tests;
+
+import static org.fest.assertions.api.Assertions.assertThat;
+
+import com.getbase.android.forger.Forger;
+import com.getbase.android.forger.ForgerMetrics;
+import com.getbase.android.forger.InMemoryContentProvider;
+
+import org.chalup.microorm.MicroOrm;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+import java.util.concurrent.TimeUnit;
+
+@RunWith(RobolectricTestRunner.class)
+@Config(manifest = Config.NONE)
+public class ForgerMetricsTest {
+
+  ForgerMetrics mMetrics;
+  Forger<TestModels.TestModel> mTestSubject;
+
+  @Before
+  public void setUp() throws Exception {
+    mMetrics = new ForgerMetrics();
+    mTestSubject = Forger.<TestModels.TestModel>builder()
+        .withMicroOrm(new MicroOrm())
+        .withModelGraph(TestModels.MODEL_GRAPH)
+        .withMetrics(mMetrics)
+        .build();
+  }
+
+  @Test
+  public void shouldCountRowsAndAutoCreatedParents() throws Exception {
+    mTestSubject.iNeed(TestModels.Deal.class).in(new InMemoryContentProvider());
+
+    ForgerMetrics.Snapshot snapshot = mMetrics.snapshot();
+    assertThat(snapshot.getRowsInserted()).isEqualTo(4);
+
+    assertThat(snapshot.get(TestModels.Deal.class).getRowsInserted()).isEqualTo(1);
+    assertThat(snapshot.get(TestModels.Deal.class).getAutoCreatedParents()).isEqualTo(0);
+    assertThat(snapshot.get(TestModels.Contact.class).getRowsInserted()).isEqualTo(1);
+    assertThat(snapshot.get(TestModels.Contact.class).getAutoCreatedParents()).isEqualTo(1);
+    assertThat(snapshot.get(TestModels.User.class).getRowsInserted()).isEqualTo(2);
+    assertThat(snapshot.get(TestModels.User.class).getAutoCreatedParents()).isEqualTo(2);
+  }
+
+  @Test
+  public void shouldRecordBatchesAsSingleInsertCall() throws Exception {
+    mTestSubject.iNeed(5).of(TestModels.User.class).inBatchesOf(2).in(new InMemoryContentProvider());
+
+    ForgerMetrics.ModelMetrics users = mMetrics.snapshot().get(TestModels.User.class);
+    assertThat(users.getRowsInserted()).isEqualTo(5);
+    assertThat(users.getInsertLatency().getCount()).isEqualTo(3);
+    assertThat(users.getReadBacks()).isEqualTo(5);
+    assertThat(users.getQueryLatency().getCount()).isEqualTo(5);
+  }
+
+  @Test
+  public void shouldRecordGeneratorTime() throws Exception {
+    mTestSubject.iNeed(10).of(TestModels.Contact.class).in(new InMemoryContentProvider());
+
+    assertThat(mMetrics.snapshot().get(TestModels.Contact.class).getGeneratorTime(TimeUnit.NANOSECONDS)).isGreaterThan(0);
+  }
+
+  @Test
+  public void shouldResetMetrics() throws Exception {
+    mTestSubject.iNeed(TestModels.Deal.class).in(new InMemoryContentProvider());
+
+    mMetrics.reset();
+
+    ForgerMetrics.Snapshot snapshot = mMetrics.snapshot();
+    assertThat(snapshot.getRowsInserted()).isEqualTo(0);
+    assertThat(snapshot.get(TestModels.Deal.class).getInsertLatency().getCount()).isEqualTo(0);
+  }
+
+  @Test
+  public void shouldPassLatencyAssertion() throws Exception {
+    mTestSubject.iNeed(10).of(TestModels.User.class).in(new InMemoryContentProvider());
+
+    mMetrics.snapshot().get(TestModels.User.class).getInsertLatency().assertPercentileBelow(99, 10, TimeUnit.SECONDS);
+  }
+
+  @Test(expected = AssertionError.class)
+  public void shouldFailLatencyAssertion() throws Exception {
+    mTestSubject.iNeed(10).of(TestModels.User.class).in(new InMemoryContentProvider());
+
+    mMetrics.snapshot().get(TestModels.User.class).getInsertLatency().assertPercentileBelow(99, 1, TimeUnit.NANOSECONDS);
+  }
+
+  @Test(expected = IllegalStateException.class)
+  public void shouldNotAllowSettingMetricsTwice() throws Exception {
+    Forger.<TestModels.TestModel>builder()
+        .withMetrics(new ForgerMetrics())
+        .withMetrics(new ForgerMetrics());
+  }
+}
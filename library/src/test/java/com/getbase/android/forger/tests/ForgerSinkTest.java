@@ -0,0 +1,372 @@
+/*
+ * Copyright (C) 2013 Jerzy Chalupski
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.getbase.android.forger.tests;
+
+import static org.fest.assertions.api.Assertions.assertThat;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Mockito.atLeastOnce;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import com.getbase.android.forger.ContentResolverSink;
+import com.getbase.android.forger.Forger;
+import com.getbase.android.forger.ForgerSink;
+import com.getbase.android.forger.InMemoryContentProvider;
+import com.getbase.android.forger.SeedPlan;
+import com.getbase.android.forger.StagingSink;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Sets;
+
+import org.chalup.microorm.MicroOrm;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+import android.content.ContentProviderClient;
+import android.content.ContentProviderOperation;
+import android.content.ContentProviderResult;
+import android.content.ContentResolver;
+import android.content.ContentUris;
+import android.content.ContentValues;
+import android.database.ContentObserver;
+import android.database.Cursor;
+import android.net.Uri;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+
+@RunWith(RobolectricTestRunner.class)
+@Config(manifest = Config.NONE)
+public class ForgerSinkTest {
+
+  Forger<TestModels.TestModel> mTestSubject;
+  ContentResolver mContentResolver;
+
+  @Before
+  public void setUp() throws Exception {
+    mTestSubject = new Forger<>(TestModels.MODEL_GRAPH, new MicroOrm());
+    mContentResolver = EchoContentResolver.get();
+  }
+
+  @Test
+  public void shouldBuildObjectsFromInsertedValuesWhenSinkDoesNotSupportReadBack() throws Exception {
+    RecordingSink sink = new RecordingSink();
+
+    TestModels.Deal deal = mTestSubject.iNeed(TestModels.Deal.class).with("name", "Forged").in(sink);
+
+    assertThat(deal.name).isEqualTo("Forged");
+    assertThat(sink.mRows).hasSize(4);
+    assertThat(deal._id).isEqualTo(4L);
+    assertThat(deal.contactId).isNotEqualTo(0L);
+    assertThat(deal.userId).isNotEqualTo(0L);
+  }
+
+  @Test
+  public void shouldInsertObjectsInBatches() throws Exception {
+    List<TestModels.User> users = mTestSubject.iNeed(7).of(TestModels.User.class).inBatchesOf(3).in(mContentResolver);
+
+    assertThat(users).hasSize(7);
+    Set<Long> ids = Sets.newHashSet();
+    for (TestModels.User user : users) {
+      ids.add(user._id);
+    }
+    assertThat(ids).hasSize(7);
+
+    verify(mContentResolver, times(3)).applyBatch(anyString(), any(ArrayList.class));
+    verify(mContentResolver, times(7)).query(any(Uri.class), any(String[].class), anyString(), any(String[].class), anyString());
+  }
+
+  @Test
+  public void shouldInsertAutoCreatedParentsOneByOneInBatchedMode() throws Exception {
+    RecordingSink sink = new RecordingSink();
+
+    List<TestModels.Deal> deals = mTestSubject.iNeed(5).of(TestModels.Deal.class).inBatchesOf(2).in(sink);
+
+    assertThat(deals).hasSize(5);
+    assertThat(sink.mBatches).isEqualTo(3);
+    assertThat(sink.mRows).hasSize(20);
+  }
+
+  @Test
+  public void shouldIncludeBatchesInSeedPlan() throws Exception {
+    SeedPlan plan = mTestSubject.iNeed(5).of(TestModels.Deal.class).inBatchesOf(2).plan();
+
+    assertThat(plan.getBatchSize()).isEqualTo(2);
+    assertThat(plan.getTotalRows()).isEqualTo(20L);
+    assertThat(plan.getInsertCalls()).isEqualTo(18L);
+    assertThat(plan.getReadBacks()).isEqualTo(20L);
+  }
+
+  @Test
+  public void shouldNotTouchResolverWhenWritingToCustomSink() throws Exception {
+    mTestSubject.iNeed(TestModels.User.class).in(new RecordingSink());
+
+    verify(mContentResolver, never()).insert(any(Uri.class), any(ContentValues.class));
+  }
+
+  @Test
+  public void shouldMarkYieldPointsInBatches() throws Exception {
+    ForgerSink sink = ContentResolverSink.builder().withContentResolver(mContentResolver).withYieldInterval(3).build();
+
+    mTestSubject.iNeed(7).of(TestModels.User.class).inBatchesOf(7).in(sink);
+
+    @SuppressWarnings("unchecked")
+    ArgumentCaptor<ArrayList<ContentProviderOperation>> operations = (ArgumentCaptor) ArgumentCaptor.forClass(ArrayList.class);
+    verify(mContentResolver).applyBatch(anyString(), operations.capture());
+
+    List<Integer> yieldPoints = Lists.newArrayList();
+    for (int i = 0; i < operations.getValue().size(); i++) {
+      if (operations.getValue().get(i).isYieldAllowed()) {
+        yieldPoints.add(i);
+      }
+    }
+    assertThat(yieldPoints).containsExactly(3, 6);
+  }
+
+  @Test
+  public void shouldNotMarkYieldPointsByDefault() throws Exception {
+    mTestSubject.iNeed(7).of(TestModels.User.class).inBatchesOf(7).in(mContentResolver);
+
+    @SuppressWarnings("unchecked")
+    ArgumentCaptor<ArrayList<ContentProviderOperation>> operations = (ArgumentCaptor) ArgumentCaptor.forClass(ArrayList.class);
+    verify(mContentResolver).applyBatch(anyString(), operations.capture());
+
+    for (ContentProviderOperation operation : operations.getValue()) {
+      assertThat(operation.isYieldAllowed()).isFalse();
+    }
+  }
+
+  @Test
+  public void shouldCoalesceChangeNotifications() throws Exception {
+    ContentResolverSink sink = ContentResolverSink.builder().withContentResolver(mContentResolver).withSuppressedNotifications("no_notify").build();
+
+    mTestSubject.iNeed(5).of(TestModels.Deal.class).inBatchesOf(5).in(sink);
+
+    ArgumentCaptor<Uri> insertUris = ArgumentCaptor.forClass(Uri.class);
+    verify(mContentResolver, atLeastOnce()).insert(insertUris.capture(), any(ContentValues.class));
+    for (Uri uri : insertUris.getAllValues()) {
+      assertThat(uri.getQueryParameter("no_notify")).isEqualTo("true");
+    }
+
+    verify(mContentResolver).notifyChange(TestModels.DEAL.getUri(), null);
+    verify(mContentResolver).notifyChange(TestModels.CONTACT.getUri(), null);
+    verify(mContentResolver).notifyChange(TestModels.USER.getUri(), null);
+  }
+
+  @Test
+  public void shouldNotifyPendingChangesOnDemand() throws Exception {
+    ContentResolverSink sink = ContentResolverSink.builder().withContentResolver(mContentResolver).withSuppressedNotifications("no_notify").build();
+
+    sink.insert(TestModels.USER.getUri(), new ContentValues());
+    sink.insert(TestModels.USER.getUri(), new ContentValues());
+    verify(mContentResolver, never()).notifyChange(any(Uri.class), any(ContentObserver.class));
+
+    sink.notifyPendingChanges();
+    verify(mContentResolver).notifyChange(TestModels.USER.getUri(), null);
+
+    sink.notifyPendingChanges();
+    verify(mContentResolver).notifyChange(any(Uri.class), any(ContentObserver.class));
+  }
+
+  @Test
+  public void shouldNotifyAboutSingleInsertsOnceObjectsAreCreated() throws Exception {
+    ContentResolverSink sink = ContentResolverSink.builder().withContentResolver(mContentResolver).withSuppressedNotifications("no_notify").build();
+
+    mTestSubject.iNeed(3).of(TestModels.Contact.class).in(sink);
+
+    verify(mContentResolver).notifyChange(TestModels.CONTACT.getUri(), null);
+    verify(mContentResolver).notifyChange(TestModels.USER.getUri(), null);
+    verify(mContentResolver, times(2)).notifyChange(any(Uri.class), any(ContentObserver.class));
+  }
+
+  @Test
+  public void shouldNotNotifyWhenNotificationsAreNotSuppressed() throws Exception {
+    ContentResolverSink sink = new ContentResolverSink(mContentResolver);
+
+    mTestSubject.iNeed(3).of(TestModels.User.class).inBatchesOf(3).in(sink);
+    sink.notifyPendingChanges();
+
+    verify(mContentResolver, never()).notifyChange(any(Uri.class), any(ContentObserver.class));
+  }
+
+  @Test
+  public void shouldReuseProviderClientPerAuthority() throws Exception {
+    ContentResolver resolver = mock(ContentResolver.class);
+    ContentProviderClient client = mockProviderClient(new InMemoryContentProvider());
+    when(resolver.acquireContentProviderClient(anyString())).thenReturn(client);
+
+    ContentResolverSink sink = ContentResolverSink.builder().withContentResolver(resolver).withProviderClients().build();
+    mTestSubject.iNeed(5).of(TestModels.Deal.class).inBatchesOf(5).in(sink);
+    mTestSubject.iNeed(TestModels.User.class).in(sink);
+
+    verify(resolver).acquireContentProviderClient(TestModels.DEAL.getUri().getAuthority());
+    verify(resolver, never()).insert(any(Uri.class), any(ContentValues.class));
+    verify(resolver, never()).query(any(Uri.class), any(String[].class), anyString(), any(String[].class), anyString());
+    verify(client).applyBatch(any(ArrayList.class));
+    verify(client, never()).release();
+
+    sink.close();
+    verify(client).release();
+  }
+
+  @Test
+  public void shouldAcquireProviderClientAgainAfterClose() throws Exception {
+    ContentResolver resolver = mock(ContentResolver.class);
+    ContentProviderClient client = mockProviderClient(new InMemoryContentProvider());
+    when(resolver.acquireContentProviderClient(anyString())).thenReturn(client);
+
+    ContentResolverSink sink = ContentResolverSink.builder().withContentResolver(resolver).withProviderClients().build();
+    mTestSubject.iNeed(TestModels.User.class).in(sink);
+    sink.close();
+    mTestSubject.iNeed(TestModels.User.class).in(sink);
+    sink.close();
+
+    verify(resolver, times(2)).acquireContentProviderClient(anyString());
+    verify(client, times(2)).release();
+  }
+
+  @Test(expected = IllegalStateException.class)
+  public void shouldFailForUnknownAuthority() throws Exception {
+    ContentResolverSink sink = ContentResolverSink.builder().withContentResolver(mock(ContentResolver.class)).withProviderClients().build();
+
+    mTestSubject.iNeed(TestModels.User.class).in(sink);
+  }
+
+  private static ContentProviderClient mockProviderClient(final InMemoryContentProvider provider) throws Exception {
+    ContentProviderClient client = mock(ContentProviderClient.class);
+    when(client.insert(any(Uri.class), any(ContentValues.class))).thenAnswer(new Answer<Uri>() {
+      @Override
+      public Uri answer(InvocationOnMock invocation) throws Throwable {
+        return provider.insert((Uri) invocation.getArguments()[0], (ContentValues) invocation.getArguments()[1]);
+      }
+    });
+    when(client.query(any(Uri.class), any(String[].class), anyString(), any(String[].class), anyString())).thenAnswer(new Answer<Cursor>() {
+      @Override
+      public Cursor answer(InvocationOnMock invocation) throws Throwable {
+        return provider.query((Uri) invocation.getArguments()[0], (String[]) invocation.getArguments()[1]);
+      }
+    });
+    when(client.applyBatch(any(ArrayList.class))).thenAnswer(new Answer<ContentProviderResult[]>() {
+      @Override
+      @SuppressWarnings("unchecked")
+      public ContentProviderResult[] answer(InvocationOnMock invocation) throws Throwable {
+        return provider.applyBatch((ArrayList<ContentProviderOperation>) invocation.getArguments()[0]);
+      }
+    });
+    return client;
+  }
+
+  @Test
+  public void shouldStageBatchedRowsInStagingSink() throws Exception {
+    StagingRecordingSink sink = new StagingRecordingSink();
+
+    List<TestModels.User> users = mTestSubject.iNeed(25).of(TestModels.User.class).inBatchesOf(10).in(sink);
+
+    assertThat(users).hasSize(25);
+    assertThat(sink.mStagedRows).isEqualTo(25);
+    assertThat(sink.mStagedBatches).isEqualTo(3);
+    assertThat(sink.mBatches).isZero();
+    for (int i = 0; i < users.size(); i++) {
+      assertThat(users.get(i).email).isEqualTo(sink.mRows.get(i).getAsString("email"));
+    }
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void shouldNotAllowEmptyYieldInterval() throws Exception {
+    ContentResolverSink.builder().withYieldInterval(0);
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void shouldNotAllowEmptyBatches() throws Exception {
+    mTestSubject.iNeed(5).of(TestModels.User.class).inBatchesOf(0);
+  }
+
+  private static class RecordingSink implements ForgerSink {
+    final List<ContentValues> mRows = Lists.newArrayList();
+    int mBatches;
+
+    @Override
+    public Uri insert(Uri uri, ContentValues values) {
+      mRows.add(values);
+      return ContentUris.withAppendedId(uri, mRows.size());
+    }
+
+    @Override
+    public List<Uri> insert(Uri uri, List<ContentValues> values) {
+      mBatches++;
+      List<Uri> uris = Lists.newArrayList();
+      for (ContentValues rowValues : values) {
+        uris.add(insert(uri, rowValues));
+      }
+      return uris;
+    }
+
+    @Override
+    public boolean supportsReadBack() {
+      return false;
+    }
+
+    @Override
+    public Cursor query(Uri uri, String[] projection) {
+      throw new UnsupportedOperationException();
+    }
+  }
+
+  private static class StagingRecordingSink extends RecordingSink implements StagingSink {
+    int mStagedRows;
+    int mStagedBatches;
+
+    @Override
+    public StagedBatch newBatch(final Uri uri) {
+      return new StagedBatch() {
+        final List<ContentValues> mStaged = Lists.newArrayList();
+
+        @Override
+        public void add(ContentValues values) {
+          mStagedRows++;
+          mStaged.add(values);
+        }
+
+        @Override
+        public List<Uri> insert() {
+          mStagedBatches++;
+          List<Uri> uris = Lists.newArrayList();
+          for (ContentValues rowValues : mStaged) {
+            uris.add(StagingRecordingSink.this.insert(uri, rowValues));
+          }
+          mStaged.clear();
+          return uris;
+        }
+
+        @Override
+        public void clear() {
+          mStaged.clear();
+        }
+      };
+    }
+  }
+}
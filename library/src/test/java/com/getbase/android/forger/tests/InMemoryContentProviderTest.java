@@ -0,0 +1,175 @@
+/*
+ * Copyright (C) 2013 Jerzy Chalupski
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.getbase.android.forger.tests;
+
+import static org.fest.assertions.api.Assertions.assertThat;
+
+import com.getbase.android.forger.Forger;
+import com.getbase.android.forger.InMemoryContentProvider;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Sets;
+
+import org.chalup.microorm.MicroOrm;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+import android.content.ContentProviderOperation;
+import android.content.ContentProviderResult;
+import android.content.ContentUris;
+import android.content.ContentValues;
+import android.database.Cursor;
+import android.net.Uri;
+import android.provider.BaseColumns;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+
+@RunWith(RobolectricTestRunner.class)
+@Config(manifest = Config.NONE)
+public class InMemoryContentProviderTest {
+
+  private static final Uri NOTES = Uri.parse("content://com.getbase.android.forger.tests/notes");
+
+  InMemoryContentProvider mProvider;
+
+  @Before
+  public void setUp() throws Exception {
+    mProvider = new InMemoryContentProvider();
+  }
+
+  @Test
+  public void shouldServeAsForgerSink() throws Exception {
+    Forger<TestModels.TestModel> forger = new Forger<>(TestModels.MODEL_GRAPH, new MicroOrm());
+
+    TestModels.Deal deal = forger.iNeed(TestModels.Deal.class).with("name", "Forged").in(mProvider);
+
+    assertThat(deal.name).isEqualTo("Forged");
+    assertThat(deal._id).isEqualTo(1L);
+    assertThat(mProvider.getCount(new TestModels.BaseTestModel(TestModels.Deal.class).getUri())).isEqualTo(1);
+  }
+
+  @Test
+  public void shouldRoundTripColumnTypes() throws Exception {
+    ContentValues values = new ContentValues();
+    values.put("count", 42L);
+    values.put("price", 4.5);
+    values.put("title", "note");
+    values.put("done", true);
+    values.put("data", new byte[] { 1, 2 });
+    values.putNull("empty");
+
+    Uri uri = mProvider.insert(NOTES, values);
+
+    Cursor cursor = mProvider.query(uri, new String[] { BaseColumns._ID, "count", "price", "title", "done", "data", "empty", "unknown" }, null, null, null);
+    assertThat(cursor.moveToFirst()).isTrue();
+    assertThat(cursor.getLong(0)).isEqualTo(ContentUris.parseId(uri));
+    assertThat(cursor.getLong(1)).isEqualTo(42L);
+    assertThat(cursor.getDouble(2)).isEqualTo(4.5);
+    assertThat(cursor.getString(3)).isEqualTo("note");
+    assertThat(cursor.getInt(4)).isEqualTo(1);
+    assertThat(cursor.getBlob(5)).isEqualTo(new byte[] { 1, 2 });
+    assertThat(cursor.isNull(6)).isTrue();
+    assertThat(cursor.isNull(7)).isTrue();
+  }
+
+  @Test
+  public void shouldQueryRowsByIds() throws Exception {
+    assertThat(mProvider.bulkInsert(NOTES, new ContentValues[] { note("a"), note("b"), note("c") })).isEqualTo(3);
+
+    assertThat(titles(mProvider.query(NOTES, new String[] { "title" }, null, null, null))).containsExactly("a", "b", "c");
+    assertThat(titles(mProvider.query(NOTES, new String[] { "title" }, "_id IN (?, ?)", new String[] { "3", "1" }, null))).containsExactly("c", "a");
+    assertThat(titles(mProvider.query(NOTES, new String[] { "title" }, "_id = 2", null, null))).containsExactly("b");
+    assertThat(titles(mProvider.query(NOTES, new String[] { "title" }, "_id = ?", new String[] { "4" }, null))).isEmpty();
+  }
+
+  @Test
+  public void shouldApplyBatchOfInserts() throws Exception {
+    ArrayList<ContentProviderOperation> operations = Lists.newArrayList(
+        ContentProviderOperation.newInsert(NOTES).withValues(note("a")).build(),
+        ContentProviderOperation.newInsert(NOTES).withValues(note("b")).build()
+    );
+
+    ContentProviderResult[] results = mProvider.applyBatch(operations);
+
+    assertThat(results).hasSize(2);
+    assertThat(ContentUris.parseId(results[1].uri)).isEqualTo(2L);
+    assertThat(mProvider.getCount(NOTES)).isEqualTo(2);
+  }
+
+  @Test
+  public void shouldAssignUniqueIdsToConcurrentInserts() throws Exception {
+    final int threads = 4;
+    final int rowsPerThread = 500;
+    final CountDownLatch start = new CountDownLatch(1);
+
+    List<Thread> workers = Lists.newArrayList();
+    for (int i = 0; i < threads; i++) {
+      Thread worker = new Thread(new Runnable() {
+        @Override
+        public void run() {
+          try {
+            start.await();
+          } catch (InterruptedException e) {
+            throw new RuntimeException(e);
+          }
+          for (int row = 0; row < rowsPerThread; row++) {
+            mProvider.insert(NOTES, note("note"));
+          }
+        }
+      });
+      worker.start();
+      workers.add(worker);
+    }
+    start.countDown();
+    for (Thread worker : workers) {
+      worker.join();
+    }
+
+    Cursor cursor = mProvider.query(NOTES, new String[] { BaseColumns._ID }, null, null, null);
+    Set<Long> ids = Sets.newHashSet();
+    while (cursor.moveToNext()) {
+      ids.add(cursor.getLong(0));
+    }
+    assertThat(ids).hasSize(threads * rowsPerThread);
+  }
+
+  @Test(expected = UnsupportedOperationException.class)
+  public void shouldNotSupportArbitrarySelection() throws Exception {
+    mProvider.insert(NOTES, note("a"));
+    mProvider.query(NOTES, new String[] { "title" }, "title = ?", new String[] { "a" }, null);
+  }
+
+  private static ContentValues note(String title) {
+    ContentValues values = new ContentValues();
+    values.put("title", title);
+    return values;
+  }
+
+  private static List<String> titles(Cursor cursor) {
+    List<String> titles = Lists.newArrayList();
+    while (cursor.moveToNext()) {
+      titles.add(cursor.getString(0));
+    }
+    cursor.close();
+    return titles;
+  }
+}
@@ -0,0 +1,227 @@
+/*
+ * Copyright (C) 2013 Jerzy Chalupski
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.getbase.android.forger.tests;
+
+import static org.fest.assertions.api.Assertions.assertThat;
+import static org.mockito.Matchers.anyInt;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.spy;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+import com.getbase.android.forger.Forger;
+import com.getbase.android.forger.JdbcSink;
+import com.google.common.base.Function;
+import com.google.common.collect.Lists;
+
+import org.chalup.microorm.MicroOrm;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+import android.net.Uri;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.Statement;
+import java.sql.Types;
+import java.util.List;
+
+@RunWith(RobolectricTestRunner.class)
+@Config(manifest = Config.NONE)
+public class JdbcSinkTest {
+
+  private static final Function<Uri, String> TABLE_MAPPING = new Function<Uri, String>() {
+    @Override
+    public String apply(Uri uri) {
+      return "t_" + uri.getLastPathSegment();
+    }
+  };
+
+  Forger<TestModels.TestModel> mTestSubject;
+  Connection mConnection;
+
+  @Before
+  public void setUp() throws Exception {
+    mTestSubject = new Forger<>(TestModels.MODEL_GRAPH, new MicroOrm());
+    mConnection = spy(DriverManager.getConnection("jdbc:h2:mem:"));
+
+    Statement statement = mConnection.createStatement();
+    statement.execute("CREATE TABLE t_user (_id INTEGER PRIMARY KEY AUTO_INCREMENT, id INTEGER, updated_at TEXT, email TEXT, is_admin BOOLEAN)");
+    statement.execute("CREATE TABLE t_contact (_id INTEGER PRIMARY KEY AUTO_INCREMENT, id INTEGER, updated_at TEXT, contact_id INTEGER, user_id INTEGER)");
+    statement.execute("CREATE TABLE t_deal (_id INTEGER PRIMARY KEY AUTO_INCREMENT, id INTEGER, updated_at TEXT, contact_id INTEGER, user_id INTEGER, name TEXT)");
+    statement.close();
+  }
+
+  @After
+  public void tearDown() throws Exception {
+    mConnection.close();
+  }
+
+  @Test
+  public void shouldInsertBatchesWithPreassignedIds() throws Exception {
+    List<PreparedStatement> statements = spyOnInsertStatements();
+    JdbcSink sink = JdbcSink.builder().withConnection(mConnection).withTableMapping(TABLE_MAPPING).withTransactionSize(100).build();
+
+    Statement existingUsers = mConnection.createStatement();
+    existingUsers.execute("INSERT INTO t_user (id) VALUES (1), (2), (3)");
+    existingUsers.close();
+
+    List<TestModels.User> users = mTestSubject.iNeed(25).of(TestModels.User.class).inBatchesOf(10).in(sink);
+    sink.close();
+
+    assertThat(count("t_user")).isEqualTo(28);
+    for (TestModels.User user : users) {
+      assertThat(queryLong("SELECT id FROM t_user WHERE _id = " + user._id)).isEqualTo(user.id);
+    }
+    for (PreparedStatement statement : statements) {
+      verify(statement, never()).executeUpdate();
+    }
+  }
+
+  @Test
+  public void shouldBindRowsOfLaterBatchesWhenTheyAreBuilt() throws Exception {
+    List<PreparedStatement> statements = spyOnInsertStatements();
+    JdbcSink sink = JdbcSink.builder().withConnection(mConnection).withTableMapping(TABLE_MAPPING).withTransactionSize(100).withReadBack("_id").build();
+
+    List<TestModels.User> users = mTestSubject.iNeed(25).of(TestModels.User.class).inBatchesOf(10).in(sink);
+    sink.close();
+
+    assertThat(count("t_user")).isEqualTo(25);
+    for (TestModels.User user : users) {
+      assertThat(queryLong("SELECT id FROM t_user WHERE _id = " + user._id)).isEqualTo(user.id);
+    }
+
+    // the first batch tells the kind of driver, the rows of the other two are staged
+    assertThat(statements).hasSize(3);
+    PreparedStatement stagedStatement = statements.get(2);
+    verify(stagedStatement, times(15)).addBatch();
+    verify(stagedStatement, times(2)).executeBatch();
+    verify(stagedStatement, never()).executeUpdate();
+  }
+
+  @Test
+  public void shouldInsertRowsOneByOneOutsideOfTransaction() throws Exception {
+    List<PreparedStatement> statements = spyOnInsertStatements();
+    JdbcSink sink = JdbcSink.builder().withConnection(mConnection).withTableMapping(TABLE_MAPPING).build();
+
+    List<TestModels.User> users = mTestSubject.iNeed(25).of(TestModels.User.class).inBatchesOf(10).in(sink);
+    sink.close();
+
+    assertThat(count("t_user")).isEqualTo(25);
+    for (TestModels.User user : users) {
+      assertThat(queryLong("SELECT id FROM t_user WHERE _id = " + user._id)).isEqualTo(user.id);
+    }
+    assertThat(statements).hasSize(1);
+    verify(statements.get(0), times(25)).executeUpdate();
+  }
+
+  @Test
+  public void shouldInsertRowsOneByOneWhenRequested() throws Exception {
+    List<PreparedStatement> statements = spyOnInsertStatements();
+    JdbcSink sink = JdbcSink.builder().withConnection(mConnection).withTableMapping(TABLE_MAPPING).withTransactionSize(100).withSingleRowInserts().build();
+
+    mTestSubject.iNeed(10).of(TestModels.User.class).inBatchesOf(10).in(sink);
+    sink.close();
+
+    assertThat(count("t_user")).isEqualTo(10);
+    assertThat(statements).hasSize(1);
+    verify(statements.get(0), never()).executeBatch();
+  }
+
+  @Test
+  public void shouldBindNullsWithColumnType() throws Exception {
+    List<PreparedStatement> statements = spyOnInsertStatements();
+    JdbcSink sink = JdbcSink.builder().withConnection(mConnection).withTableMapping(TABLE_MAPPING).withTransactionSize(100).build();
+
+    mTestSubject.iNeed(5).of(TestModels.User.class).with("email", null).inBatchesOf(5).in(sink);
+    sink.close();
+
+    assertThat(queryLong("SELECT COUNT(*) FROM t_user WHERE email IS NULL")).isEqualTo(5);
+    for (PreparedStatement statement : statements) {
+      verify(statement, never()).setNull(anyInt(), eq(Types.NULL));
+    }
+  }
+
+  @Test
+  public void shouldReadBackInsertedRows() throws Exception {
+    JdbcSink sink = JdbcSink.builder().withConnection(mConnection).withTableMapping(TABLE_MAPPING).withReadBack("_id").build();
+
+    TestModels.Deal deal = mTestSubject.iNeed(TestModels.Deal.class).with("name", "Forged").in(sink);
+    sink.close();
+
+    assertThat(deal.name).isEqualTo("Forged");
+    assertThat(count("t_deal")).isEqualTo(1);
+    assertThat(count("t_contact")).isEqualTo(1);
+    assertThat(count("t_user")).isEqualTo(2);
+    assertThat(queryLong("SELECT id FROM t_contact WHERE _id = 1")).isEqualTo(deal.contactId);
+  }
+
+  @Test
+  public void shouldCommitEveryTransactionSizeRows() throws Exception {
+    JdbcSink sink = JdbcSink.builder().withConnection(mConnection).withTableMapping(TABLE_MAPPING).withTransactionSize(10).build();
+
+    mTestSubject.iNeed(25).of(TestModels.User.class).inBatchesOf(5).in(sink);
+    verify(mConnection, times(2)).commit();
+
+    sink.close();
+    verify(mConnection, times(3)).commit();
+  }
+
+  @Test(expected = IllegalStateException.class)
+  public void shouldNotBuildSinkWithoutConnection() throws Exception {
+    JdbcSink.builder().build();
+  }
+
+  private List<PreparedStatement> spyOnInsertStatements() throws Exception {
+    final List<PreparedStatement> statements = Lists.newArrayList();
+    doAnswer(new Answer<PreparedStatement>() {
+      @Override
+      public PreparedStatement answer(InvocationOnMock invocation) throws Throwable {
+        PreparedStatement statement = spy((PreparedStatement) invocation.callRealMethod());
+        statements.add(statement);
+        return statement;
+      }
+    }).when(mConnection).prepareStatement(anyString(), anyInt());
+    return statements;
+  }
+
+  private int count(String table) throws Exception {
+    return (int) queryLong("SELECT COUNT(*) FROM " + table);
+  }
+
+  private long queryLong(String sql) throws Exception {
+    Statement statement = mConnection.createStatement();
+    try {
+      ResultSet resultSet = statement.executeQuery(sql);
+      resultSet.next();
+      return resultSet.getLong(1);
+    } finally {
+      statement.close();
+    }
+  }
+}
@@ -0,0 +1,137 @@
+/*
+ * Copyright (C) 2013 Jerzy Chalupski
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.getbase.android.forger.tests;
+
+import static org.fest.assertions.api.Assertions.assertThat;
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+import com.getbase.android.forger.ContentResolverSink;
+import com.getbase.android.forger.Forger;
+import com.getbase.android.forger.InMemoryContentProvider;
+import com.getbase.android.forger.LatencyInjectingSink;
+
+import org.chalup.microorm.MicroOrm;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+import android.content.ContentResolver;
+import android.content.ContentValues;
+import android.net.Uri;
+
+import java.util.concurrent.TimeUnit;
+
+@RunWith(RobolectricTestRunner.class)
+@Config(manifest = Config.NONE)
+public class LatencyInjectingSinkTest {
+
+  private static final Uri NOTES = Uri.parse("content://com.getbase.android.forger.tests/notes");
+
+  Forger<TestModels.TestModel> mTestSubject;
+
+  @Before
+  public void setUp() throws Exception {
+    mTestSubject = new Forger<>(TestModels.MODEL_GRAPH, new MicroOrm());
+  }
+
+  @Test
+  public void shouldCountCallsAndRows() throws Exception {
+    LatencyInjectingSink sink = LatencyInjectingSink.builder().withDelegate(new InMemoryContentProvider()).build();
+
+    mTestSubject.iNeed(3).of(TestModels.User.class).inBatchesOf(2).in(sink);
+
+    assertThat(sink.getInsertCalls()).isEqualTo(0);
+    assertThat(sink.getBatchInsertCalls()).isEqualTo(2);
+    assertThat(sink.getQueryCalls()).isEqualTo(3);
+    assertThat(sink.getCalls()).isEqualTo(5);
+    assertThat(sink.getRows()).isEqualTo(3);
+  }
+
+  @Test
+  public void shouldEstimateBytes() throws Exception {
+    LatencyInjectingSink sink = LatencyInjectingSink.builder().withDelegate(new InMemoryContentProvider()).build();
+
+    ContentValues values = new ContentValues();
+    values.put("title", "ab");
+    values.put("count", 1L);
+    sink.insert(NOTES, values);
+
+    assertThat(sink.getBytes()).isEqualTo(10 + 4 + 10 + 8);
+  }
+
+  @Test
+  public void shouldInjectLatency() throws Exception {
+    LatencyInjectingSink sink = LatencyInjectingSink.builder()
+        .withDelegate(new InMemoryContentProvider())
+        .withCallLatency(2, TimeUnit.MILLISECONDS)
+        .withRowLatency(1, TimeUnit.MILLISECONDS)
+        .withCommitCost(3, TimeUnit.MILLISECONDS)
+        .build();
+
+    long start = System.nanoTime();
+    mTestSubject.iNeed(4).of(TestModels.User.class).inBatchesOf(2).in(sink);
+    long elapsed = System.nanoTime() - start;
+
+    // two batches: 2 * (2 + 2 * 1 + 3) ms, four read-backs: 4 * 2 ms
+    assertThat(sink.getInjectedLatency(TimeUnit.MILLISECONDS)).isGreaterThanOrEqualTo(22);
+    assertThat(elapsed).isGreaterThanOrEqualTo(sink.getInjectedLatency(TimeUnit.NANOSECONDS));
+  }
+
+  @Test
+  public void shouldRecordMeasuredSubMillisecondLatency() throws Exception {
+    LatencyInjectingSink sink = LatencyInjectingSink.builder()
+        .withDelegate(new InMemoryContentProvider())
+        .withCallLatency(100, TimeUnit.MICROSECONDS)
+        .build();
+
+    long start = System.nanoTime();
+    for (int i = 0; i < 20; i++) {
+      sink.insert(NOTES, new ContentValues());
+    }
+    long elapsed = System.nanoTime() - start;
+
+    assertThat(sink.getInjectedLatency(TimeUnit.MICROSECONDS)).isGreaterThanOrEqualTo(20 * 100);
+    assertThat(sink.getInjectedLatency(TimeUnit.NANOSECONDS)).isLessThanOrEqualTo(elapsed);
+  }
+
+  @Test
+  public void shouldWrapContentResolver() throws Exception {
+    ContentResolver resolver = EchoContentResolver.get();
+    LatencyInjectingSink sink = LatencyInjectingSink.builder().withDelegate(new ContentResolverSink(resolver)).build();
+
+    mTestSubject.iNeed(TestModels.User.class).in(sink);
+
+    assertThat(sink.getInsertCalls()).isEqualTo(1);
+    verify(resolver, times(1)).insert(any(Uri.class), any(ContentValues.class));
+  }
+
+  @Test
+  public void shouldResetCounters() throws Exception {
+    LatencyInjectingSink sink = LatencyInjectingSink.builder().withDelegate(new InMemoryContentProvider()).build();
+    mTestSubject.iNeed(TestModels.User.class).in(sink);
+
+    sink.reset();
+
+    assertThat(sink.getCalls()).isEqualTo(0);
+    assertThat(sink.getRows()).isEqualTo(0);
+    assertThat(sink.getBytes()).isEqualTo(0);
+  }
+}
@@ -0,0 +1,294 @@
+/*
+ * Copyright (C) 2013 Jerzy Chalupski
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.getbase.android.forger.tests;
+
+import static org.fest.assertions.api.Assertions.assertThat;
+
+import com.getbase.android.forger.CancellationToken;
+import com.getbase.android.forger.Forger;
+import com.getbase.android.forger.ForgerListener;
+import com.getbase.android.forger.ForgerSink;
+import com.getbase.android.forger.InMemoryContentProvider;
+import com.getbase.android.forger.ProgressCallback;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Sets;
+import com.google.common.util.concurrent.Uninterruptibles;
+
+import org.chalup.microorm.MicroOrm;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+import android.content.ContentValues;
+import android.database.Cursor;
+import android.net.Uri;
+
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+@RunWith(RobolectricTestRunner.class)
+@Config(manifest = Config.NONE)
+public class PipelinedInsertTest {
+
+  Forger<TestModels.TestModel> mTestSubject;
+  InMemoryContentProvider mProvider;
+
+  @Before
+  public void setUp() throws Exception {
+    mTestSubject = new Forger<>(TestModels.MODEL_GRAPH, new MicroOrm());
+    mProvider = new InMemoryContentProvider();
+  }
+
+  @Test
+  public void shouldInsertAllObjects() throws Exception {
+    List<TestModels.User> users = mTestSubject.iNeed(100).of(TestModels.User.class)
+        .inBatchesOf(7)
+        .pipelined(3, 10)
+        .in(mProvider);
+
+    assertThat(users).hasSize(100);
+    assertThat(mProvider.getCount(TestModels.USER.getUri())).isEqualTo(100);
+  }
+
+  @Test
+  public void shouldInsertObjectsWithoutBatchSize() throws Exception {
+    List<TestModels.User> users = mTestSubject.iNeed(20).of(TestModels.User.class)
+        .pipelined(2, 5)
+        .in(mProvider);
+
+    assertThat(users).hasSize(20);
+    assertThat(mProvider.getCount(TestModels.USER.getUri())).isEqualTo(20);
+  }
+
+  @Test
+  public void shouldReturnObjectsInRequestedOrder() throws Exception {
+    List<TestModels.User> users = Lists.newArrayList();
+    for (long id = 1; id <= 30; id++) {
+      users.addAll(mTestSubject.iNeed(1).of(TestModels.User.class).with("id", id).in(mProvider));
+    }
+
+    List<TestModels.Contact> contacts = mTestSubject.iNeed(30).of(TestModels.Contact.class)
+        .spreadAcross(users)
+        .inBatchesOf(4)
+        .pipelined(3, 5)
+        .in(mProvider);
+
+    assertThat(contacts).hasSize(30);
+    for (int i = 0; i < contacts.size(); i++) {
+      assertThat(contacts.get(i).userId).isEqualTo(users.get(i).id);
+    }
+  }
+
+  @Test
+  public void shouldAutoCreateParents() throws Exception {
+    List<TestModels.Contact> contacts = mTestSubject.iNeed(20).of(TestModels.Contact.class)
+        .inBatchesOf(5)
+        .pipelined(1, 4)
+        .in(mProvider);
+
+    assertThat(contacts).hasSize(20);
+    assertThat(mProvider.getCount(TestModels.CONTACT.getUri())).isEqualTo(20);
+    assertThat(mProvider.getCount(TestModels.USER.getUri())).isEqualTo(20);
+    for (TestModels.Contact contact : contacts) {
+      assertThat(contact.userId).isNotEqualTo(0);
+    }
+  }
+
+  @Test
+  public void shouldStopWhenCancelled() throws Exception {
+    final CancellationToken token = new CancellationToken();
+
+    List<TestModels.User> users = mTestSubject.iNeed(1000).of(TestModels.User.class)
+        .inBatchesOf(5)
+        .pipelined(2, 10)
+        .withCancellationToken(token)
+        .withProgressCallback(new ProgressCallback() {
+          @Override
+          public void onProgress(int inserted, int requested) {
+            token.cancel();
+          }
+        }, 1)
+        .in(mProvider);
+
+    assertThat(users.size()).isLessThan(1000);
+    assertThat(mProvider.getCount(TestModels.USER.getUri())).isEqualTo(users.size());
+  }
+
+  @Test
+  public void shouldFakeParentsOfEveryRow() throws Exception {
+    mTestSubject.iNeed(200).of(TestModels.Contact.class)
+        .inBatchesOf(10)
+        .pipelined(2, 20)
+        .in(mProvider);
+
+    Set<String> emails = Sets.newHashSet();
+    Cursor c = mProvider.query(TestModels.USER.getUri(), new String[] { "email" });
+    try {
+      while (c.moveToNext()) {
+        emails.add(c.getString(0));
+      }
+    } finally {
+      c.close();
+    }
+    assertThat(emails).hasSize(200);
+  }
+
+  @Test
+  public void shouldInsertBatchesConcurrently() throws Exception {
+    ConcurrencyTrackingSink sink = new ConcurrencyTrackingSink(mProvider, 2);
+
+    List<TestModels.User> users = mTestSubject.iNeed(40).of(TestModels.User.class)
+        .inBatchesOf(5)
+        .pipelined(2, 40)
+        .in(sink);
+
+    assertThat(users).hasSize(40);
+    assertThat(sink.mMaxConcurrentInserts.get()).isEqualTo(2);
+  }
+
+  @Test
+  public void shouldKeepFakingAndConversionOnCallingThread() throws Exception {
+    final Set<Thread> fakingThreads = Sets.newConcurrentHashSet();
+    final Set<Thread> readBackThreads = Sets.newConcurrentHashSet();
+    final Set<Thread> flushingThreads = Sets.newConcurrentHashSet();
+    Forger<TestModels.TestModel> forger = Forger.<TestModels.TestModel>builder()
+        .withMicroOrm(new MicroOrm())
+        .withModelGraph(TestModels.MODEL_GRAPH)
+        .registerListener(new ForgerListener() {
+          @Override
+          public void onModelFaked(Class<?> klass, long nanos) {
+            fakingThreads.add(Thread.currentThread());
+          }
+
+          @Override
+          public void onReadBack(Class<?> klass, Uri uri, long nanos) {
+            readBackThreads.add(Thread.currentThread());
+          }
+
+          @Override
+          public void onBatchFlushed(Class<?> klass, List<Uri> uris, long nanos) {
+            if (klass == TestModels.Contact.class) {
+              flushingThreads.add(Thread.currentThread());
+            }
+          }
+        })
+        .build();
+
+    List<TestModels.Contact> contacts = forger.iNeed(40).of(TestModels.Contact.class)
+        .inBatchesOf(5)
+        .pipelined(2, 10)
+        .in(mProvider);
+
+    assertThat(contacts).hasSize(40);
+    assertThat(fakingThreads).containsOnly(Thread.currentThread());
+    assertThat(readBackThreads).containsOnly(Thread.currentThread());
+    assertThat(flushingThreads).isNotEmpty().doesNotContain(Thread.currentThread());
+  }
+
+  @Test(expected = UnsupportedOperationException.class)
+  public void shouldPropagateSinkFailures() throws Exception {
+    ForgerSink failingSink = new ForgerSink() {
+      @Override
+      public Uri insert(Uri uri, ContentValues values) {
+        throw new UnsupportedOperationException();
+      }
+
+      @Override
+      public List<Uri> insert(Uri uri, List<ContentValues> values) {
+        throw new UnsupportedOperationException();
+      }
+
+      @Override
+      public boolean supportsReadBack() {
+        return false;
+      }
+
+      @Override
+      public Cursor query(Uri uri, String[] projection) {
+        throw new UnsupportedOperationException();
+      }
+    };
+
+    mTestSubject.iNeed(100).of(TestModels.User.class)
+        .inBatchesOf(2)
+        .pipelined(2, 4)
+        .in(failingSink);
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void shouldNotAllowNonPositiveWriterThreads() throws Exception {
+    mTestSubject.iNeed(10).of(TestModels.User.class).pipelined(0, 1);
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void shouldNotAllowNonPositiveQueueCapacity() throws Exception {
+    mTestSubject.iNeed(10).of(TestModels.User.class).pipelined(1, 0);
+  }
+
+  private static class ConcurrencyTrackingSink implements ForgerSink {
+    private final ForgerSink mDelegate;
+    private final CountDownLatch mConcurrentInserts;
+    private final AtomicInteger mRunningInserts = new AtomicInteger();
+    final AtomicInteger mMaxConcurrentInserts = new AtomicInteger();
+
+    /**
+     * Holds the first batch inserts until the given number of them run at the same time, so the
+     * maximum is reached only if the batches are inserted concurrently.
+     */
+    ConcurrencyTrackingSink(ForgerSink delegate, int expectedConcurrentInserts) {
+      mDelegate = delegate;
+      mConcurrentInserts = new CountDownLatch(expectedConcurrentInserts);
+    }
+
+    @Override
+    public Uri insert(Uri uri, ContentValues values) {
+      return mDelegate.insert(uri, values);
+    }
+
+    @Override
+    public List<Uri> insert(Uri uri, List<ContentValues> values) {
+      int running = mRunningInserts.incrementAndGet();
+      try {
+        int max;
+        do {
+          max = mMaxConcurrentInserts.get();
+        } while (running > max && !mMaxConcurrentInserts.compareAndSet(max, running));
+
+        mConcurrentInserts.countDown();
+        Uninterruptibles.awaitUninterruptibly(mConcurrentInserts, 5, TimeUnit.SECONDS);
+        return mDelegate.insert(uri, values);
+      } finally {
+        mRunningInserts.decrementAndGet();
+      }
+    }
+
+    @Override
+    public boolean supportsReadBack() {
+      return mDelegate.supportsReadBack();
+    }
+
+    @Override
+    public Cursor query(Uri uri, String[] projection) {
+      return mDelegate.query(uri, projection);
+    }
+  }
+}
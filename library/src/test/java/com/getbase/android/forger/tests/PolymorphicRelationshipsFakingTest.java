@@ -21,6 +21,7 @@ import static org.mockito.Matchers.any;
 import static org.mockito.Mockito.*;
 
 import com.getbase.android.forger.Forger;
+import com.google.common.collect.ImmutableList;
 
 import org.chalup.microorm.MicroOrm;
 import org.junit.Before;
@@ -33,6 +34,8 @@ import org.robolectric.annotation.Config;
 import android.content.ContentResolver;
 import android.content.ContentValues;
 
+import java.util.List;
+
 @RunWith(RobolectricTestRunner.class)
 @Config(manifest = Config.NONE)
 public class PolymorphicRelationshipsFakingTest {
@@ -124,4 +127,105 @@ public class PolymorphicRelationshipsFakingTest {
 
     assertThat(note.notableType).isEqualTo("Deal");
   }
+
+  @Test
+  public void shouldUseTheMostRecentlyAddedContextObjectToSatisfyPolymorphicDependencies() throws Exception {
+    TestModels.Contact contactA = mTestSubject.iNeed(TestModels.Contact.class).in(mContentResolver);
+    TestModels.Contact contactB = mTestSubject.iNeed(TestModels.Contact.class).in(mContentResolver);
+
+    Forger<TestModels.TestModel> forgerWithContext = mTestSubject
+        .inContextOf(contactA)
+        .inContextOf(TestModels.Deal.class).in(mContentResolver)
+        .inContextOf(contactB);
+
+    TestModels.Note note = forgerWithContext.iNeed(TestModels.Note.class).in(mContentResolver);
+
+    assertThat(note.notableType).isEqualTo("Contact");
+    assertThat(note.notableId).isEqualTo(contactB.id);
+  }
+
+  @Test
+  public void shouldSpreadObjectsAcrossWeightedPolymorphicParents() throws Exception {
+    List<TestModels.Contact> contacts = mTestSubject.iNeed(2).of(TestModels.Contact.class).in(mContentResolver);
+    List<TestModels.Deal> deals = mTestSubject.iNeed(1).of(TestModels.Deal.class).in(mContentResolver);
+
+    List<TestModels.Note> notes = mTestSubject
+        .iNeed(8)
+        .of(TestModels.Note.class)
+        .spreadAcross(contacts, 3)
+        .spreadAcross(deals, 1)
+        .in(mContentResolver);
+
+    assertThat(notes).hasSize(8);
+
+    int contactNotes = 0;
+    int dealNotes = 0;
+    for (TestModels.Note note : notes) {
+      if ("Contact".equals(note.notableType)) {
+        contactNotes++;
+        assertThat(note.notableId).isIn(contacts.get(0).id, contacts.get(1).id);
+      } else {
+        dealNotes++;
+        assertThat(note.notableType).isEqualTo("Deal");
+        assertThat(note.notableId).isEqualTo(deals.get(0).id);
+      }
+    }
+    assertThat(contactNotes).isEqualTo(6);
+    assertThat(dealNotes).isEqualTo(2);
+  }
+
+  @Test
+  public void shouldUseAllParentsFromSpreadPool() throws Exception {
+    List<TestModels.Lead> leads = mTestSubject.iNeed(3).of(TestModels.Lead.class).in(mContentResolver);
+
+    List<TestModels.Call> calls = mTestSubject
+        .iNeed(6)
+        .of(TestModels.Call.class)
+        .spreadAcross(leads)
+        .in(mContentResolver);
+
+    for (int i = 0; i < calls.size(); i++) {
+      assertThat(calls.get(i).callableType).isEqualTo("Lead");
+      assertThat(calls.get(i).callableId).isEqualTo(leads.get(i % leads.size()).id);
+    }
+  }
+
+  @Test
+  public void shouldSpreadObjectsWithManyToManyPolymorphicSideAcrossParents() throws Exception {
+    List<TestModels.Contact> contacts = mTestSubject.iNeed(2).of(TestModels.Contact.class).in(mContentResolver);
+    List<TestModels.Lead> leads = mTestSubject.iNeed(2).of(TestModels.Lead.class).in(mContentResolver);
+
+    List<TestModels.Tagging> taggings = mTestSubject
+        .iNeed(4)
+        .of(TestModels.Tagging.class)
+        .spreadAcross(contacts)
+        .spreadAcross(leads)
+        .in(mContentResolver);
+
+    assertThat(taggings).hasSize(4);
+    for (TestModels.Tagging tagging : taggings) {
+      assertThat(tagging.taggableType).isIn("Contact", "Lead");
+      assertThat(tagging.tagId).isNotEqualTo(0);
+      assertThat(tagging.userId).isNotEqualTo(0);
+    }
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void shouldValidateTypeOfSpreadParents() throws Exception {
+    List<TestModels.Deal> deals = mTestSubject.iNeed(1).of(TestModels.Deal.class).in(mContentResolver);
+
+    mTestSubject.iNeed(2).of(TestModels.Call.class).spreadAcross(deals);
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void shouldNotAllowSpreadingAcrossEmptyPool() throws Exception {
+    mTestSubject.iNeed(2).of(TestModels.Note.class).spreadAcross(ImmutableList.of());
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void shouldNotAllowNonPositiveSpreadWeight() throws Exception {
+    List<TestModels.Contact> contacts = mTestSubject.iNeed(1).of(TestModels.Contact.class).in(mContentResolver);
+
+    mTestSubject.iNeed(2).of(TestModels.Note.class).spreadAcross(contacts, 0);
+  }
 }
@@ -0,0 +1,141 @@
+/*
+ * Copyright (C) 2013 Jerzy Chalupski
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.getbase.android.forger.tests;
+
+import static org.fest.assertions.api.Assertions.assertThat;
+import static org.fest.assertions.api.Fail.fail;
+
+import com.getbase.android.forger.Forger;
+import com.getbase.android.forger.SQLiteDatabaseSink;
+
+import org.chalup.microorm.MicroOrm;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+import android.content.ContentValues;
+import android.database.Cursor;
+import android.database.SQLException;
+import android.database.sqlite.SQLiteDatabase;
+
+import java.util.List;
+
+@RunWith(RobolectricTestRunner.class)
+@Config(manifest = Config.NONE)
+public class SQLiteDatabaseSinkTest {
+
+  Forger<TestModels.TestModel> mTestSubject;
+  SQLiteDatabase mDatabase;
+
+  @Before
+  public void setUp() throws Exception {
+    mTestSubject = new Forger<>(TestModels.MODEL_GRAPH, new MicroOrm());
+    mDatabase = SQLiteDatabase.create(null);
+
+    mDatabase.execSQL("CREATE TABLE user (_id INTEGER PRIMARY KEY AUTOINCREMENT, id INTEGER, updated_at TEXT, email TEXT, is_admin INTEGER)");
+    mDatabase.execSQL("CREATE TABLE contact (_id INTEGER PRIMARY KEY AUTOINCREMENT, id INTEGER, updated_at TEXT, contact_id INTEGER, user_id INTEGER)");
+    mDatabase.execSQL("CREATE TABLE deal (_id INTEGER PRIMARY KEY AUTOINCREMENT, id INTEGER, updated_at TEXT DEFAULT 'now', contact_id INTEGER, user_id INTEGER, name TEXT)");
+  }
+
+  @After
+  public void tearDown() throws Exception {
+    mDatabase.close();
+  }
+
+  @Test
+  public void shouldInsertRowsWithGeneratedIds() throws Exception {
+    SQLiteDatabaseSink sink = SQLiteDatabaseSink.builder().withDatabase(mDatabase).build();
+
+    List<TestModels.User> users = mTestSubject.iNeed(25).of(TestModels.User.class).inBatchesOf(10).in(sink);
+    sink.close();
+
+    assertThat(count("user")).isEqualTo(25);
+    for (TestModels.User user : users) {
+      assertThat(queryLong("SELECT id FROM user WHERE _id = " + user._id)).isEqualTo(user.id);
+    }
+  }
+
+  @Test
+  public void shouldReadBackInsertedRows() throws Exception {
+    SQLiteDatabaseSink sink = SQLiteDatabaseSink.builder().withDatabase(mDatabase).withReadBack("_id").build();
+
+    TestModels.Deal deal = mTestSubject.iNeed(TestModels.Deal.class).with("name", "Forged").in(sink);
+    sink.close();
+
+    assertThat(deal.name).isEqualTo("Forged");
+    assertThat(deal.updated_at).isEqualTo("now");
+    assertThat(count("deal")).isEqualTo(1);
+    assertThat(count("contact")).isEqualTo(1);
+    assertThat(count("user")).isEqualTo(2);
+  }
+
+  @Test
+  public void shouldWrapInsertsInTransactionsOfGivenSize() throws Exception {
+    SQLiteDatabaseSink sink = SQLiteDatabaseSink.builder().withDatabase(mDatabase).withTransactionSize(10).build();
+
+    mTestSubject.iNeed(10).of(TestModels.User.class).in(sink);
+    assertThat(mDatabase.inTransaction()).isFalse();
+
+    mTestSubject.iNeed(5).of(TestModels.User.class).in(sink);
+    assertThat(mDatabase.inTransaction()).isTrue();
+
+    sink.close();
+    assertThat(mDatabase.inTransaction()).isFalse();
+    assertThat(count("user")).isEqualTo(15);
+  }
+
+  @Test
+  public void shouldNotNestTransactionsAfterFailedInsert() throws Exception {
+    SQLiteDatabaseSink sink = SQLiteDatabaseSink.builder().withDatabase(mDatabase).withTransactionSize(10).build();
+
+    ContentValues invalidValues = new ContentValues();
+    invalidValues.put("no_such_column", 1);
+    try {
+      sink.insert(TestModels.USER.getUri(), invalidValues);
+      fail("Insert into non-existing column should fail");
+    } catch (SQLException expected) {
+    }
+
+    mTestSubject.iNeed(5).of(TestModels.User.class).in(sink);
+
+    sink.close();
+    assertThat(mDatabase.inTransaction()).isFalse();
+    assertThat(count("user")).isEqualTo(5);
+  }
+
+  @Test(expected = IllegalStateException.class)
+  public void shouldNotBuildSinkWithoutDatabase() throws Exception {
+    SQLiteDatabaseSink.builder().build();
+  }
+
+  private int count(String table) throws Exception {
+    return (int) queryLong("SELECT COUNT(*) FROM " + table);
+  }
+
+  private long queryLong(String sql) throws Exception {
+    Cursor cursor = mDatabase.rawQuery(sql, null);
+    try {
+      cursor.moveToFirst();
+      return cursor.getLong(0);
+    } finally {
+      cursor.close();
+    }
+  }
+}
@@ -0,0 +1,134 @@
+/*
+ * Copyright (C) 2013 Jerzy Chalupski
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.getbase.android.forger.tests;
+
+import static org.fest.assertions.api.Assertions.assertThat;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyZeroInteractions;
+
+import com.getbase.android.forger.Forger;
+import com.getbase.android.forger.SeedPlan;
+
+import org.chalup.microorm.MicroOrm;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+import android.content.ContentResolver;
+import android.content.ContentValues;
+import android.net.Uri;
+
+import java.util.List;
+
+@RunWith(RobolectricTestRunner.class)
+@Config(manifest = Config.NONE)
+public class SeedPlanTest {
+
+  Forger<TestModels.TestModel> mTestSubject;
+  ContentResolver mContentResolver;
+
+  @Before
+  public void setUp() throws Exception {
+    mTestSubject = new Forger<>(TestModels.MODEL_GRAPH, new MicroOrm());
+    mContentResolver = EchoContentResolver.get();
+  }
+
+  @Test
+  public void shouldPlanAutoCreatedParentsWithoutTouchingContentResolver() throws Exception {
+    SeedPlan plan = mTestSubject.iNeed(10).of(TestModels.Deal.class).plan();
+
+    assertThat(plan.getModelClass() == TestModels.Deal.class).isTrue();
+    assertThat(plan.getRows()).isEqualTo(10);
+    assertThat(plan.getRowsPerModel()).hasSize(3);
+    assertThat(plan.getRowsPerModel().get(TestModels.Deal.class)).isEqualTo(10L);
+    assertThat(plan.getRowsPerModel().get(TestModels.Contact.class)).isEqualTo(10L);
+    assertThat(plan.getRowsPerModel().get(TestModels.User.class)).isEqualTo(20L);
+    assertThat(plan.getTotalRows()).isEqualTo(40L);
+    assertThat(plan.getInsertCalls()).isEqualTo(40L);
+    assertThat(plan.getReadBacks()).isEqualTo(40L);
+
+    verifyZeroInteractions(mContentResolver);
+  }
+
+  @Test
+  public void shouldMatchObjectsActuallyInsertedForPlannedParents() throws Exception {
+    Forger<TestModels.TestModel>.SingleModelBuilder<TestModels.DealContact> builder = mTestSubject.iNeed(TestModels.DealContact.class);
+
+    SeedPlan plan = builder.plan();
+    assertThat(plan.getAutoCreatedParents()).hasSize(2);
+    assertThat(plan.getTotalRows()).isEqualTo(7L);
+
+    builder.in(mContentResolver);
+    verify(mContentResolver, times((int) plan.getInsertCalls())).insert(any(Uri.class), any(ContentValues.class));
+    verify(mContentResolver, times((int) plan.getReadBacks())).query(any(Uri.class), any(String[].class), anyString(), any(String[].class), anyString());
+  }
+
+  @Test
+  public void shouldNotPlanParentsForOverriddenColumns() throws Exception {
+    SeedPlan plan = mTestSubject.iNeed(TestModels.Deal.class)
+        .with("contact_id", 42L)
+        .with("user_id", 7L)
+        .plan();
+
+    assertThat(plan.getAutoCreatedParents()).isEmpty();
+    assertThat(plan.getTotalRows()).isEqualTo(1L);
+  }
+
+  @Test
+  public void shouldNotPlanParentsSatisfiedWithRelatedObjects() throws Exception {
+    TestModels.Contact contact = mTestSubject.iNeed(TestModels.Contact.class).in(mContentResolver);
+
+    SeedPlan plan = mTestSubject.iNeed(TestModels.Deal.class).relatedTo(contact).plan();
+
+    assertThat(plan.getRowsPerModel().keySet()).containsOnly(TestModels.Deal.class, TestModels.User.class);
+  }
+
+  @Test
+  public void shouldNotPlanParentsSatisfiedByContext() throws Exception {
+    Forger<TestModels.TestModel> forgerWithContext = mTestSubject.inContextOf(TestModels.User.class).in(mContentResolver);
+
+    SeedPlan plan = forgerWithContext.iNeed(5).of(TestModels.Deal.class).plan();
+
+    assertThat(plan.getRowsPerModel().keySet()).containsOnly(TestModels.Deal.class, TestModels.Contact.class);
+    assertThat(plan.getTotalRows()).isEqualTo(10L);
+  }
+
+  @Test
+  public void shouldNotPlanParentsForSpreadPolymorphicDependency() throws Exception {
+    List<TestModels.Lead> leads = mTestSubject.iNeed(2).of(TestModels.Lead.class).in(mContentResolver);
+
+    SeedPlan plan = mTestSubject.iNeed(100).of(TestModels.Note.class).spreadAcross(leads).plan();
+
+    assertThat(plan.getAutoCreatedParents()).isEmpty();
+    assertThat(plan.getTotalRows()).isEqualTo(100L);
+  }
+
+  @Test(expected = UnsupportedOperationException.class)
+  public void shouldRejectPlanWhichCannotBeExecuted() throws Exception {
+    mTestSubject.iNeed(TestModels.Note.class).plan();
+  }
+
+  @Test(expected = IllegalStateException.class)
+  public void shouldRejectPlanWithPartiallyOverriddenDependency() throws Exception {
+    mTestSubject.iNeed(TestModels.Note.class).with("notable_id", 42L).plan();
+  }
+}
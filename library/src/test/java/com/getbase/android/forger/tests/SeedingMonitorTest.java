@@ -0,0 +1,291 @@
+/*
+ * Copyright (C) 2013 Jerzy Chalupski
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.getbase.android.forger.tests;
+
+import static org.fest.assertions.api.Assertions.assertThat;
+
+import com.getbase.android.forger.Forger;
+import com.getbase.android.forger.ForgerListener;
+import com.getbase.android.forger.ForgerSink;
+import com.getbase.android.forger.InMemoryContentProvider;
+import com.getbase.android.forger.SeedingMonitor;
+import com.google.common.base.Ticker;
+import com.google.common.collect.ImmutableMap;
+
+import org.chalup.microorm.MicroOrm;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+import android.content.ContentValues;
+import android.database.Cursor;
+import android.net.Uri;
+
+import java.lang.management.ManagementFactory;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.TimeUnit;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+@RunWith(RobolectricTestRunner.class)
+@Config(manifest = Config.NONE)
+public class SeedingMonitorTest {
+
+  private static class FakeTicker extends Ticker {
+    private long mNanos;
+
+    @Override
+    public long read() {
+      return mNanos;
+    }
+
+    void advance(long duration, TimeUnit unit) {
+      mNanos += unit.toNanos(duration);
+    }
+  }
+
+  FakeTicker mTicker;
+  SeedingMonitor mMonitor;
+  Forger<TestModels.TestModel> mTestSubject;
+
+  @Before
+  public void setUp() throws Exception {
+    mTicker = new FakeTicker();
+    mMonitor = new SeedingMonitor(mTicker);
+    mTestSubject = Forger.<TestModels.TestModel>builder()
+        .withMicroOrm(new MicroOrm())
+        .withModelGraph(TestModels.MODEL_GRAPH)
+        .withSeedingMonitor(mMonitor)
+        .build();
+  }
+
+  @Test
+  public void shouldCountRowsPerModel() throws Exception {
+    mTestSubject.iNeed(TestModels.Deal.class).in(new InMemoryContentProvider());
+
+    assertThat(mMonitor.getRowsInserted()).isEqualTo(4);
+    assertThat(mMonitor.getRowsPerModel()).isEqualTo(ImmutableMap.of("Contact", 1L, "Deal", 1L, "User", 2L));
+    assertThat(mMonitor.getQueuedRows()).isEqualTo(0);
+  }
+
+  @Test
+  public void shouldCountBatchedRows() throws Exception {
+    mTestSubject.iNeed(5).of(TestModels.User.class).inBatchesOf(2).in(new InMemoryContentProvider());
+
+    assertThat(mMonitor.getRowsInserted()).isEqualTo(5);
+    assertThat(mMonitor.getQueuedRows()).isEqualTo(0);
+    assertThat(mMonitor.getInFlightBatches()).isEqualTo(0);
+  }
+
+  @Test
+  public void shouldReportQueuedRowsAndInFlightBatches() throws Exception {
+    final long[] queuedRows = new long[1];
+    final int[] inFlightBatches = new int[1];
+    Forger<TestModels.TestModel> forger = Forger.<TestModels.TestModel>builder()
+        .withMicroOrm(new MicroOrm())
+        .withModelGraph(TestModels.MODEL_GRAPH)
+        .withSeedingMonitor(mMonitor)
+        .registerListener(new ForgerListener() {
+          @Override
+          public void onBeforeBatchFlush(Class<?> klass, int rows) {
+            queuedRows[0] = mMonitor.getQueuedRows();
+            inFlightBatches[0] = mMonitor.getInFlightBatches();
+          }
+        })
+        .build();
+
+    forger.iNeed(3).of(TestModels.User.class).inBatchesOf(3).in(new InMemoryContentProvider());
+
+    assertThat(queuedRows[0]).isEqualTo(3);
+    assertThat(inFlightBatches[0]).isEqualTo(1);
+  }
+
+  @Test
+  public void shouldNotLeaveBatchInFlightWhenInsertFails() throws Exception {
+    final InMemoryContentProvider provider = new InMemoryContentProvider();
+    ForgerSink failingSink = new ForgerSink() {
+      @Override
+      public Uri insert(Uri uri, ContentValues values) {
+        return provider.insert(uri, values);
+      }
+
+      @Override
+      public List<Uri> insert(Uri uri, List<ContentValues> values) {
+        throw new IllegalStateException("Insert failed");
+      }
+
+      @Override
+      public boolean supportsReadBack() {
+        return provider.supportsReadBack();
+      }
+
+      @Override
+      public Cursor query(Uri uri, String[] projection) {
+        return provider.query(uri, projection);
+      }
+    };
+
+    try {
+      mTestSubject.iNeed(5).of(TestModels.Contact.class).inBatchesOf(3).in(failingSink);
+      throw new AssertionError("Expected IllegalStateException");
+    } catch (IllegalStateException expected) {
+      assertThat(mMonitor.getInFlightBatches()).isEqualTo(0);
+      assertThat(mMonitor.getQueuedRows()).isEqualTo(0);
+    }
+  }
+
+  @Test
+  public void shouldDiscardPendingRowsWhenCancelledMidBatch() throws Exception {
+    Forger<TestModels.TestModel> forger = Forger.<TestModels.TestModel>builder()
+        .withMicroOrm(new MicroOrm())
+        .withModelGraph(TestModels.MODEL_GRAPH)
+        .withSeedingMonitor(mMonitor)
+        .registerListener(new ForgerListener() {
+          @Override
+          public void onBeforeInsert(Class<?> klass, Uri modelUri, ContentValues values) {
+            if (mMonitor.getQueuedRows() == 2) {
+              mMonitor.cancel();
+            }
+          }
+        })
+        .build();
+
+    try {
+      forger.iNeed(10).of(TestModels.User.class).inBatchesOf(5).in(new InMemoryContentProvider());
+      throw new AssertionError("Expected CancellationException");
+    } catch (CancellationException expected) {
+      assertThat(mMonitor.getRowsInserted()).isEqualTo(0);
+      assertThat(mMonitor.getQueuedRows()).isEqualTo(0);
+      assertThat(mMonitor.getInFlightBatches()).isEqualTo(0);
+    }
+  }
+
+  @Test
+  public void shouldComputeThroughputOverSlidingWindows() throws Exception {
+    InMemoryContentProvider provider = new InMemoryContentProvider();
+    mTestSubject.iNeed(10).of(TestModels.User.class).in(provider);
+    mTicker.advance(1, TimeUnit.SECONDS);
+    mTestSubject.iNeed(20).of(TestModels.User.class).in(provider);
+    mTicker.advance(1, TimeUnit.SECONDS);
+
+    assertThat(mMonitor.getRowsPerSecondLast1s()).isEqualTo(20.0);
+    assertThat(mMonitor.getRowsPerSecondLast10s()).isEqualTo(3.0);
+    assertThat(mMonitor.getRowsPerSecondLast60s()).isEqualTo(0.5);
+
+    mTicker.advance(60, TimeUnit.SECONDS);
+    assertThat(mMonitor.getRowsPerSecondLast60s()).isEqualTo(0.0);
+  }
+
+  @Test
+  public void shouldCountThroughputOfConcurrentWriters() throws Exception {
+    mTestSubject.iNeed(400).of(TestModels.User.class)
+        .inBatchesOf(1)
+        .pipelined(4, 20)
+        .in(new InMemoryContentProvider());
+    mTicker.advance(1, TimeUnit.SECONDS);
+
+    assertThat(mMonitor.getRowsPerSecondLast1s()).isEqualTo(400.0);
+  }
+
+  @Test
+  public void shouldEstimateTimeRemaining() throws Exception {
+    assertThat(mMonitor.getEstimatedSecondsRemaining()).isEqualTo(-1);
+
+    mMonitor.plan(mTestSubject.iNeed(30).of(TestModels.User.class).plan());
+    mTestSubject.iNeed(10).of(TestModels.User.class).in(new InMemoryContentProvider());
+    mTicker.advance(1, TimeUnit.SECONDS);
+
+    assertThat(mMonitor.getPlannedRows()).isEqualTo(30);
+    assertThat(mMonitor.getEstimatedSecondsRemaining()).isEqualTo(20);
+  }
+
+  @Test
+  public void shouldStopInsertingWhenCancelled() throws Exception {
+    Forger<TestModels.TestModel> forger = Forger.<TestModels.TestModel>builder()
+        .withMicroOrm(new MicroOrm())
+        .withModelGraph(TestModels.MODEL_GRAPH)
+        .withSeedingMonitor(mMonitor)
+        .registerListener(new ForgerListener() {
+          @Override
+          public void onAfterInsert(Class<?> klass, Uri uri, long nanos) {
+            if (mMonitor.getRowsInserted() == 3) {
+              mMonitor.cancel();
+            }
+          }
+        })
+        .build();
+
+    try {
+      forger.iNeed(10).of(TestModels.User.class).in(new InMemoryContentProvider());
+      throw new AssertionError("Expected CancellationException");
+    } catch (CancellationException expected) {
+      assertThat(mMonitor.getRowsInserted()).isEqualTo(3);
+      assertThat(mMonitor.isCancelled()).isTrue();
+    }
+  }
+
+  @Test
+  public void shouldBlockWhilePaused() throws Exception {
+    mMonitor.pause();
+
+    Thread seeding = new Thread(new Runnable() {
+      @Override
+      public void run() {
+        mTestSubject.iNeed(TestModels.User.class).in(new InMemoryContentProvider());
+      }
+    });
+    seeding.start();
+    seeding.join(100);
+
+    assertThat(seeding.isAlive()).isTrue();
+    assertThat(mMonitor.getRowsInserted()).isEqualTo(0);
+
+    mMonitor.resume();
+    seeding.join(TimeUnit.SECONDS.toMillis(10));
+
+    assertThat(seeding.isAlive()).isFalse();
+    assertThat(mMonitor.getRowsInserted()).isEqualTo(1);
+  }
+
+  @Test
+  public void shouldExposeMonitorThroughJmx() throws Exception {
+    mMonitor.register("SeedingMonitorTest");
+    try {
+      mTestSubject.iNeed(TestModels.User.class).in(new InMemoryContentProvider());
+
+      MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+      ObjectName name = new ObjectName("com.getbase.android.forger:type=SeedingMonitor,name=\"SeedingMonitorTest\"");
+      assertThat(server.getAttribute(name, "RowsInserted")).isEqualTo(1L);
+
+      server.invoke(name, "pause", null, null);
+      assertThat(mMonitor.isPaused()).isTrue();
+    } finally {
+      mMonitor.unregister();
+    }
+  }
+
+  @Test(expected = IllegalStateException.class)
+  public void shouldNotAllowSettingSeedingMonitorTwice() throws Exception {
+    Forger.<TestModels.TestModel>builder()
+        .withSeedingMonitor(new SeedingMonitor())
+        .withSeedingMonitor(new SeedingMonitor());
+  }
+}
@@ -285,7 +285,7 @@ public final class TestModels {
   public static TestModel PERSONAL_INFO_V3 = new BaseTestModel(PersonalInfoV3.class);
   public static TestModel MODEL_WITH_COMPLEX_DATE = new BaseTestModel(ModelWithComplexDate.class);
 
-  static ModelGraph<TestModel> MODEL_GRAPH = ModelGraph.of(TestModel.class)
+  public static ModelGraph<TestModel> MODEL_GRAPH = ModelGraph.of(TestModel.class)
       .identifiedByDefault().by("id")
       .with(new BaseTestModel(KotlinDataClass.class))
       .with(new BaseTestModel(ClassWithoutDefaultConstructor.class))